@@ -1,18 +1,32 @@
 package UI;
 
+import database.ChangePoller;
+import database.IndexAdvisor;
+import database.QueryCoordinator;
+import database.QueryExecutor;
 import database.QueryHandler;
-import database.QueryHandler.QueryResult;
+import database.QueryResult;
+import database.ResultExporter;
+import database.Startup;
+import database.WineEstimate;
+import database.WineFilter;
+import database.WinePage;
+import database.WineStore;
 
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.io.File;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -20,20 +34,38 @@ import java.util.logging.Logger;
 
 public class GenericUIApp extends JPanel {
 
+    private static final long serialVersionUID = 1L;
 
     private static final Logger LOGGER = Logger.getLogger(GenericUIApp.class.getName());
 
     private JTable outputTable;
-    private DefaultTableModel tableModel;
+    private WineTableModel tableModel;
     private JPanel inputPanel;
+    private StatisticsPanel statisticsPanel;          // Built when its tab is first opened
+    private List<WineFilter> statisticsFilters = List.of(); // Filters to hand to it then
 
     private JLabel resultsCountLabel;  // Shows how many wines are displayed
     private JProgressBar progressBar;  // Shows loading progress
-
-    private List<String> activeFilters = new ArrayList<>(); // Regular filters
-    private String limitFilter = null;                       // LIMIT filter
-
-    private Map<String, String> filterMap = new HashMap<>();  // Maps display descriptions to filter strings
+    private JButton previousPageButton;
+    private JButton nextPageButton;
+    private JCheckBox streamRowsCheckBox; // Show rows while they arrive instead of paging
+    private JCheckBox estimateCheckBox;   // Show a sampled estimate while the exact query runs
+    private JCheckBox liveUpdatesCheckBox; // Merge rows inserted into wine_table into the table on screen
+    private WinePage currentPage;      // Cursor of the page on screen while a LIMIT is active
+
+    // A new query cancels the one still running on the server and its result is discarded
+    private final QueryCoordinator queryCoordinator = new QueryCoordinator();
+    private final QueryCoordinator estimateCoordinator = new QueryCoordinator(); // a new estimate supersedes the last
+    private boolean estimatePending; // An estimate may be shown until the exact results are
+    private List<WineFilter> liveFilters;        // Filters of the complete result on screen, or null
+    private long liveAfterId = -1;               // Highest id that result covers, for new rows
+    private List<WineFilter> pendingLiveFilters; // Same for the query running now, adopted on display
+    private long pendingLiveAfterId = -1;
+
+    private List<WineFilter> activeFilters = new ArrayList<>(); // Regular filters
+    private Integer limitFilter = null;                          // LIMIT filter
+
+    private Map<String, WineFilter> filterMap = new HashMap<>();  // Maps display descriptions to filters
 
     // Panel to display active filters
     private JPanel activeFiltersPanel;
@@ -48,11 +80,29 @@ public class GenericUIApp extends JPanel {
         // Log which thread the UI is running on (usually the Event Dispatch Thread)
         LOGGER.info("UI is running on thread: " + Thread.currentThread().getName());
 
-        // Initialize JTable and DefaultTableModel
-        tableModel = new DefaultTableModel();
+        // Initialize JTable and the columnar table model
+        tableModel = new WineTableModel();
         outputTable = new JTable(tableModel);
         JScrollPane scrollPane = new JScrollPane(outputTable);
-        add(scrollPane, BorderLayout.CENTER);
+
+        // The statistics tab summarizes the same filters without loading any rows. Most sessions
+        // never open it, so it is only built on first use, keeping it off the startup path.
+        JPanel statisticsTab = new JPanel(new BorderLayout());
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("Wines", scrollPane);
+        tabs.addTab("Statistics", statisticsTab);
+        tabs.addChangeListener(e -> {
+            if (tabs.getSelectedComponent() == statisticsTab) {
+                if (statisticsPanel == null) {
+                    statisticsPanel = new StatisticsPanel();
+                    statisticsPanel.setFilters(statisticsFilters);
+                    statisticsTab.add(statisticsPanel, BorderLayout.CENTER);
+                    statisticsTab.revalidate();
+                }
+                statisticsPanel.refreshIfStale();
+            }
+        });
+        add(tabs, BorderLayout.CENTER);
 
         // MouseListener to show tooltips on table rows
         outputTable.addMouseListener(new MouseAdapter() {
@@ -65,6 +115,24 @@ public class GenericUIApp extends JPanel {
             }
         });
 
+        // Clicking a column header sorts the current result by that column (click again to reverse)
+        outputTable.getTableHeader().addMouseListener(new MouseAdapter() {
+            private int sortedColumn = -1;
+            private boolean ascending = true;
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = outputTable.columnAtPoint(e.getPoint());
+                // Paged results are always in id order; only fully loaded results can be re-sorted
+                if (column == -1 || outputTable.getModel() != tableModel) {
+                    return;
+                }
+                ascending = column != sortedColumn || !ascending;
+                sortedColumn = column;
+                tableModel.setResult(tableModel.getResult().sortBy(column, ascending));
+            }
+        });
+
         // ---------- TOP PANEL (query selection + results count + progress bar + reset filters) ----------
         JPanel topPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         topPanel.setBackground(new Color(141, 141, 141));
@@ -78,7 +146,8 @@ public class GenericUIApp extends JPanel {
                 "Get Wines by Color",
                 "Get Wines by ID",
                 "Get Wines by Date Range",
-                "Get Wines by pH Range"
+                "Get Wines by pH Range",
+                "Find Similar Wines"
         };
         JComboBox<String> queryComboBox = new JComboBox<>(queries);
         queryComboBox.addActionListener(e -> {
@@ -107,6 +176,73 @@ public class GenericUIApp extends JPanel {
         resetFiltersButton.addActionListener(e -> resetFilters());
         topPanel.add(resetFiltersButton);
 
+        // Proposes indexes for the filter combinations that were slow in this session
+        JButton indexAdvisorButton = new JButton("Index Advisor");
+        indexAdvisorButton.addActionListener(e -> runIndexAdvisor());
+        topPanel.add(indexAdvisorButton);
+
+        // Writes every wine matching the current filters to a CSV or columnar file
+        JButton exportButton = new JButton("Export Results");
+        exportButton.addActionListener(e -> exportResults());
+        topPanel.add(exportButton);
+
+        // With a LIMIT active, results are shown one page of LIMIT rows at a time
+        previousPageButton = new JButton("< Previous Page");
+        previousPageButton.setEnabled(false);
+        previousPageButton.addActionListener(e -> {
+            WinePage page = currentPage;
+            runPageQueryInBackground(() -> QueryHandler.previousPage(page));
+        });
+        topPanel.add(previousPageButton);
+
+        nextPageButton = new JButton("Next Page >");
+        nextPageButton.setEnabled(false);
+        nextPageButton.addActionListener(e -> {
+            WinePage page = currentPage;
+            runPageQueryInBackground(() -> QueryHandler.nextPage(page));
+        });
+        topPanel.add(nextPageButton);
+
+        streamRowsCheckBox = new JCheckBox("Stream results");
+        streamRowsCheckBox.setOpaque(false);
+        streamRowsCheckBox.setToolTipText("Load every matching wine, showing rows as they arrive");
+        topPanel.add(streamRowsCheckBox);
+
+        estimateCheckBox = new JCheckBox("Instant estimate");
+        estimateCheckBox.setOpaque(false);
+        estimateCheckBox.setSelected(true);
+        estimateCheckBox.setToolTipText("Show an estimated count and statistics from a sample until the exact results arrive");
+        topPanel.add(estimateCheckBox);
+
+        // The in-memory copy is opt-in: loading it holds the whole table on the heap
+        JCheckBox inMemoryCheckBox = new JCheckBox("In-memory copy");
+        inMemoryCheckBox.setOpaque(false);
+        inMemoryCheckBox.setSelected(WineStore.isEnabled());
+        inMemoryCheckBox.setToolTipText("Load wine_table into memory in the background and answer queries from it");
+        inMemoryCheckBox.addActionListener(e -> {
+            if (inMemoryCheckBox.isSelected()) {
+                WineStore.enable();
+            } else {
+                WineStore.disable();
+                QueryHandler.releaseSimilarityIndex(); // also holds a copy of the table
+            }
+        });
+        topPanel.add(inMemoryCheckBox);
+
+        liveUpdatesCheckBox = new JCheckBox("Live updates");
+        liveUpdatesCheckBox.setOpaque(false);
+        liveUpdatesCheckBox.setSelected(ChangePoller.isEnabled());
+        liveUpdatesCheckBox.setEnabled(ChangePoller.isEnabled());
+        liveUpdatesCheckBox.setToolTipText("Add wines inserted into the database to the results without re-running the query");
+        liveUpdatesCheckBox.addActionListener(e -> {
+            if (liveUpdatesCheckBox.isSelected()) {
+                ChangePoller.pollNow();
+            }
+        });
+        topPanel.add(liveUpdatesCheckBox);
+        // Rows arrive on the poller thread; the table is only touched on the EDT
+        ChangePoller.addListener((afterId, rows) -> SwingUtilities.invokeLater(() -> applyInsertedRows(afterId, rows)));
+
         add(topPanel, BorderLayout.NORTH);
 
         // ---------- BOTTOM PANEL (dynamic input fields) ----------
@@ -164,13 +300,17 @@ public class GenericUIApp extends JPanel {
                     }
                     try {
                         int limit = Integer.parseInt(limitStr);
+                        if (limit <= 0) {
+                            showError("Limit must be a positive integer.");
+                            return;
+                        }
                         // If a LIMIT filter already exists, remove it first
                         if (limitFilter != null) {
                             removeActiveFilter("LIMIT " + limitFilter);
                         }
-                        limitFilter = String.valueOf(limit);
+                        limitFilter = limit;
                         runCustomQuery();
-                        addActiveFilter("LIMIT " + limit, "LIMIT " + limit);
+                        addActiveFilter("LIMIT " + limit, null);
                     } catch (NumberFormatException ex) {
                         showError("Limit must be a valid integer.");
                     }
@@ -185,7 +325,7 @@ public class GenericUIApp extends JPanel {
                         showError("Please select a quality.");
                         return;
                     }
-                    String filterString = "quality = '" + quality.replace("'", "''") + "'";
+                    WineFilter filterString = WineFilter.quality(quality);
                     String displayDescription = "Quality: " + quality;
                     if (!activeFilters.contains(filterString)) {
                         activeFilters.add(filterString);
@@ -213,16 +353,15 @@ public class GenericUIApp extends JPanel {
                         double minAlcohol = minStr.isEmpty() ? -1 : Double.parseDouble(minStr);
                         double maxAlcohol = maxStr.isEmpty() ? -1 : Double.parseDouble(maxStr);
 
-                        String filter = "";
+                        WineFilter filter = WineFilter.alcoholRange(
+                                minAlcohol >= 0 ? minAlcohol : null,
+                                maxAlcohol >= 0 ? maxAlcohol : null);
                         String displayFilter = "";
                         if (minAlcohol >= 0 && maxAlcohol >= 0) {
-                            filter = "alcohol BETWEEN " + minAlcohol + " AND " + maxAlcohol;
                             displayFilter = "Alcohol: " + minAlcohol + " - " + maxAlcohol;
                         } else if (minAlcohol >= 0) {
-                            filter = "alcohol >= " + minAlcohol;
                             displayFilter = "Alcohol >= " + minAlcohol;
                         } else if (maxAlcohol >= 0) {
-                            filter = "alcohol <= " + maxAlcohol;
                             displayFilter = "Alcohol <= " + maxAlcohol;
                         }
 
@@ -233,8 +372,8 @@ public class GenericUIApp extends JPanel {
                         } else {
                             showError("This alcohol range filter is already applied.");
                         }
-                    } catch (NumberFormatException ex) {
-                        showError("Alcohol values must be valid numbers.");
+                    } catch (IllegalArgumentException ex) {
+                        showError("Alcohol values must be valid non-negative numbers.");
                     }
                 }, gbc, 2);
                 break;
@@ -247,7 +386,7 @@ public class GenericUIApp extends JPanel {
                         showError("Please select a color.");
                         return;
                     }
-                    String filterString = "color = '" + color.replace("'", "''") + "'";
+                    WineFilter filterString = WineFilter.color(color);
                     String displayDescription = "Color: " + color;
                     if (!activeFilters.contains(filterString)) {
                         activeFilters.add(filterString);
@@ -268,7 +407,7 @@ public class GenericUIApp extends JPanel {
                         return;
                     }
 
-                    String filterString;
+                    WineFilter filterString;
                     String displayDescription = "ID(s): " + ids;
 
                     if (ids.contains("-")) {
@@ -280,7 +419,7 @@ public class GenericUIApp extends JPanel {
 
                             // Validate that start and end are integers
                             if (isValidInteger(start) && isValidInteger(end)) {
-                                filterString = "id BETWEEN " + start + " AND " + end;
+                                filterString = WineFilter.idRange(Integer.parseInt(start), Integer.parseInt(end));
                                 displayDescription = "ID Range: " + start + " - " + end;
                             } else {
                                 showError("Invalid ID range. Please enter valid integers.");
@@ -294,15 +433,12 @@ public class GenericUIApp extends JPanel {
                         // Multiple IDs case (e.g., 1,2,3)
                         String[] idArray = ids.split(",");
                         boolean allValid = true;
-                        StringBuilder validIds = new StringBuilder();
+                        int[] validIds = new int[idArray.length];
 
-                        for (String id : idArray) {
-                            String trimmedId = id.trim();
+                        for (int i = 0; i < idArray.length; i++) {
+                            String trimmedId = idArray[i].trim();
                             if (isValidInteger(trimmedId)) {
-                                if (validIds.length() > 0) {
-                                    validIds.append(",");
-                                }
-                                validIds.append(trimmedId);
+                                validIds[i] = Integer.parseInt(trimmedId);
                             } else {
                                 allValid = false;
                                 break;
@@ -310,7 +446,7 @@ public class GenericUIApp extends JPanel {
                         }
 
                         if (allValid) {
-                            filterString = "id IN (" + validIds.toString() + ")";
+                            filterString = WineFilter.idIn(validIds);
                         } else {
                             showError("Invalid ID format. Please enter valid integers separated by commas.");
                             return;
@@ -319,7 +455,7 @@ public class GenericUIApp extends JPanel {
                         // Single ID case (e.g., 5)
                         String trimmedId = ids.trim();
                         if (isValidInteger(trimmedId)) {
-                            filterString = "id = " + trimmedId;
+                            filterString = WineFilter.id(Integer.parseInt(trimmedId));
                         } else {
                             showError("Invalid ID format. Please enter a valid integer.");
                             return;
@@ -349,16 +485,15 @@ public class GenericUIApp extends JPanel {
                         return;
                     }
 
-                    String filter = "";
+                    WineFilter filter = WineFilter.dateRange(
+                            startDate.isEmpty() ? null : LocalDate.parse(startDate),
+                            endDate.isEmpty() ? null : LocalDate.parse(endDate));
                     String displayFilter = "";
                     if (!startDate.isEmpty() && !endDate.isEmpty()) {
-                        filter = "`date` BETWEEN '" + startDate + "' AND '" + endDate + "'";
                         displayFilter = "Date: " + startDate + " - " + endDate;
                     } else if (!startDate.isEmpty()) {
-                        filter = "`date` >= '" + startDate + "'";
                         displayFilter = "Date >= " + startDate;
                     } else if (!endDate.isEmpty()) {
-                        filter = "`date` <= '" + endDate + "'";
                         displayFilter = "Date <= " + endDate;
                     }
 
@@ -388,16 +523,15 @@ public class GenericUIApp extends JPanel {
                         double minPH = minPHStr.isEmpty() ? -1 : Double.parseDouble(minPHStr);
                         double maxPH = maxPHStr.isEmpty() ? -1 : Double.parseDouble(maxPHStr);
 
-                        String filter = "";
+                        WineFilter filter = WineFilter.phRange(
+                                minPH >= 0 ? minPH : null,
+                                maxPH >= 0 ? maxPH : null);
                         String displayFilter = "";
                         if (minPH >= 0 && maxPH >= 0) {
-                            filter = "`pH` BETWEEN " + minPH + " AND " + maxPH;
                             displayFilter = "pH: " + minPH + " - " + maxPH;
                         } else if (minPH >= 0) {
-                            filter = "`pH` >= " + minPH;
                             displayFilter = "pH >= " + minPH;
                         } else if (maxPH >= 0) {
-                            filter = "`pH` <= " + maxPH;
                             displayFilter = "pH <= " + maxPH;
                         }
 
@@ -408,8 +542,34 @@ public class GenericUIApp extends JPanel {
                         } else {
                             showError("This pH range filter is already applied.");
                         }
+                    } catch (IllegalArgumentException ex) {
+                        showError("pH values must be valid non-negative numbers.");
+                    }
+                }, gbc, 2);
+                break;
+
+            case "Find Similar Wines":
+                addInputField("Wine ID:", "similarId", gbc, 0);
+                addInputField("Number of similar wines:", "similarCount", gbc, 1);
+                addExecuteButton(e -> {
+                    String idStr = getFieldValue("similarId");
+                    String countStr = getFieldValue("similarCount");
+                    if (idStr.isEmpty()) {
+                        showError("Please enter a wine ID.");
+                        return;
+                    }
+                    try {
+                        int id = Integer.parseInt(idStr);
+                        int count = countStr.isEmpty() ? 10 : Integer.parseInt(countStr);
+                        if (count <= 0) {
+                            showError("The number of similar wines must be positive.");
+                            return;
+                        }
+                        // The active filters restrict which wines may be returned (e.g. only reds)
+                        List<WineFilter> preFilters = new ArrayList<>(activeFilters);
+                        runQueryInBackground(() -> QueryHandler.findSimilarWines(id, count, preFilters));
                     } catch (NumberFormatException ex) {
-                        showError("pH values must be valid numbers.");
+                        showError("Wine ID and number of similar wines must be valid integers.");
                     }
                 }, gbc, 2);
                 break;
@@ -424,51 +584,417 @@ public class GenericUIApp extends JPanel {
     // -------------------------------------------------------
 
     /**
-     * Runs the given query in the background using SwingWorker,
-     * shows a progress bar while running, and displays the result
-     * in the table when complete.
+     * Runs a query on the {@link QueryExecutor} under a ticket of the query coordinator and
+     * hands its result to the EDT. Nothing is shown if a newer query has started meanwhile,
+     * since that query owns the table and the progress bar now.
+     *
+     * @param ticket   The ticket from {@link QueryCoordinator#begin()}.
+     * @param query    The query to run in the background.
+     * @param onResult Called on the EDT with the result, after the progress bar is hidden.
+     */
+    private <T> void submitQuery(QueryCoordinator.Ticket ticket, Supplier<T> query, Consumer<T> onResult) {
+        QueryExecutor.submit(ticket, () -> {
+            LOGGER.info("Executing query on thread: " + Thread.currentThread().getName());
+            return query.get();
+        }).whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            if (!queryCoordinator.isCurrent(ticket)) {
+                return;
+            }
+            showProgressBar(false);
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                LOGGER.log(Level.SEVERE, "Error retrieving query results: {0}", cause.toString());
+                showError("Error retrieving query results:\n" + cause.getMessage());
+                return;
+            }
+            onResult.accept(result);
+        }));
+    }
+
+    /**
+     * Runs the given query in the background, shows a progress bar while running, and
+     * displays the result in the table when complete.
      *
      * @param querySupplier The supplier that provides the QueryResult.
      */
     private void runQueryInBackground(Supplier<QueryResult> querySupplier) {
-        // Show the progress bar
+        stopLiveUpdates();
         showProgressBar(true);
+        submitQuery(queryCoordinator.begin(), querySupplier, this::displayQueryResults);
+    }
+
+    /**
+     * Runs a page query in the background and shows the page with its navigation buttons.
+     *
+     * @param pageSupplier The supplier that provides the page.
+     */
+    private void runPageQueryInBackground(Supplier<WinePage> pageSupplier) {
+        stopLiveUpdates();
+        showProgressBar(true);
+        previousPageButton.setEnabled(false);
+        nextPageButton.setEnabled(false);
+        submitQuery(queryCoordinator.begin(), pageSupplier, this::displayPage);
+    }
+
+    /**
+     * Executes a custom query with all active filters and limit.
+     * With a LIMIT active the first LIMIT rows are shown as a page that can be moved forwards
+     * and backwards with keyset cursors on id, so a deep page costs the same as the first.
+     * With "Stream results" checked all matching rows are read and shown while they arrive.
+     * Otherwise, if the in-memory store is loaded the full result is computed locally; otherwise rows are
+     * loaded from MySQL page by page as the table is scrolled, so only the count and the
+     * first page are fetched up front. When the query goes to MySQL without a LIMIT, "Instant
+     * estimate" first shows a count and statistics estimated from a sample until the exact
+     * results replace them. Without a LIMIT the result stays live: with "Live updates" checked,
+     * wines inserted later are merged in (see {@link #applyInsertedRows}).
+     */
+    private void runCustomQuery() {
+        // Snapshot the filters: the background query must not see later edits made on the EDT
+        List<WineFilter> filters = new ArrayList<>(activeFilters);
+        Integer limit = limitFilter;
+        // Read before the query starts, so the result holds at least every row up to it
+        long highWatermark = ChangePoller.getHighWatermark();
+        statisticsFilters = filters;
+        if (statisticsPanel != null) {
+            statisticsPanel.setFilters(filters);
+        }
+
+        if (limit != null) {
+            runPageQueryInBackground(() -> QueryHandler.firstPage(filters, limit));
+            return;
+        }
+
+        // With the table held in memory the whole result is computed locally in microseconds
+        if (WineStore.isLoaded()) {
+            runQueryInBackground(() -> QueryHandler.executeCustomQuery(filters, limit));
+            followInsertedRows(filters, highWatermark);
+            return;
+        }
+
+        if (estimateCheckBox.isSelected()) {
+            runEstimate(filters);
+        }
+
+        if (streamRowsCheckBox.isSelected()) {
+            runStreamingQuery(filters);
+            followInsertedRows(filters, highWatermark);
+            return;
+        }
+
+        stopLiveUpdates();
+        followInsertedRows(filters, highWatermark);
+        showProgressBar(true);
+        submitQuery(queryCoordinator.begin(), () -> highWatermark >= 0
+                ? PagedWineTableModel.loadUpTo(filters, highWatermark)
+                : PagedWineTableModel.load(filters, limit), this::displayPagedResults);
+    }
+
+    /**
+     * Computes an estimate of the query's matches from the background sample and shows it in
+     * the count label and the statistics panel until the exact results replace it.
+     *
+     * @param filters The filters to AND together.
+     */
+    private void runEstimate(List<WineFilter> filters) {
+        QueryCoordinator.Ticket ticket = estimateCoordinator.begin();
+        estimatePending = true;
+
+        QueryExecutor.submit(ticket, () -> QueryHandler.estimateCustomQuery(filters))
+                .whenComplete((estimate, error) -> SwingUtilities.invokeLater(() -> {
+                    if (!estimateCoordinator.isCurrent(ticket) || !estimatePending) {
+                        return;
+                    }
+                    if (error != null) {
+                        LOGGER.log(Level.WARNING, "Error estimating query results: {0}", error.toString());
+                        return;
+                    }
+                    if (estimate == null) {
+                        return; // no sample yet; the exact results will follow
+                    }
+                    resultsCountLabel.setText(estimate.isExactCount()
+                            ? String.format("Matching wines: %,d (loading...)", estimate.getEstimatedCount())
+                            : String.format("Estimated wines: ~%,d (%,d - %,d), counting...",
+                            estimate.getEstimatedCount(), estimate.getLowerBound(), estimate.getUpperBound()));
+                    if (statisticsPanel != null) {
+                        statisticsPanel.showEstimate(estimate);
+                    }
+                }));
+    }
+
+    /**
+     * Streams all wines matching the filters into the table, appending rows as they arrive
+     * and keeping a live count of the rows received.
+     *
+     * @param filters The filters to AND together.
+     */
+    private void runStreamingQuery(List<WineFilter> filters) {
+        stopLiveUpdates();
+        showProgressBar(true);
+        QueryCoordinator.Ticket ticket = queryCoordinator.begin();
+        boolean[] started = new boolean[1]; // confined to the EDT
+
+        // Each chunk holds every row received so far; it replaces what the table shows
+        submitQuery(ticket, () -> QueryHandler.streamCustomQuery(filters, null,
+                rows -> SwingUtilities.invokeLater(() -> {
+                    if (!queryCoordinator.isCurrent(ticket)) {
+                        return;
+                    }
+                    if (!started[0]) {
+                        started[0] = true;
+                        clearTable();
+                        setCurrentPage(null);
+                        outputTable.setModel(tableModel);
+                        tableModel.setResult(rows);
+                    } else {
+                        tableModel.appendRows(rows);
+                    }
+                    estimatePending = false;
+                    resultsCountLabel.setText("Wines received: " + rows.getRowCount() + "...");
+                })), result -> {
+            if (started[0]) {
+                tableModel.appendRows(result);
+                adoptLiveUpdates();
+                resultsCountLabel.setText("Wines displayed: " + result.getRowCount());
+                if (result.getRowCount() == 0) {
+                    showError("No wines found for the specified query!");
+                }
+            } else {
+                displayQueryResults(result);
+            }
+        });
+    }
+
+    // -------------------------------------------------------
+    //                  LIVE UPDATES
+    // -------------------------------------------------------
+
+    /**
+     * Marks the query being started as one whose result holds every matching wine, so that
+     * inserted wines can be merged into it once it is displayed.
+     *
+     * @param filters       The filters of the query.
+     * @param highWatermark The poller's high-watermark read before the query started, or -1 if
+     *                      unknown (the first inserted rows then re-run the query instead).
+     */
+    private void followInsertedRows(List<WineFilter> filters, long highWatermark) {
+        pendingLiveFilters = filters;
+        pendingLiveAfterId = highWatermark;
+    }
+
+    /**
+     * Called when a result replaces the table: it is live if its query was marked as such.
+     */
+    private void adoptLiveUpdates() {
+        liveFilters = pendingLiveFilters;
+        liveAfterId = pendingLiveAfterId;
+        pendingLiveFilters = null;
+    }
 
-        SwingWorker<QueryResult, Void> worker = new SwingWorker<>() {
+    /**
+     * Called when a query starts that will replace the table; rows arriving meanwhile are not merged.
+     */
+    private void stopLiveUpdates() {
+        liveFilters = null;
+        pendingLiveFilters = null;
+    }
+
+    /**
+     * Merges wines inserted into wine_table into the live result on screen: only the new rows
+     * are filtered and appended, so a large result is refreshed by the size of the delta.
+     * If rows may have been missed (inserted while the query ran or while live updates were
+     * off), a late row matches the filters (it belongs among the rows already shown), or the
+     * filters cannot be evaluated on the client, the query is run again instead.
+     *
+     * @param afterId The high-watermark the rows follow.
+     * @param rows    The inserted rows, in id order; see {@link ChangePoller.Listener}.
+     */
+    private void applyInsertedRows(long afterId, QueryResult rows) {
+        if (liveFilters == null || !liveUpdatesCheckBox.isSelected()) {
+            return;
+        }
+        if (afterId > liveAfterId) {
+            LOGGER.info("Re-running the query: wines may have been inserted since it started.");
+            runCustomQuery();
+            return;
+        }
+        QueryResult lateRows = QueryHandler.selectLateRows(rows, liveFilters, afterId);
+        if (lateRows == null || lateRows.getRowCount() > 0) {
+            LOGGER.info("Re-running the query: a wine committed late among the rows shown.");
+            runCustomQuery();
+            return;
+        }
+
+        int added;
+        if (outputTable.getModel() == tableModel) {
+            // The result may already hold some of the rows if they were inserted while it was read
+            QueryResult current = tableModel.getResult();
+            int idColumn = current.findColumn("id");
+            long seen = idColumn < 0 ? liveAfterId : Math.max(liveAfterId, current.maxInt(idColumn));
+            QueryResult newRows = QueryHandler.selectInsertedRows(rows, liveFilters, seen);
+            if (newRows == null) {
+                runCustomQuery();
+                return;
+            }
+            added = newRows.getRowCount();
+            tableModel.appendRows(current.append(newRows));
+            resultsCountLabel.setText("Wines displayed: " + tableModel.getRowCount());
+        } else if (outputTable.getModel() instanceof PagedWineTableModel) {
+            PagedWineTableModel model = (PagedWineTableModel) outputTable.getModel();
+            QueryResult newRows = QueryHandler.selectInsertedRows(rows, liveFilters, liveAfterId);
+            if (newRows == null) {
+                runCustomQuery();
+                return;
+            }
+            added = newRows.getRowCount();
+            model.rowsInserted(added);
+            resultsCountLabel.setText("Wines displayed: " + model.getRowCount());
+        } else {
+            return;
+        }
+
+        liveAfterId = Math.max(liveAfterId, rows.maxInt(rows.findColumn("id")));
+        if (added > 0) {
+            LOGGER.info("Merged " + added + " inserted wines into the displayed results.");
+            statisticsFilters = liveFilters;
+            if (statisticsPanel != null) {
+                statisticsPanel.setFilters(liveFilters);
+            }
+        }
+    }
+
+    // -------------------------------------------------------
+    //                  INDEX ADVISOR
+    // -------------------------------------------------------
+
+    /**
+     * Asks the index advisor for indexes that would speed up the slow filter combinations run
+     * so far, and creates them if the user agrees, reporting the latency before and after.
+     */
+    private void runIndexAdvisor() {
+        showProgressBar(true);
+        SwingWorker<List<IndexAdvisor.Recommendation>, Void> worker = new SwingWorker<>() {
             @Override
-            protected QueryResult doInBackground() {
-                LOGGER.info("Executing query on thread: " + Thread.currentThread().getName());
-                return querySupplier.get();
+            protected List<IndexAdvisor.Recommendation> doInBackground() throws Exception {
+                return IndexAdvisor.recommend();
             }
 
             @Override
             protected void done() {
-                // Hide the progress bar
                 showProgressBar(false);
-
+                List<IndexAdvisor.Recommendation> recommendations;
                 try {
-                    QueryResult result = get();
-                    displayQueryResults(result);
+                    recommendations = get();
                 } catch (Exception e) {
-                    LOGGER.log(Level.SEVERE,
-                            "Error retrieving query results on thread "
-                                    + Thread.currentThread().getName() + ": {0}",
-                            e.getMessage());
-                    showError("Error retrieving query results:\n" + e.getMessage());
+                    LOGGER.log(Level.SEVERE, "Error running the index advisor: {0}", e.getMessage());
+                    showError("Error running the index advisor:\n" + e.getMessage());
+                    return;
+                }
+                if (recommendations.isEmpty()) {
+                    JOptionPane.showMessageDialog(GenericUIApp.this,
+                            "No index recommendations: no frequent filter combination is slow without one.",
+                            "Index Advisor", JOptionPane.INFORMATION_MESSAGE);
+                    return;
+                }
+                StringBuilder message = new StringBuilder("Proposed indexes:\n\n");
+                for (IndexAdvisor.Recommendation recommendation : recommendations) {
+                    message.append(recommendation).append("\n\n");
+                }
+                message.append("Create them now?");
+                int choice = JOptionPane.showConfirmDialog(GenericUIApp.this, new JScrollPane(new JTextArea(message.toString(), 15, 80)),
+                        "Index Advisor", JOptionPane.YES_NO_OPTION);
+                if (choice == JOptionPane.YES_OPTION) {
+                    applyIndexes(recommendations);
                 }
             }
         };
+        worker.execute();
+    }
+
+    /**
+     * Creates the accepted indexes in the background and shows the measured effect of each.
+     *
+     * @param recommendations The indexes to create.
+     */
+    private void applyIndexes(List<IndexAdvisor.Recommendation> recommendations) {
+        showProgressBar(true);
+        SwingWorker<List<IndexAdvisor.Report>, Void> worker = new SwingWorker<>() {
+            @Override
+            protected List<IndexAdvisor.Report> doInBackground() throws Exception {
+                List<IndexAdvisor.Report> reports = new ArrayList<>();
+                for (IndexAdvisor.Recommendation recommendation : recommendations) {
+                    reports.add(IndexAdvisor.apply(recommendation));
+                }
+                return reports;
+            }
 
-        // Start the background task
+            @Override
+            protected void done() {
+                showProgressBar(false);
+                try {
+                    StringBuilder message = new StringBuilder("Latency of each query before -> after its index:\n\n");
+                    for (IndexAdvisor.Report report : get()) {
+                        message.append(report).append("\n");
+                    }
+                    JOptionPane.showMessageDialog(GenericUIApp.this, new JScrollPane(new JTextArea(message.toString(), 10, 80)),
+                            "Index Advisor", JOptionPane.INFORMATION_MESSAGE);
+                } catch (Exception e) {
+                    LOGGER.log(Level.SEVERE, "Error creating indexes: {0}", e.getMessage());
+                    showError("Error creating indexes:\n" + e.getMessage());
+                }
+            }
+        };
         worker.execute();
     }
 
+    // -------------------------------------------------------
+    //                  EXPORT
+    // -------------------------------------------------------
+
     /**
-     * Executes a custom query with all active filters and limit.
+     * Exports every wine matching the active filters (not just the rows loaded into the table)
+     * to a file chosen by the user. The format follows the file extension: {@code .wcol} for
+     * the binary columnar format, CSV otherwise.
      */
-    private void runCustomQuery() {
-        String baseQuery = "SELECT * FROM wine_table";
-        runQueryInBackground(() -> QueryHandler.executeCustomQuery(baseQuery, activeFilters, limitFilter));
+    private void exportResults() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File("wines" + ResultExporter.Format.CSV.getExtension()));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path file = chooser.getSelectedFile().toPath();
+        ResultExporter.Format format = ResultExporter.Format.forFile(file);
+        List<WineFilter> filters = new ArrayList<>(activeFilters);
+        Integer limit = limitFilter;
+
+        showProgressBar(true);
+        progressBar.setString("Exporting...");
+        SwingWorker<Long, Long> worker = new SwingWorker<>() {
+            @Override
+            protected Long doInBackground() throws Exception {
+                return ResultExporter.export(filters, limit, file, format, this::publish);
+            }
+
+            @Override
+            protected void process(List<Long> chunks) {
+                progressBar.setString(String.format("Exported %,d rows...", chunks.get(chunks.size() - 1)));
+            }
+
+            @Override
+            protected void done() {
+                showProgressBar(false);
+                progressBar.setString("Loading...");
+                try {
+                    long rows = get();
+                    JOptionPane.showMessageDialog(GenericUIApp.this,
+                            String.format("Exported %,d wines to %s", rows, file),
+                            "Export Results", JOptionPane.INFORMATION_MESSAGE);
+                } catch (Exception e) {
+                    LOGGER.log(Level.SEVERE, "Error exporting results: {0}", e.getMessage());
+                    showError("Error exporting results:\n" + e.getMessage());
+                }
+            }
+        };
+        worker.execute();
     }
 
     /**
@@ -494,20 +1020,18 @@ public class GenericUIApp extends JPanel {
     private void displayQueryResults(QueryResult result) {
         // Clear old data first
         clearTable();
+        setCurrentPage(null);
 
-        // Add columns
-        for (String columnName : result.getColumnNames()) {
-            tableModel.addColumn(columnName);
-        }
-
-        // Add rows
-        for (String[] row : result.getData()) {
-            tableModel.addRow(row);
-        }
+        // The model renders the columnar result directly; no per-row copies
+        tableModel.setResult(result);
+        outputTable.setModel(tableModel);
+        adoptLiveUpdates();
 
         // Update the count label
-        int rowCount = result.getData().length;
+        int rowCount = result.getRowCount();
+        estimatePending = false;
         resultsCountLabel.setText("Wines displayed: " + rowCount);
+        Startup.firstResult();
 
         // If no rows found, show an error message
         if (rowCount == 0) {
@@ -515,12 +1039,58 @@ public class GenericUIApp extends JPanel {
         }
     }
 
+    /**
+     * Attaches a paged model to the table AND updates the resultsCountLabel.
+     * Shows an error if no rows match.
+     *
+     * @param model The paged model holding the count and first page.
+     */
+    private void displayPagedResults(PagedWineTableModel model) {
+        clearTable();
+        setCurrentPage(null);
+        outputTable.setModel(model);
+        adoptLiveUpdates();
+
+        int rowCount = model.getRowCount();
+        estimatePending = false;
+        resultsCountLabel.setText("Wines displayed: " + rowCount);
+        Startup.firstResult();
+
+        if (rowCount == 0) {
+            showError("No wines found for the specified query!");
+        }
+    }
+
+    /**
+     * Displays one page of a LIMIT query AND updates the resultsCountLabel and page buttons.
+     *
+     * @param page The page to display.
+     */
+    private void displayPage(WinePage page) {
+        displayQueryResults(page.getRows());
+        setCurrentPage(page);
+        resultsCountLabel.setText("Wines displayed: " + page.getRows().getRowCount()
+                + " (page " + (page.getPageNumber() + 1) + ")");
+    }
+
+    /**
+     * Remembers the page on screen and enables the navigation buttons it allows.
+     *
+     * @param page The page on screen, or null if the table is not showing a page.
+     */
+    private void setCurrentPage(WinePage page) {
+        currentPage = page;
+        previousPageButton.setEnabled(page != null && page.hasPrevious());
+        nextPageButton.setEnabled(page != null && page.hasNext());
+    }
+
     /**
      * Displays an error message dialog.
      *
      * @param message The error message to display.
      */
     private void showError(String message) {
+        estimatePending = false;
         JOptionPane.showMessageDialog(this, message, "Error", JOptionPane.ERROR_MESSAGE);
     }
 
@@ -528,8 +1098,7 @@ public class GenericUIApp extends JPanel {
      * Clears the table of all rows and columns.
      */
     private void clearTable() {
-        tableModel.setRowCount(0);
-        tableModel.setColumnCount(0);
+        tableModel.setResult(QueryResult.empty());
     }
 
     // -------------------------------------------------------
@@ -708,11 +1277,11 @@ public class GenericUIApp extends JPanel {
      * Adds a visual representation of an active filter to the activeFiltersPanel.
      *
      * @param displayDescription The display text for the filter (e.g., "Quality: neutral").
-     * @param filterString       The actual SQL filter string (e.g., "quality = 'neutral'").
+     * @param filter             The filter it represents, or null for the LIMIT entry.
      */
-    private void addActiveFilter(String displayDescription, String filterString) {
+    private void addActiveFilter(String displayDescription, WineFilter filter) {
         // Add to filterMap
-        filterMap.put(displayDescription, filterString);
+        filterMap.put(displayDescription, filter);
 
         JPanel filterPanel = new JPanel(new BorderLayout());
         filterPanel.setMaximumSize(new Dimension(Integer.MAX_VALUE, 30));
@@ -745,18 +1314,18 @@ public class GenericUIApp extends JPanel {
      * @param displayDescription The display text for the filter to remove.
      */
     private void removeActiveFilter(String displayDescription) {
-        String filterString = filterMap.get(displayDescription);
-        if (filterString == null) {
+        if (!filterMap.containsKey(displayDescription)) {
             showError("Filter not found.");
             return;
         }
+        WineFilter filter = filterMap.get(displayDescription);
 
         if (displayDescription.startsWith("LIMIT")) {
             // Handle LIMIT filter
             limitFilter = null;
         } else {
             // Handle regular filters
-            activeFilters.remove(filterString);
+            activeFilters.remove(filter);
         }
 
         // Remove the filter tag from the GUI
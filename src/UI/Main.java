@@ -1,14 +1,49 @@
 package UI;
 
+import database.ChangePoller;
+import database.DBConnection;
+import database.PartitionManager;
+import database.QueryHandler;
+import database.Startup;
+import database.TableSample;
+import database.WineStore;
+
 import javax.swing.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * The main class to run the Wine Database System application.
+ * <p>
+ * With {@code --train} the application runs its startup path and the common query paths once
+ * without opening a window, then exits. Run it that way under
+ * {@code -XX:ArchiveClassesAtExit=wine.jsa} to record an AppCDS archive, and start the
+ * application with {@code -XX:SharedArchiveFile=wine.jsa} to skip most class loading and
+ * verification on later cold starts.
  */
 public class Main {
+
+    private static final long TRAINING_TIMEOUT_MILLIS = 120_000;
+
     public static void main(String[] args) {
+        // Connect to MySQL and prepare the first query's statements while the UI is being built
+        Startup.warmUp();
+        // Start loading the in-memory copy of wine_table in parallel as well, if enabled with -Dwine.inMemory=true
+        WineStore.start();
+        // Poll for inserted rows, so open results and caches are extended instead of re-read
+        ChangePoller.start();
+        // The sample behind instant estimates scans the whole table; let the first query go first
+        Startup.afterFirstResult(TableSample::start);
+        // Keeps monthly partitions ahead of the calendar if wine_table is partitioned
+        Startup.afterFirstResult(PartitionManager::start);
+
+        if (Arrays.asList(args).contains("--train")) {
+            train();
+            return;
+        }
+
         // Ensure the UI is created on the Event Dispatch Thread
         SwingUtilities.invokeLater(() -> {
             JFrame frame = new JFrame("Wine Database System");
@@ -19,6 +54,7 @@ public class Main {
             // Create an instance of GenericUIApp and add it to the frame
             GenericUIApp appPanel = new GenericUIApp();
             frame.add(appPanel);
+            Startup.milestone("UI built");
 
             // Center the frame on the screen
             frame.setLocationRelativeTo(null);
@@ -27,14 +63,47 @@ public class Main {
             frame.addWindowListener(new WindowAdapter() {
                 @Override
                 public void windowClosing(WindowEvent e) {
-                    // Perform any necessary cleanup here
-                    // For example, close database connections if not handled elsewhere
+                    // Close pooled database connections before exiting
+                    DBConnection.shutdown();
                     System.exit(0); // Ensure the application exits
                 }
             });
 
             // Make the frame visible
             frame.setVisible(true);
+            Startup.milestone("window shown");
+        });
+    }
+
+    /**
+     * Training run for the class-data-sharing archive: builds the UI off screen, waits for the
+     * first result, exercises the statistics, estimate and paging paths, and exits.
+     */
+    private static void train() {
+        Startup.afterFirstResult(() -> new Thread(() -> {
+            QueryHandler.computeStatistics(List.of(), null);
+            QueryHandler.estimateCustomQuery(List.of());
+            QueryHandler.nextPage(QueryHandler.firstPage(List.of(), 50));
+            System.out.println("Training run finished.");
+            DBConnection.shutdown();
+            System.exit(0);
+        }, "wine-training").start());
+
+        Thread watchdog = new Thread(() -> {
+            try {
+                Thread.sleep(TRAINING_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            System.err.println("Training run did not reach a first result; exiting.");
+            System.exit(1);
+        }, "wine-training-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+
+        SwingUtilities.invokeLater(() -> {
+            new GenericUIApp();
+            Startup.milestone("UI built");
         });
     }
 }
@@ -0,0 +1,228 @@
+package UI;
+
+import database.QueryHandler;
+import database.QueryResult;
+import database.WineFilter;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Table model that loads matching wines one page at a time as the table asks for rows.
+ * <p>
+ * Only a handful of pages are kept in memory, so memory stays flat however large
+ * {@code wine_table} grows. Pages are fetched in the background with keyset pagination on
+ * {@code id}: the next page continues after the last id of the previous one, and a jump to an
+ * unvisited page first looks up its starting id, counting from the nearest page boundary already
+ * seen (before or after it) rather than from the first row. Until a page arrives its cells show
+ * a placeholder.
+ * Rows inserted later have higher ids, so they only extend the end of the table
+ * ({@link #rowsInserted(int)}).
+ * <p>
+ * All state is confined to the Event Dispatch Thread; background threads only run queries.
+ */
+public class PagedWineTableModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int PAGE_SIZE = 500;
+    private static final int MAX_CACHED_PAGES = 16;
+    private static final String LOADING_TEXT = "Loading...";
+
+    // Newest request first: when the user scrolls quickly the page now in view loads before skipped ones
+    private static final ExecutorService PAGE_LOADER = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS,
+            new LinkedBlockingDeque<Runnable>() {
+                @Override
+                public boolean offer(Runnable task) {
+                    return offerFirst(task);
+                }
+            },
+            r -> {
+                Thread t = new Thread(r, "wine-page-loader");
+                t.setDaemon(true);
+                return t;
+            });
+
+    private final List<WineFilter> filters;
+    private int rowCount;
+    private int generation; // Incremented when rows are inserted; pages read before that may be short
+    private final String[] columnNames;
+    private final Map<Integer, QueryResult> pages = new LinkedHashMap<>(MAX_CACHED_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, QueryResult> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+    private final TreeMap<Integer, Integer> lastIdOfPage = new TreeMap<>(); // keyset anchors, one int per visited page
+    private final Set<Integer> loading = new HashSet<>();
+
+    private PagedWineTableModel(List<WineFilter> filters, int rowCount, QueryResult firstPage) {
+        this.filters = filters;
+        this.rowCount = rowCount;
+        this.columnNames = firstPage.getColumnNames();
+        storePage(0, firstPage);
+    }
+
+    /**
+     * Counts the matching rows and fetches the first page. Blocking; call off the EDT.
+     *
+     * @param filters The filters to AND together.
+     * @param limit   The LIMIT value, or null if not applicable.
+     * @return A model ready to be attached to a table.
+     */
+    public static PagedWineTableModel load(List<WineFilter> filters, Integer limit) {
+        List<WineFilter> snapshot = List.copyOf(filters);
+        int rowCount = QueryHandler.countMatching(snapshot, limit);
+        QueryResult firstPage = QueryHandler.fetchPageAfter(snapshot, null, Math.min(PAGE_SIZE, Math.max(rowCount, 1)));
+        return new PagedWineTableModel(snapshot, rowCount, firstPage);
+    }
+
+    /**
+     * Counts the matching rows with an id up to a high-watermark and fetches the first page.
+     * Rows above the watermark are left for {@link #rowsInserted(int)}. Blocking; call off the EDT.
+     *
+     * @param filters The filters to AND together.
+     * @param maxId   The highest id to include in the count.
+     * @return A model ready to be attached to a table.
+     */
+    public static PagedWineTableModel loadUpTo(List<WineFilter> filters, long maxId) {
+        List<WineFilter> snapshot = List.copyOf(filters);
+        int rowCount = QueryHandler.countMatchingUpTo(snapshot, null, maxId);
+        QueryResult firstPage = QueryHandler.fetchPageAfter(snapshot, null, PAGE_SIZE);
+        return new PagedWineTableModel(snapshot, rowCount, firstPage);
+    }
+
+    /**
+     * Extends the table by rows inserted into wine_table, which sort after every row shown.
+     * Only the last, partly filled page is dropped so that it is read again with its new rows.
+     *
+     * @param count The number of inserted rows that match the filters.
+     */
+    public void rowsInserted(int count) {
+        if (count <= 0) {
+            return;
+        }
+        int oldCount = rowCount;
+        generation++;
+        if (oldCount % PAGE_SIZE != 0) {
+            int lastPage = oldCount / PAGE_SIZE;
+            pages.remove(lastPage);
+            lastIdOfPage.remove(lastPage);
+        }
+        rowCount += count;
+        fireTableRowsInserted(oldCount, rowCount - 1);
+        if (oldCount % PAGE_SIZE != 0) {
+            fireTableRowsUpdated(oldCount / PAGE_SIZE * PAGE_SIZE, oldCount - 1);
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int pageIndex = row / PAGE_SIZE;
+        QueryResult page = pages.get(pageIndex);
+        if (page == null) {
+            requestPage(pageIndex);
+            return LOADING_TEXT;
+        }
+        int offset = row % PAGE_SIZE;
+        if (offset >= page.getRowCount()) {
+            return ""; // rows were deleted since the count was taken
+        }
+        if (offset == page.getRowCount() - 1) {
+            requestPage(pageIndex + 1); // prefetch while the user scrolls down
+        }
+        return page.getValueAt(offset, column);
+    }
+
+    private void requestPage(int pageIndex) {
+        if (pageIndex * PAGE_SIZE >= rowCount || pages.containsKey(pageIndex) || !loading.add(pageIndex)) {
+            return;
+        }
+        // Read the anchors on the EDT; the loader thread only runs queries
+        Integer knownAfterId = pageIndex == 0 ? null : lastIdOfPage.get(pageIndex - 1);
+        boolean anchorKnown = pageIndex == 0 || knownAfterId != null;
+        Map.Entry<Integer, Integer> before = lastIdOfPage.floorEntry(pageIndex - 1);
+        Map.Entry<Integer, Integer> after = lastIdOfPage.ceilingEntry(pageIndex);
+        int requestedIn = generation;
+
+        PAGE_LOADER.execute(() -> {
+            Integer afterId = anchorKnown ? knownAfterId : seekAnchor(pageIndex, before, after);
+            // No anchor means the rows before this page were deleted since the count was taken
+            QueryResult page = anchorKnown || afterId != null
+                    // Always a full page: the table may have grown by the time it arrives
+                    ? QueryHandler.fetchPageAfter(filters, afterId, PAGE_SIZE)
+                    : QueryResult.empty();
+            SwingUtilities.invokeLater(() -> {
+                loading.remove(pageIndex);
+                if (requestedIn != generation && page.getRowCount() < PAGE_SIZE) {
+                    // Read before rows were inserted and may lack them; the repaint requests it again
+                    fireTableRowsUpdated(pageIndex * PAGE_SIZE, Math.min((pageIndex + 1) * PAGE_SIZE, rowCount) - 1);
+                    return;
+                }
+                storePage(pageIndex, page);
+                int first = pageIndex * PAGE_SIZE;
+                int last = Math.min(first + PAGE_SIZE, rowCount) - 1;
+                fireTableRowsUpdated(first, last);
+            });
+        });
+    }
+
+    /**
+     * Looks up the last id before a page from the nearest visited page boundary, so that a jump
+     * scans the rows between the two pages instead of every row from the start. Runs on a loader thread.
+     *
+     * @param pageIndex The page to find the anchor of.
+     * @param before    The closest visited page before it and its last id, or null.
+     * @param after     The closest visited page from it onwards and its last id, or null.
+     * @return The id of the row just before the page, or null if there is none.
+     */
+    private Integer seekAnchor(int pageIndex, Map.Entry<Integer, Integer> before, Map.Entry<Integer, Integer> after) {
+        // Row pageIndex * PAGE_SIZE - 1 is the anchor; page k ends at row (k + 1) * PAGE_SIZE - 1
+        int rowsAfterBefore = (pageIndex - (before == null ? 0 : before.getKey() + 1)) * PAGE_SIZE - 1;
+        if (after != null) {
+            int rowsBeforeAfter = (after.getKey() + 1 - pageIndex) * PAGE_SIZE - 1;
+            if (rowsBeforeAfter < rowsAfterBefore) {
+                return QueryHandler.findIdBefore(filters, after.getValue(), rowsBeforeAfter);
+            }
+        }
+        return QueryHandler.findIdAtOffset(filters, before == null ? null : before.getValue(), rowsAfterBefore);
+    }
+
+    private void storePage(int pageIndex, QueryResult page) {
+        pages.put(pageIndex, page);
+        int idColumn = page.findColumn("id");
+        if (idColumn >= 0 && page.getRowCount() > 0) {
+            lastIdOfPage.put(pageIndex, page.getColumn(idColumn).getInt(page.getRowCount() - 1));
+        }
+    }
+}
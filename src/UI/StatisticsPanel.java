@@ -0,0 +1,283 @@
+package UI;
+
+import database.QueryCoordinator;
+import database.QueryExecutor;
+import database.QueryHandler;
+import database.WineEstimate;
+import database.WineFilter;
+import database.WineStatistics;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableCellRenderer;
+import java.awt.*;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shows summary statistics (count, min, max, mean, standard deviation, percentiles and a
+ * histogram) of every numeric column for the wines matching the active filters, optionally
+ * per quality or color. The numbers are computed by MySQL or the in-memory store; no rows are
+ * transferred to the UI.
+ */
+public class StatisticsPanel extends JPanel {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = Logger.getLogger(StatisticsPanel.class.getName());
+
+    private static final String NO_GROUPING = "No grouping";
+    private static final String GROUP_BY_QUALITY = "Group by quality";
+    private static final String GROUP_BY_COLOR = "Group by color";
+
+    private final StatisticsTableModel tableModel = new StatisticsTableModel();
+    private final JComboBox<String> groupByComboBox =
+            new JComboBox<>(new String[]{NO_GROUPING, GROUP_BY_QUALITY, GROUP_BY_COLOR});
+    private final JLabel statusLabel = new JLabel(" ");
+    private final QueryCoordinator queryCoordinator = new QueryCoordinator();
+
+    private List<WineFilter> filters = List.of();
+    private boolean stale = true; // filters changed since the statistics were computed
+    private boolean exactShown;   // the table holds exact statistics for the current filters
+
+    public StatisticsPanel() {
+        super(new BorderLayout());
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        groupByComboBox.addActionListener(e -> refresh());
+        controls.add(groupByComboBox);
+
+        JButton refreshButton = new JButton("Refresh");
+        refreshButton.addActionListener(e -> refresh());
+        controls.add(refreshButton);
+        controls.add(statusLabel);
+        add(controls, BorderLayout.NORTH);
+
+        JTable table = new JTable(tableModel);
+        table.setDefaultRenderer(long[].class, new HistogramRenderer());
+        table.setRowHeight(22);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+    }
+
+    /**
+     * Sets the filters the statistics are computed for. Recomputes right away if the panel is
+     * on screen, otherwise the next time it is shown.
+     *
+     * @param filters The active filters.
+     */
+    public void setFilters(List<WineFilter> filters) {
+        this.filters = List.copyOf(filters);
+        stale = true;
+        exactShown = false;
+        if (isShowing()) {
+            refresh();
+        }
+    }
+
+    /**
+     * Shows approximate statistics until the exact ones for the current filters are computed.
+     * Ignored if the exact statistics are already on screen.
+     *
+     * @param estimate The estimate for the current filters.
+     */
+    public void showEstimate(WineEstimate estimate) {
+        if (exactShown) {
+            return;
+        }
+        tableModel.setStatistics(estimate.getStatistics(), true);
+        statusLabel.setText("Estimated from a sample of " + estimate.getSampleSize() + " wines"
+                + (stale ? "; Refresh for exact statistics" : "; computing exact statistics..."));
+    }
+
+    /**
+     * Recomputes the statistics if the filters changed since they were last computed.
+     */
+    public void refreshIfStale() {
+        if (stale) {
+            refresh();
+        }
+    }
+
+    private void refresh() {
+        stale = false;
+        List<WineFilter> snapshot = filters;
+        WineFilter.Field groupBy = selectedGroupBy();
+        statusLabel.setText("Computing...");
+        QueryCoordinator.Ticket ticket = queryCoordinator.begin();
+        long start = System.nanoTime();
+
+        // The per-column queries fan out from here and register with the same ticket
+        QueryExecutor.submit(ticket, () -> QueryHandler.computeStatistics(snapshot, groupBy))
+                .whenComplete((statistics, error) -> SwingUtilities.invokeLater(() -> {
+                    if (!queryCoordinator.isCurrent(ticket)) {
+                        return;
+                    }
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error;
+                        LOGGER.log(Level.SEVERE, "Error computing statistics: {0}", cause.toString());
+                        statusLabel.setText("Error computing statistics: " + cause.getMessage());
+                        return;
+                    }
+                    if (statistics == null) {
+                        statusLabel.setText("Statistics could not be computed.");
+                        return;
+                    }
+                    tableModel.setStatistics(statistics, false);
+                    exactShown = true;
+                    statusLabel.setText("Wines matching " + snapshot.size() + " active filter(s), LIMIT ignored ("
+                            + (System.nanoTime() - start) / 1_000_000 + " ms)");
+                }));
+    }
+
+    private WineFilter.Field selectedGroupBy() {
+        Object selected = groupByComboBox.getSelectedItem();
+        if (GROUP_BY_QUALITY.equals(selected)) {
+            return WineFilter.Field.QUALITY;
+        }
+        if (GROUP_BY_COLOR.equals(selected)) {
+            return WineFilter.Field.COLOR;
+        }
+        return null;
+    }
+
+    // -------------------------------------------------------
+    //                  Table model and rendering
+    // -------------------------------------------------------
+
+    /**
+     * One row per group and column. Estimated values are prefixed with "~".
+     */
+    private static final class StatisticsTableModel extends AbstractTableModel {
+        private static final long serialVersionUID = 1L;
+        private static final String[] COLUMN_NAMES = {"Group", "Column", "Count", "Distinct", "Min", "Max",
+                "Mean", "Std dev", "P5", "P25", "Median", "P75", "P95", "Histogram"};
+        private static final int FIRST_PERCENTILE_COLUMN = 8;
+        private static final int HISTOGRAM_COLUMN = 13;
+
+        private final List<String> groups = new ArrayList<>();
+        private final List<WineStatistics.ColumnSummary> summaries = new ArrayList<>();
+        private boolean estimated;
+
+        private void setStatistics(WineStatistics statistics, boolean estimated) {
+            this.estimated = estimated;
+            groups.clear();
+            summaries.clear();
+            for (Map.Entry<String, List<WineStatistics.ColumnSummary>> group : statistics.getGroups().entrySet()) {
+                for (WineStatistics.ColumnSummary summary : group.getValue()) {
+                    groups.add(group.getKey());
+                    summaries.add(summary);
+                }
+            }
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return summaries.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMN_NAMES.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMN_NAMES[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return column == HISTOGRAM_COLUMN ? long[].class : String.class;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            WineStatistics.ColumnSummary summary = summaries.get(row);
+            if (column >= FIRST_PERCENTILE_COLUMN && column < HISTOGRAM_COLUMN) {
+                return format(summary.getPercentiles()[column - FIRST_PERCENTILE_COLUMN]);
+            }
+            switch (column) {
+                case 0:
+                    return groups.get(row);
+                case 1:
+                    return summary.getColumn();
+                case 2:
+                    return approximate(String.valueOf(summary.getCount()));
+                case 3:
+                    return summary.getDistinct() < 0 ? "-" : approximate(String.valueOf(summary.getDistinct()));
+                case 4:
+                    return format(summary.getMin());
+                case 5:
+                    return format(summary.getMax());
+                case 6:
+                    return format(summary.getMean());
+                case 7:
+                    return format(summary.getStddev());
+                default:
+                    return summary.getHistogram();
+            }
+        }
+
+        private String format(double value) {
+            if (Double.isNaN(value)) {
+                return "-";
+            }
+            return approximate(new BigDecimal(value).round(new MathContext(5)).stripTrailingZeros().toPlainString());
+        }
+
+        private String approximate(String value) {
+            return estimated ? "~" + value : value;
+        }
+    }
+
+    /**
+     * Draws a histogram as a row of bars scaled to the largest bin.
+     */
+    private static final class HistogramRenderer extends JComponent implements TableCellRenderer {
+        private static final long serialVersionUID = 1L;
+        private long[] bins = new long[0];
+        private boolean selected;
+        private Color selectionBackground;
+
+        @Override
+        public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                       boolean hasFocus, int row, int column) {
+            bins = value instanceof long[] ? (long[]) value : new long[0];
+            selected = isSelected;
+            selectionBackground = table.getSelectionBackground();
+            setToolTipText(Arrays.toString(bins));
+            return this;
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            if (selected) {
+                g.setColor(selectionBackground);
+                g.fillRect(0, 0, getWidth(), getHeight());
+            }
+            long largest = 0;
+            for (long bin : bins) {
+                largest = Math.max(largest, bin);
+            }
+            if (largest == 0) {
+                return;
+            }
+            int barWidth = Math.max(1, (getWidth() - 4) / bins.length);
+            int height = getHeight() - 4;
+            g.setColor(new Color(128, 0, 32));
+            for (int i = 0; i < bins.length; i++) {
+                int barHeight = (int) Math.round((double) bins[i] / largest * height);
+                g.fillRect(2 + i * barWidth, 2 + height - barHeight, Math.max(1, barWidth - 1), barHeight);
+            }
+        }
+    }
+}
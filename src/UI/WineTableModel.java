@@ -0,0 +1,74 @@
+package UI;
+
+import database.QueryResult;
+
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Table model that renders a columnar {@link QueryResult} directly.
+ * Cells are formatted only when the table paints them, so no per-row copy of the result is kept.
+ */
+public class WineTableModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = 1L;
+
+    private QueryResult result = QueryResult.empty();
+
+    /**
+     * Replaces the displayed result.
+     *
+     * @param result The result to display.
+     */
+    public void setResult(QueryResult result) {
+        this.result = result;
+        fireTableStructureChanged();
+    }
+
+    /**
+     * Replaces the displayed result with one that extends it by more rows, as delivered by a
+     * streaming query. Only the new rows are announced, so the scroll position and column
+     * layout are kept.
+     *
+     * @param grown A result with the same columns and at least as many rows.
+     */
+    public void appendRows(QueryResult grown) {
+        int oldCount = result.getRowCount();
+        if (grown.getColumnCount() != result.getColumnCount() || grown.getRowCount() < oldCount) {
+            setResult(grown);
+            return;
+        }
+        result = grown;
+        if (grown.getRowCount() > oldCount) {
+            fireTableRowsInserted(oldCount, grown.getRowCount() - 1);
+        }
+    }
+
+    public QueryResult getResult() {
+        return result;
+    }
+
+    @Override
+    public int getRowCount() {
+        return result.getRowCount();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return result.getColumnCount();
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return result.getColumn(column).getName();
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        return result.getValueAt(row, column);
+    }
+}
@@ -0,0 +1,545 @@
+package UI;
+
+import database.DBConnection;
+import database.QueryHandler;
+import database.QueryResult;
+import database.WineFilter;
+import database.WineStatistics;
+import database.WineStore;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs named query scenarios against {@link QueryHandler} without the UI and reports the
+ * throughput and latency percentiles of each, for load tests, capacity planning and tracking
+ * regressions between builds.
+ * <p>
+ * Usage: {@code java UI.WorkloadRunner [--scenarios file] [--csv file] [--store] [--cache] [--verbose] [name ...]}
+ * <p>
+ * Without {@code --scenarios} a built-in set is run. A scenario file is a properties file with
+ * one group of keys per scenario:
+ * <pre>
+ * # operation is query, count, page or statistics
+ * high_alcohol.operation = query
+ * high_alcohol.filters = alcohol=12..; color=red
+ * high_alcohol.limit = 1000
+ * high_alcohol.concurrency = 8
+ * high_alcohol.durationSeconds = 30
+ * high_alcohol.warmupSeconds = 5
+ * </pre>
+ * Filters are separated by {@code ;}: {@code quality=...}, {@code color=...}, {@code id=1,2,3},
+ * and ranges {@code id|alcohol|ph|density|date=min..max} with either bound optional.
+ * <p>
+ * Each worker thread issues requests back to back for the duration (closed loop), so the
+ * throughput is the capacity at that concurrency. {@code --csv} appends one line per scenario
+ * to a file to compare runs over time. {@code --store} loads the in-memory copy of the table
+ * first, as the application does. The result cache, the disk cache and the sharing of identical
+ * concurrent queries are turned off, since a scenario repeats the same request and would otherwise
+ * mostly measure cache hits; {@code --cache} leaves them as the application has them. A request
+ * counts as an error if any query it ran failed, even though the query layer then returns an
+ * empty result; the exit status is 1 if there was any. The per-query log is suppressed while
+ * measuring unless {@code --verbose} is given.
+ */
+public class WorkloadRunner {
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final long STORE_LOAD_TIMEOUT_MILLIS = 300_000;
+    private static final String CSV_HEADER = "timestamp,scenario,operation,concurrency,seconds,operations,errors,"
+            + "ops_per_second,rows_per_second,mean_ms,p50_ms,p95_ms,p99_ms,p999_ms,max_ms";
+
+    /**
+     * The QueryHandler entry points a scenario can exercise.
+     */
+    private enum Operation {
+        QUERY, COUNT, PAGE, STATISTICS
+    }
+
+    /**
+     * One named workload: what to run, with how many threads, for how long.
+     */
+    private static final class Scenario {
+        private final String name;
+        private final Operation operation;
+        private final List<WineFilter> filters;
+        private final Integer limit;
+        private final int concurrency;
+        private final int durationSeconds;
+        private final int warmupSeconds;
+
+        private Scenario(String name, Operation operation, List<WineFilter> filters, Integer limit,
+                         int concurrency, int durationSeconds, int warmupSeconds) {
+            if (concurrency <= 0 || durationSeconds <= 0 || warmupSeconds < 0) {
+                throw new IllegalArgumentException("Scenario " + name + ": concurrency and duration must be positive.");
+            }
+            this.name = name;
+            this.operation = operation;
+            this.filters = filters;
+            this.limit = limit;
+            this.concurrency = concurrency;
+            this.durationSeconds = durationSeconds;
+            this.warmupSeconds = warmupSeconds;
+        }
+
+        /**
+         * Runs the operation once.
+         *
+         * @return The number of rows returned, or -1 if the request failed.
+         */
+        private long execute() {
+            // Failed queries come back as empty results, so check the failure count instead
+            int failures = QueryHandler.failedQueries();
+            long rows;
+            switch (operation) {
+                case QUERY:
+                    rows = QueryHandler.executeCustomQuery(filters, limit).getRowCount();
+                    break;
+                case COUNT:
+                    QueryHandler.countMatching(filters, limit);
+                    rows = 1;
+                    break;
+                case PAGE:
+                    QueryResult page = QueryHandler.firstPage(filters, limit != null ? limit : DEFAULT_PAGE_SIZE).getRows();
+                    rows = page.getRowCount();
+                    break;
+                case STATISTICS:
+                    WineStatistics statistics = QueryHandler.computeStatistics(filters, null);
+                    rows = statistics != null ? 1 : -1;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown operation: " + operation);
+            }
+            return QueryHandler.failedQueries() == failures ? rows : -1;
+        }
+    }
+
+    /**
+     * Latency counts in logarithmic buckets: 64 per power of two, so any percentile is within
+     * about 1.6% of the exact value while memory stays fixed however many requests are timed.
+     */
+    private static final class LatencyHistogram {
+        private static final int SUB_BUCKET_BITS = 6;
+        private static final int SUB_BUCKET_MASK = (1 << SUB_BUCKET_BITS) - 1;
+
+        private final long[] counts = new long[64 << SUB_BUCKET_BITS];
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+
+        void record(long nanos) {
+            counts[index(nanos)]++;
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        void add(LatencyHistogram other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            count += other.count;
+            totalNanos += other.totalNanos;
+            maxNanos = Math.max(maxNanos, other.maxNanos);
+        }
+
+        double meanMillis() {
+            return count == 0 ? 0 : totalNanos / 1e6 / count;
+        }
+
+        double maxMillis() {
+            return maxNanos / 1e6;
+        }
+
+        /**
+         * @param quantile A quantile in (0, 1], e.g. 0.999.
+         * @return The upper bound of the bucket holding that quantile, in milliseconds.
+         */
+        double percentileMillis(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(lowerBound(i + 1) - 1, maxNanos) / 1e6;
+                }
+            }
+            return maxMillis();
+        }
+
+        private static int index(long nanos) {
+            if (nanos <= SUB_BUCKET_MASK) {
+                return (int) Math.max(nanos, 0);
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+            return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((nanos >>> shift) & SUB_BUCKET_MASK);
+        }
+
+        private static long lowerBound(int index) {
+            int group = index >>> SUB_BUCKET_BITS;
+            int subBucket = index & SUB_BUCKET_MASK;
+            return group == 0 ? subBucket : (long) (SUB_BUCKET_MASK + 1 + subBucket) << (group - 1);
+        }
+    }
+
+    /**
+     * The outcome of one scenario.
+     */
+    private static final class Report {
+        private final Scenario scenario;
+        private final LatencyHistogram latencies;
+        private final long errors;
+        private final long rows;
+        private final double seconds;
+
+        private Report(Scenario scenario, LatencyHistogram latencies, long errors, long rows, double seconds) {
+            this.scenario = scenario;
+            this.latencies = latencies;
+            this.errors = errors;
+            this.rows = rows;
+            this.seconds = seconds;
+        }
+
+        private double opsPerSecond() {
+            return latencies.count / seconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-20s %-10s %4d %10d %7d %10.1f %12.0f %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f",
+                    scenario.name, scenario.operation.name().toLowerCase(), scenario.concurrency, latencies.count,
+                    errors, opsPerSecond(), rows / seconds, latencies.meanMillis(), latencies.percentileMillis(0.50),
+                    latencies.percentileMillis(0.95), latencies.percentileMillis(0.99),
+                    latencies.percentileMillis(0.999), latencies.maxMillis());
+        }
+
+        private String toCsv(LocalDateTime timestamp) {
+            return String.format(Locale.ROOT, "%s,%s,%s,%d,%.1f,%d,%d,%.1f,%.1f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f",
+                    timestamp, scenario.name, scenario.operation.name().toLowerCase(), scenario.concurrency, seconds,
+                    latencies.count, errors, opsPerSecond(), rows / seconds, latencies.meanMillis(),
+                    latencies.percentileMillis(0.50), latencies.percentileMillis(0.95),
+                    latencies.percentileMillis(0.99), latencies.percentileMillis(0.999), latencies.maxMillis());
+        }
+    }
+
+    public static void main(String[] args) {
+        String scenarioFile = null;
+        String csvFile = null;
+        boolean useStore = false;
+        boolean useCache = false;
+        boolean verbose = false;
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--scenarios":
+                case "--csv":
+                    if (i + 1 == args.length) {
+                        usage();
+                    }
+                    if (args[i].equals("--scenarios")) {
+                        scenarioFile = args[++i];
+                    } else {
+                        csvFile = args[++i];
+                    }
+                    break;
+                case "--store":
+                    useStore = true;
+                    break;
+                case "--cache":
+                    useCache = true;
+                    break;
+                case "--verbose":
+                    verbose = true;
+                    break;
+                default:
+                    if (args[i].startsWith("--")) {
+                        usage();
+                    }
+                    names.add(args[i]);
+            }
+        }
+        if (!useCache) {
+            // Read when the database classes load, so this must precede the first query
+            System.setProperty("wine.cache", "false");
+            System.setProperty("wine.diskCache", "false");
+            System.setProperty("wine.singleFlight", "false");
+        }
+
+        int status = 0;
+        PrintStream out = System.out;
+        try {
+            Map<String, Scenario> scenarios = scenarioFile != null ? loadScenarios(scenarioFile) : defaultScenarios();
+            List<Scenario> selected = new ArrayList<>();
+            for (String name : names.isEmpty() ? new ArrayList<>(scenarios.keySet()) : names) {
+                Scenario scenario = scenarios.get(name);
+                if (scenario == null) {
+                    throw new IllegalArgumentException("Unknown scenario: " + name + " (known: " + scenarios.keySet() + ")");
+                }
+                selected.add(scenario);
+            }
+
+            if (useStore) {
+                loadStore();
+            }
+            if (!verbose) {
+                System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            }
+
+            LocalDateTime timestamp = LocalDateTime.now().withNano(0);
+            List<Report> reports = new ArrayList<>();
+            out.printf("%-20s %-10s %4s %10s %7s %10s %12s %9s %9s %9s %9s %9s %9s%n", "scenario", "operation",
+                    "thr", "ops", "errors", "ops/s", "rows/s", "mean ms", "p50 ms", "p95 ms", "p99 ms", "p999 ms", "max ms");
+            for (Scenario scenario : selected) {
+                Report report = run(scenario);
+                reports.add(report);
+                out.println(report);
+                if (report.errors > 0) {
+                    status = 1;
+                }
+            }
+            if (csvFile != null) {
+                appendCsv(csvFile, timestamp, reports);
+            }
+        } catch (IOException | IllegalArgumentException | InterruptedException e) {
+            System.err.println("Error running the workload: " + e.getMessage());
+            status = 2;
+        } finally {
+            System.setOut(out);
+            DBConnection.shutdown();
+        }
+        System.exit(status);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java UI.WorkloadRunner [--scenarios file] [--csv file] [--store] [--cache] [--verbose] [name ...]");
+        System.exit(2);
+    }
+
+    /**
+     * Runs a scenario's warm-up and measurement phases on its own set of worker threads.
+     */
+    private static Report run(Scenario scenario) throws InterruptedException {
+        long warmupEnd = System.nanoTime() + scenario.warmupSeconds * 1_000_000_000L;
+        long end = warmupEnd + scenario.durationSeconds * 1_000_000_000L;
+        LatencyHistogram[] histograms = new LatencyHistogram[scenario.concurrency];
+        long[] errors = new long[scenario.concurrency];
+        long[] rows = new long[scenario.concurrency];
+        AtomicBoolean failed = new AtomicBoolean();
+        CountDownLatch finished = new CountDownLatch(scenario.concurrency);
+
+        for (int t = 0; t < scenario.concurrency; t++) {
+            int worker = t;
+            histograms[worker] = new LatencyHistogram();
+            Thread thread = new Thread(() -> {
+                try {
+                    long now = System.nanoTime();
+                    while (now < end) {
+                        long result;
+                        try {
+                            result = scenario.execute();
+                        } catch (RuntimeException e) {
+                            if (failed.compareAndSet(false, true)) {
+                                System.err.println("Scenario " + scenario.name + " failed: " + e);
+                            }
+                            result = -1;
+                        }
+                        long finish = System.nanoTime();
+                        if (now >= warmupEnd) {
+                            histograms[worker].record(finish - now);
+                            if (result < 0) {
+                                errors[worker]++;
+                            } else {
+                                rows[worker] += result;
+                            }
+                        }
+                        now = finish;
+                    }
+                } finally {
+                    finished.countDown();
+                }
+            }, "wine-workload-" + scenario.name + "-" + worker);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        finished.await();
+
+        LatencyHistogram total = new LatencyHistogram();
+        long totalErrors = 0;
+        long totalRows = 0;
+        for (int t = 0; t < scenario.concurrency; t++) {
+            total.add(histograms[t]);
+            totalErrors += errors[t];
+            totalRows += rows[t];
+        }
+        // Requests still running at the deadline finish late; measure until the last one did
+        double seconds = Math.max(System.nanoTime() - warmupEnd, 1) / 1e9;
+        return new Report(scenario, total, totalErrors, totalRows, seconds);
+    }
+
+    private static void loadStore() throws InterruptedException {
+        WineStore.enable();
+        long deadline = System.currentTimeMillis() + STORE_LOAD_TIMEOUT_MILLIS;
+        while (!WineStore.isLoaded()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalArgumentException("The in-memory store did not load within "
+                        + STORE_LOAD_TIMEOUT_MILLIS / 1000 + " s.");
+            }
+            Thread.sleep(100);
+        }
+    }
+
+    private static void appendCsv(String file, LocalDateTime timestamp, List<Report> reports) throws IOException {
+        boolean exists = new File(file).length() > 0;
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file, true))) {
+            if (!exists) {
+                writer.println(CSV_HEADER);
+            }
+            for (Report report : reports) {
+                writer.println(report.toCsv(timestamp));
+            }
+        }
+    }
+
+    // -------------------------------------------------------
+    //                  Scenario definitions
+    // -------------------------------------------------------
+
+    /**
+     * The scenarios run when no file is given: one per kind of request the UI sends.
+     */
+    private static Map<String, Scenario> defaultScenarios() {
+        Map<String, Scenario> scenarios = new LinkedHashMap<>();
+        scenarios.put("quality", new Scenario("quality", Operation.QUERY,
+                List.of(WineFilter.quality("neutral")), null, 4, 20, 5));
+        scenarios.put("alcohol_range", new Scenario("alcohol_range", Operation.QUERY,
+                List.of(WineFilter.alcoholRange(10.0, 12.0), WineFilter.color("red")), 1000, 4, 20, 5));
+        scenarios.put("count", new Scenario("count", Operation.COUNT,
+                List.of(WineFilter.phRange(3.0, 3.4)), null, 4, 20, 5));
+        scenarios.put("page", new Scenario("page", Operation.PAGE,
+                List.of(WineFilter.color("white")), DEFAULT_PAGE_SIZE, 8, 20, 5));
+        scenarios.put("statistics", new Scenario("statistics", Operation.STATISTICS,
+                List.of(), null, 2, 20, 5));
+        return scenarios;
+    }
+
+    private static Map<String, Scenario> loadScenarios(String file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+        List<String> names = new ArrayList<>();
+        for (String key : properties.stringPropertyNames()) {
+            String name = key.substring(0, Math.max(key.lastIndexOf('.'), 0));
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("Scenario key without a scenario name: " + key);
+            }
+            if (!names.contains(name)) {
+                names.add(name);
+            }
+        }
+        names.sort(null);
+
+        Map<String, Scenario> scenarios = new LinkedHashMap<>();
+        for (String name : names) {
+            String operation = properties.getProperty(name + ".operation", "query").trim();
+            String limit = properties.getProperty(name + ".limit");
+            try {
+                scenarios.put(name, new Scenario(name, Operation.valueOf(operation.toUpperCase()),
+                        parseFilters(properties.getProperty(name + ".filters", "")),
+                        limit != null ? Integer.valueOf(limit.trim()) : null,
+                        Integer.parseInt(properties.getProperty(name + ".concurrency", "1").trim()),
+                        Integer.parseInt(properties.getProperty(name + ".durationSeconds", "30").trim()),
+                        Integer.parseInt(properties.getProperty(name + ".warmupSeconds", "5").trim())));
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                throw new IllegalArgumentException("Scenario " + name + ": " + e.getMessage(), e);
+            }
+        }
+        return scenarios;
+    }
+
+    /**
+     * Parses filters such as {@code quality=neutral; alcohol=10..12; id=1,2,3}.
+     */
+    private static List<WineFilter> parseFilters(String text) {
+        List<WineFilter> filters = new ArrayList<>();
+        for (String part : text.split(";")) {
+            if (part.isBlank()) {
+                continue;
+            }
+            int equals = part.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Filter must be field=value: " + part.trim());
+            }
+            String field = part.substring(0, equals).trim().toLowerCase();
+            String value = part.substring(equals + 1).trim();
+            int range = value.indexOf("..");
+            String min = range < 0 ? null : value.substring(0, range).trim();
+            String max = range < 0 ? null : value.substring(range + 2).trim();
+            switch (field) {
+                case "quality":
+                    filters.add(WineFilter.quality(value));
+                    break;
+                case "color":
+                    filters.add(WineFilter.color(value));
+                    break;
+                case "id":
+                    if (range >= 0) {
+                        filters.add(WineFilter.idRange(Integer.parseInt(min), Integer.parseInt(max)));
+                    } else {
+                        filters.add(WineFilter.idIn(Arrays.stream(value.split(","))
+                                .mapToInt(id -> Integer.parseInt(id.trim())).toArray()));
+                    }
+                    break;
+                case "alcohol":
+                    filters.add(WineFilter.alcoholRange(parseDouble(min, value, range), parseDouble(max, value, range)));
+                    break;
+                case "ph":
+                    filters.add(WineFilter.phRange(parseDouble(min, value, range), parseDouble(max, value, range)));
+                    break;
+                case "density":
+                    filters.add(WineFilter.densityRange(parseDouble(min, value, range), parseDouble(max, value, range)));
+                    break;
+                case "date":
+                    if (range < 0) {
+                        throw new IllegalArgumentException("Date filter must be a range: " + value);
+                    }
+                    filters.add(WineFilter.dateRange(min.isEmpty() ? null : LocalDate.parse(min),
+                            max.isEmpty() ? null : LocalDate.parse(max)));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown filter field: " + field);
+            }
+        }
+        return filters;
+    }
+
+    /**
+     * @return The bound, the single value if the filter is not a range, or null if it is open.
+     */
+    private static Double parseDouble(String bound, String value, int range) {
+        if (range < 0) {
+            return Double.valueOf(value);
+        }
+        return bound.isEmpty() ? null : Double.valueOf(bound);
+    }
+}
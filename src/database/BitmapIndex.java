@@ -0,0 +1,56 @@
+package database;
+
+/**
+ * One {@link RoaringBitmap} per distinct value of a dictionary-encoded column (quality, color).
+ * Equality and IN filters on such columns resolve to a bitmap without reading any row data.
+ */
+final class BitmapIndex {
+
+    private final RoaringBitmap[] byCode;
+
+    private BitmapIndex(RoaringBitmap[] byCode) {
+        this.byCode = byCode;
+    }
+
+    /**
+     * Builds the index in one pass over the column's codes. NULL rows are not indexed.
+     *
+     * @param column The column to index.
+     * @return The index.
+     */
+    static BitmapIndex build(Column.DictionaryColumn column) {
+        RoaringBitmap[] byCode = new RoaringBitmap[column.getDictionary().length];
+        for (int code = 0; code < byCode.length; code++) {
+            byCode[code] = new RoaringBitmap();
+        }
+        byte[] codes = column.codes();
+        for (int row = 0; row < column.size(); row++) {
+            if (!column.isNull(row)) {
+                byCode[codes[row] & 0xFF].add(row);
+            }
+        }
+        return new BitmapIndex(byCode);
+    }
+
+    /**
+     * @param codes The accepted dictionary codes.
+     * @return The rows whose value has one of the codes (the OR of their bitmaps).
+     */
+    RoaringBitmap lookup(int[] codes) {
+        RoaringBitmap result = new RoaringBitmap();
+        for (int code : codes) {
+            if (code < byCode.length) {
+                result = result.or(byCode[code]);
+            }
+        }
+        return result;
+    }
+
+    long estimatedBytes() {
+        long bytes = 0;
+        for (RoaringBitmap bitmap : byCode) {
+            bytes += bitmap.estimatedBytes();
+        }
+        return bytes;
+    }
+}
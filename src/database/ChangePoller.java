@@ -0,0 +1,254 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls {@code wine_table} for inserted rows and hands only those rows to its listeners, so
+ * that loaded results, caches and open tables can be extended by a delta instead of re-read.
+ * <p>
+ * The poller keeps a high-watermark id and asks for {@code id > watermark} in id order, a
+ * primary-key range read that costs next to nothing while the table is idle. After an empty
+ * poll (or an error) the delay doubles up to a maximum; any new rows reset it to the base
+ * interval, and a full batch is followed by another poll right away. Deletes and updates are
+ * not seen here; {@link TableWatermark} checks still catch those and trigger a full reload.
+ * <p>
+ * Auto-increment ids are handed out when a row is inserted, not when its transaction commits,
+ * so with concurrent writers id 101 can become visible after 102 was polled. Every id the
+ * watermark skipped over is therefore remembered as a gap and asked for again on each poll for
+ * {@code wine.poll.gapGraceMillis} (default one minute); a gap that fills in is delivered as a
+ * late row (see {@link Listener}). Gaps that never fill (rolled-back inserts, reserved ids) are
+ * forgotten after the grace period. Rows committed later than that, or below the watermark read
+ * at startup, are only caught by {@link TableWatermark} checks.
+ * <p>
+ * Disable with {@code -Dwine.poll=false}; the interval is {@code wine.poll.intervalMillis}.
+ */
+public final class ChangePoller {
+
+    private static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("wine.poll"));
+    private static final long BASE_INTERVAL_MILLIS = Long.getLong("wine.poll.intervalMillis", 5_000L);
+    private static final long MAX_INTERVAL_MILLIS = Long.getLong("wine.poll.maxIntervalMillis", 30_000L);
+    private static final int BATCH_SIZE = Integer.getInteger("wine.poll.batchSize", 10_000);
+    private static final long GAP_GRACE_MILLIS = Long.getLong("wine.poll.gapGraceMillis", 60_000L);
+    private static final int MAX_GAPS = 10_000;
+    private static final int MAX_GAPS_PER_POLL = 1_000;
+
+    private static final String MAX_ID_SQL = "SELECT COALESCE(MAX(id), 0) FROM wine_table";
+
+    // Skipped ids still expected to commit, with the time they are given up; poller thread only
+    private static final TreeMap<Long, Long> GAPS = new TreeMap<>();
+
+    private static final List<Listener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    private static ScheduledExecutorService poller;
+    private static ScheduledFuture<?> nextPoll;
+    private static volatile long highWatermark = -1;
+    private static long delayMillis = BASE_INTERVAL_MILLIS;
+
+    private ChangePoller() {
+    }
+
+    /**
+     * Receives the rows inserted since the previous poll.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the poller thread; implementations that touch the UI must hand off to the EDT.
+         * <p>
+         * Rows with an id above {@code afterId} are new: every row above it up to the last of
+         * {@code rows} that had committed when polled is included. Rows with an id at or below
+         * {@code afterId} are late: their transaction committed after a higher id was delivered,
+         * so they belong among rows seen before and cannot simply be appended. Rows committed
+         * after the gap grace period are not delivered at all.
+         *
+         * @param afterId The high-watermark before this poll. A listener whose data ends below
+         *                {@code afterId} missed rows and must reload instead of merging.
+         * @param rows    The late rows, then the new rows, in id order; all columns of wine_table
+         *                (never empty).
+         */
+        void rowsInserted(long afterId, QueryResult rows);
+    }
+
+    /**
+     * Starts polling in the background. Does nothing if polling is disabled or already started.
+     */
+    public static synchronized void start() {
+        if (!ENABLED || poller != null) {
+            return;
+        }
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "wine-change-poller");
+            t.setDaemon(true);
+            return t;
+        });
+        // The result cache has no lifecycle of its own; the in-memory store subscribes in its start()
+        addListener(ResultCache::rowsInserted);
+        schedule(0);
+    }
+
+    /**
+     * @return True if polling is enabled (it may not have been started yet).
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public static void addListener(Listener listener) {
+        LISTENERS.add(listener);
+    }
+
+    public static void removeListener(Listener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * @return The highest id delivered to the listeners so far, or -1 before the first poll.
+     *         Data read after this call contains at least every row up to the returned id.
+     */
+    public static long getHighWatermark() {
+        return highWatermark;
+    }
+
+    /**
+     * Polls as soon as possible and resets the backoff, e.g. when live updates are switched on.
+     */
+    public static synchronized void pollNow() {
+        if (poller == null) {
+            return;
+        }
+        delayMillis = BASE_INTERVAL_MILLIS;
+        if (nextPoll != null && nextPoll.cancel(false)) {
+            schedule(0);
+        }
+    }
+
+    private static synchronized void schedule(long delay) {
+        nextPoll = poller.schedule(ChangePoller::poll, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reads the rows above the high-watermark, notifies the listeners and schedules the next poll.
+     */
+    private static void poll() {
+        long delay;
+        try {
+            if (highWatermark < 0) {
+                highWatermark = readMaxId();
+                delay = BASE_INTERVAL_MILLIS;
+            } else {
+                long now = System.currentTimeMillis();
+                GAPS.values().removeIf(expiresAt -> expiresAt <= now);
+                QueryResult rows = readAfter(highWatermark);
+                if (rows.getRowCount() == 0) {
+                    delay = backOff();
+                } else {
+                    long afterId = highWatermark;
+                    int late = trackGaps(afterId, rows, now);
+                    highWatermark = Math.max(afterId, rows.maxInt(rows.findColumn("id")));
+                    System.out.println("Polled " + (rows.getRowCount() - late) + " new wines (ids " + (afterId + 1)
+                            + ".." + highWatermark + ")" + (late > 0 ? " and " + late + " late ones" : ""));
+                    notifyListeners(afterId, rows);
+                    delay = rows.getRowCount() == BATCH_SIZE ? 0 : resetBackOff();
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error polling wine_table for new rows: " + e.getMessage());
+            delay = backOff();
+        }
+        schedule(delay);
+    }
+
+    /**
+     * Forgets the gaps the rows fill and remembers the ids the new rows skipped over.
+     *
+     * @return The number of late rows, i.e. those at or below {@code afterId}.
+     */
+    private static int trackGaps(long afterId, QueryResult rows, long now) {
+        Column ids = rows.getColumn(rows.findColumn("id"));
+        int late = 0;
+        long previous = afterId;
+        for (int row = 0; row < rows.getRowCount(); row++) {
+            long id = ids.getInt(row);
+            if (id <= afterId) {
+                GAPS.remove(id);
+                late++;
+                continue;
+            }
+            for (long skipped = previous + 1; skipped < id && GAPS.size() < MAX_GAPS; skipped++) {
+                GAPS.put(skipped, now + GAP_GRACE_MILLIS);
+            }
+            previous = id;
+        }
+        return late;
+    }
+
+    private static void notifyListeners(long afterId, QueryResult rows) {
+        for (Listener listener : LISTENERS) {
+            try {
+                listener.rowsInserted(afterId, rows);
+            } catch (RuntimeException e) {
+                // One failing consumer must not stop the others or the poller
+                System.err.println("Error applying new rows: " + e);
+            }
+        }
+    }
+
+    private static synchronized long backOff() {
+        long delay = delayMillis;
+        delayMillis = Math.min(delayMillis * 2, MAX_INTERVAL_MILLIS);
+        return delay;
+    }
+
+    private static synchronized long resetBackOff() {
+        delayMillis = BASE_INTERVAL_MILLIS;
+        return delayMillis;
+    }
+
+    private static long readMaxId() throws SQLException {
+        try (Connection conn = DBConnection.connect();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(MAX_ID_SQL)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Reads the rows above the id plus the gaps that may have filled in, as one primary-key read.
+     */
+    private static QueryResult readAfter(long afterId) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT * FROM wine_table WHERE id > ?");
+        if (!GAPS.isEmpty()) {
+            StringJoiner gaps = new StringJoiner(", ", " OR id IN (", ")");
+            int count = 0;
+            for (Long gap : GAPS.keySet()) {
+                if (count++ == MAX_GAPS_PER_POLL) {
+                    break; // the oldest first; the rest are asked for once these are settled
+                }
+                gaps.add(gap.toString());
+            }
+            sql.append(gaps);
+        }
+        sql.append(" ORDER BY id LIMIT ?");
+        try (Connection conn = DBConnection.connect();
+             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            stmt.setLong(1, afterId);
+            stmt.setInt(2, BATCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return QueryResult.fromResultSet(rs);
+            }
+        }
+    }
+}
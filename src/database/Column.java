@@ -0,0 +1,968 @@
+package database;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * One column of a {@link QueryResult}, stored as a primitive array.
+ * <p>
+ * Numeric columns keep {@code int[]}/{@code double[]} values, dates are kept as epoch days,
+ * and low-cardinality text (quality, color) is dictionary-encoded into one byte per row.
+ * Nulls are tracked in a bitmap that is only allocated when the column actually contains a null.
+ * {@link #getString(int)} produces the text shown in the UI on demand.
+ */
+public abstract class Column {
+
+    /**
+     * The physical representation of a column.
+     */
+    public enum Type {
+        INT,
+        DOUBLE,
+        DATE,
+        DICTIONARY,
+        TEXT
+    }
+
+    /** Text shown for SQL NULL values. */
+    public static final String NULL_TEXT = "NULL";
+
+    protected final String name;
+    protected final int size;
+    private final long[] nulls; // bit set = row is NULL; null when the column has no NULLs
+
+    protected Column(String name, int size, long[] nulls) {
+        this.name = name;
+        this.size = size;
+        this.nulls = nulls;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public abstract Type getType();
+
+    public boolean isNull(int row) {
+        return nulls != null && (nulls[row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * @return True if at least one row is NULL.
+     */
+    public boolean hasNulls() {
+        return nulls != null;
+    }
+
+    /** Raw NULL bitmap (bit set = row is NULL), or null if no row is NULL; must not be modified. */
+    long[] nullBitmap() {
+        return nulls;
+    }
+
+    /**
+     * @param row The row index.
+     * @return The value as display text, or {@link #NULL_TEXT}.
+     */
+    public final String getString(int row) {
+        return isNull(row) ? NULL_TEXT : format(row);
+    }
+
+    protected abstract String format(int row);
+
+    /**
+     * Returns the value as a double. Supported by INT, DOUBLE and DATE (epoch day) columns.
+     *
+     * @param row The row index.
+     * @return The numeric value (0 for NULL).
+     */
+    public double getDouble(int row) {
+        throw new UnsupportedOperationException("Column " + name + " is not numeric.");
+    }
+
+    /**
+     * Returns the value as an int. Supported by INT and DATE (epoch day) columns.
+     *
+     * @param row The row index.
+     * @return The numeric value (0 for NULL).
+     */
+    public int getInt(int row) {
+        throw new UnsupportedOperationException("Column " + name + " is not an integer column.");
+    }
+
+    /**
+     * @return True if {@link #getDouble(int)} is supported.
+     */
+    public boolean isNumeric() {
+        return false;
+    }
+
+    /**
+     * Compares the values of two rows, with NULLs ordered last.
+     */
+    public int compareRows(int a, int b) {
+        boolean nullA = isNull(a);
+        boolean nullB = isNull(b);
+        if (nullA || nullB) {
+            return Boolean.compare(nullA, nullB);
+        }
+        return compareValues(a, b);
+    }
+
+    protected abstract int compareValues(int a, int b);
+
+    /**
+     * @return The row indexes of this column ordered by value (NULLs last, stable for ties).
+     */
+    public int[] sortedRows() {
+        return sortPermutation(size, this::compareRows);
+    }
+
+    /**
+     * Gathers the given rows into a new column.
+     *
+     * @param rows The row indexes to keep, in output order.
+     * @return A new column with {@code rows.length} rows.
+     */
+    public abstract Column select(int[] rows);
+
+    /**
+     * @return Approximate heap footprint of the column data in bytes.
+     */
+    public abstract long estimatedBytes();
+
+    protected long nullBytes() {
+        return nulls == null ? 0 : nulls.length * 8L;
+    }
+
+    protected long[] selectNulls(int[] rows) {
+        if (nulls == null) {
+            return null;
+        }
+        long[] selected = null;
+        for (int i = 0; i < rows.length; i++) {
+            if (isNull(rows[i])) {
+                if (selected == null) {
+                    selected = new long[(rows.length + 63) >>> 6];
+                }
+                selected[i >>> 6] |= 1L << i;
+            }
+        }
+        return selected;
+    }
+
+    // -------------------------------------------------------
+    //                  Concatenation
+    // -------------------------------------------------------
+
+    /**
+     * Joins consecutive chunks of one column, e.g. the row groups of a file or a result and
+     * rows appended to it. Dictionaries are merged while they fit in a byte code; beyond
+     * that, or when chunks mix dictionary and plain text, the result is plain text.
+     *
+     * @param parts The chunks in row order, all of the same column (at least one).
+     * @return The joined column, named after the first chunk.
+     * @throws IllegalArgumentException If the chunks have incompatible types.
+     */
+    static Column concat(List<Column> parts) {
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        String name = parts.get(0).getName();
+        int totalRows = 0;
+        for (Column part : parts) {
+            totalRows += part.size();
+        }
+        Type type = parts.get(0).getType();
+        boolean textual = type == Type.DICTIONARY || type == Type.TEXT;
+        for (Column part : parts) {
+            boolean partTextual = part.getType() == Type.DICTIONARY || part.getType() == Type.TEXT;
+            if (textual ? !partTextual : part.getType() != type) {
+                throw new IllegalArgumentException("Inconsistent types in column " + name);
+            }
+            if (part.getType() == Type.TEXT) {
+                type = Type.TEXT;
+            }
+        }
+        long[] nulls = concatNulls(parts, totalRows);
+
+        switch (type) {
+            case INT:
+            case DATE: {
+                int[] values = new int[totalRows];
+                int offset = 0;
+                for (Column part : parts) {
+                    int[] source = part.getType() == Type.INT
+                            ? ((IntColumn) part).values() : ((DateColumn) part).values();
+                    System.arraycopy(source, 0, values, offset, part.size());
+                    offset += part.size();
+                }
+                return type == Type.INT ? new IntColumn(name, values, totalRows, nulls)
+                        : new DateColumn(name, values, totalRows, nulls);
+            }
+            case DOUBLE: {
+                double[] values = new double[totalRows];
+                int offset = 0;
+                for (Column part : parts) {
+                    System.arraycopy(((DoubleColumn) part).values(), 0, values, offset, part.size());
+                    offset += part.size();
+                }
+                return new DoubleColumn(name, values, totalRows, nulls,
+                        ((DoubleColumn) parts.get(0)).getScale());
+            }
+            case DICTIONARY: {
+                Column merged = mergeDictionaries(name, parts, totalRows, nulls);
+                if (merged != null) {
+                    return merged;
+                }
+                return new TextColumn(name, concatText(parts, totalRows), totalRows, nulls);
+            }
+            default:
+                return new TextColumn(name, concatText(parts, totalRows), totalRows, nulls);
+        }
+    }
+
+    /**
+     * @return The dictionary column, or null if the merged dictionary exceeds a byte code.
+     */
+    private static Column mergeDictionaries(String name, List<Column> parts, int totalRows, long[] nulls) {
+        Map<String, Integer> lookup = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        byte[] codes = new byte[totalRows];
+        int offset = 0;
+        for (Column part : parts) {
+            DictionaryColumn dictionaryPart = (DictionaryColumn) part;
+            String[] partDictionary = dictionaryPart.getDictionary();
+            byte[] remap = new byte[partDictionary.length];
+            for (int code = 0; code < partDictionary.length; code++) {
+                Integer merged = lookup.get(partDictionary[code]);
+                if (merged == null) {
+                    if (dictionary.size() == DictionaryColumn.MAX_DICTIONARY_SIZE) {
+                        return null;
+                    }
+                    merged = dictionary.size();
+                    dictionary.add(partDictionary[code]);
+                    lookup.put(partDictionary[code], merged);
+                }
+                remap[code] = (byte) merged.intValue();
+            }
+            byte[] partCodes = dictionaryPart.codes();
+            for (int row = 0; row < part.size(); row++) {
+                codes[offset + row] = part.isNull(row) ? 0 : remap[partCodes[row] & 0xFF];
+            }
+            offset += part.size();
+        }
+        return new DictionaryColumn(name, codes, totalRows, nulls, dictionary.toArray(new String[0]));
+    }
+
+    private static String[] concatText(List<Column> parts, int totalRows) {
+        String[] values = new String[totalRows];
+        int offset = 0;
+        for (Column part : parts) {
+            for (int row = 0; row < part.size(); row++) {
+                if (!part.isNull(row)) {
+                    values[offset + row] = part.getType() == Type.TEXT
+                            ? ((TextColumn) part).values()[row] : part.getString(row);
+                }
+            }
+            offset += part.size();
+        }
+        return values;
+    }
+
+    private static long[] concatNulls(List<Column> parts, int totalRows) {
+        long[] nulls = null;
+        int offset = 0;
+        for (Column part : parts) {
+            if (part.hasNulls()) {
+                if (nulls == null) {
+                    nulls = new long[(totalRows + 63) >>> 6];
+                }
+                for (int row = 0; row < part.size(); row++) {
+                    if (part.isNull(row)) {
+                        int target = offset + row;
+                        nulls[target >>> 6] |= 1L << target;
+                    }
+                }
+            }
+            offset += part.size();
+        }
+        return nulls;
+    }
+
+    // -------------------------------------------------------
+    //                  Sorting helper
+    // -------------------------------------------------------
+
+    /**
+     * Stable merge sort of the identity permutation {@code 0..size-1} using a primitive comparator,
+     * so sorting never boxes row indexes.
+     *
+     * @param size       The number of rows.
+     * @param comparator Compares two row indexes.
+     * @return The sorted permutation.
+     */
+    public static int[] sortPermutation(int size, IntBinaryOperator comparator) {
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = i;
+        }
+        int[] buffer = new int[size];
+        for (int width = 1; width < size; width <<= 1) {
+            for (int lo = 0; lo < size - width; lo += width << 1) {
+                int mid = lo + width;
+                int hi = Math.min(lo + (width << 1), size);
+                if (comparator.applyAsInt(rows[mid - 1], rows[mid]) <= 0) {
+                    continue; // already in order
+                }
+                int i = lo;
+                int j = mid;
+                int k = lo;
+                while (i < mid && j < hi) {
+                    buffer[k++] = comparator.applyAsInt(rows[i], rows[j]) <= 0 ? rows[i++] : rows[j++];
+                }
+                while (i < mid) {
+                    buffer[k++] = rows[i++];
+                }
+                while (j < hi) {
+                    buffer[k++] = rows[j++];
+                }
+                System.arraycopy(buffer, lo, rows, lo, hi - lo);
+            }
+        }
+        return rows;
+    }
+
+    // -------------------------------------------------------
+    //                  Implementations
+    // -------------------------------------------------------
+
+    /**
+     * INTEGER columns (id, free/total sulfur dioxide).
+     */
+    public static final class IntColumn extends Column {
+        private final int[] values;
+
+        public IntColumn(String name, int[] values, int size, long[] nulls) {
+            super(name, size, nulls);
+            this.values = values;
+        }
+
+        /** Raw values for tight scan loops; must not be modified. */
+        int[] values() {
+            return values;
+        }
+
+        @Override
+        public Type getType() {
+            return Type.INT;
+        }
+
+        @Override
+        protected String format(int row) {
+            return Integer.toString(values[row]);
+        }
+
+        @Override
+        public int getInt(int row) {
+            return values[row];
+        }
+
+        @Override
+        public double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        public boolean isNumeric() {
+            return true;
+        }
+
+        @Override
+        protected int compareValues(int a, int b) {
+            return Integer.compare(values[a], values[b]);
+        }
+
+        @Override
+        public Column select(int[] rows) {
+            int[] selected = new int[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                selected[i] = values[rows[i]];
+            }
+            return new IntColumn(name, selected, rows.length, selectNulls(rows));
+        }
+
+        @Override
+        public long estimatedBytes() {
+            return values.length * 4L + nullBytes();
+        }
+    }
+
+    /**
+     * DECIMAL/DOUBLE columns (acidity, sugar, chlorides, density, pH, sulphates, alcohol).
+     */
+    public static final class DoubleColumn extends Column {
+        private final double[] values;
+        private final int scale; // DECIMAL scale used for display, or -1 to print the shortest form
+
+        public DoubleColumn(String name, double[] values, int size, long[] nulls, int scale) {
+            super(name, size, nulls);
+            this.values = values;
+            this.scale = scale;
+        }
+
+        /** Raw values for tight scan loops; must not be modified. */
+        double[] values() {
+            return values;
+        }
+
+        @Override
+        public Type getType() {
+            return Type.DOUBLE;
+        }
+
+        public int getScale() {
+            return scale;
+        }
+
+        @Override
+        protected String format(int row) {
+            if (scale < 0) {
+                return Double.toString(values[row]);
+            }
+            return BigDecimal.valueOf(values[row]).setScale(scale, RoundingMode.HALF_UP).toPlainString();
+        }
+
+        @Override
+        public double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        public boolean isNumeric() {
+            return true;
+        }
+
+        @Override
+        protected int compareValues(int a, int b) {
+            return Double.compare(values[a], values[b]);
+        }
+
+        @Override
+        public Column select(int[] rows) {
+            double[] selected = new double[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                selected[i] = values[rows[i]];
+            }
+            return new DoubleColumn(name, selected, rows.length, selectNulls(rows), scale);
+        }
+
+        @Override
+        public long estimatedBytes() {
+            return values.length * 8L + nullBytes();
+        }
+    }
+
+    /**
+     * DATE columns, stored as days since 1970-01-01.
+     */
+    public static final class DateColumn extends Column {
+        private final int[] epochDays;
+
+        public DateColumn(String name, int[] epochDays, int size, long[] nulls) {
+            super(name, size, nulls);
+            this.epochDays = epochDays;
+        }
+
+        /** Raw epoch days for tight scan loops; must not be modified. */
+        int[] values() {
+            return epochDays;
+        }
+
+        @Override
+        public Type getType() {
+            return Type.DATE;
+        }
+
+        @Override
+        protected String format(int row) {
+            return LocalDate.ofEpochDay(epochDays[row]).toString();
+        }
+
+        @Override
+        public int getInt(int row) {
+            return epochDays[row];
+        }
+
+        @Override
+        public double getDouble(int row) {
+            return epochDays[row];
+        }
+
+        @Override
+        public boolean isNumeric() {
+            return true;
+        }
+
+        @Override
+        protected int compareValues(int a, int b) {
+            return Integer.compare(epochDays[a], epochDays[b]);
+        }
+
+        @Override
+        public Column select(int[] rows) {
+            int[] selected = new int[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                selected[i] = epochDays[rows[i]];
+            }
+            return new DateColumn(name, selected, rows.length, selectNulls(rows));
+        }
+
+        @Override
+        public long estimatedBytes() {
+            return epochDays.length * 4L + nullBytes();
+        }
+    }
+
+    /**
+     * Low-cardinality text (quality, color): one byte code per row plus a shared dictionary.
+     */
+    public static final class DictionaryColumn extends Column {
+        /** The maximum number of distinct values a byte code can address. */
+        public static final int MAX_DICTIONARY_SIZE = 256;
+
+        private final byte[] codes;
+        private final String[] dictionary;
+
+        public DictionaryColumn(String name, byte[] codes, int size, long[] nulls, String[] dictionary) {
+            super(name, size, nulls);
+            this.codes = codes;
+            this.dictionary = dictionary;
+        }
+
+        /** Raw codes for tight scan loops; must not be modified. */
+        byte[] codes() {
+            return codes;
+        }
+
+        @Override
+        public Type getType() {
+            return Type.DICTIONARY;
+        }
+
+        /**
+         * @param row The row index.
+         * @return The dictionary code of the row (0..255).
+         */
+        public int getCode(int row) {
+            return codes[row] & 0xFF;
+        }
+
+        /**
+         * @return A copy of the dictionary; code {@code c} decodes to element {@code c}.
+         */
+        public String[] getDictionary() {
+            return dictionary.clone();
+        }
+
+        /**
+         * @param value The value to look up.
+         * @return Its code, or -1 if the value never occurs in this column.
+         */
+        public int codeOf(String value) {
+            for (int i = 0; i < dictionary.length; i++) {
+                if (dictionary[i].equals(value)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        protected String format(int row) {
+            return dictionary[codes[row] & 0xFF];
+        }
+
+        @Override
+        protected int compareValues(int a, int b) {
+            return dictionary[codes[a] & 0xFF].compareTo(dictionary[codes[b] & 0xFF]);
+        }
+
+        @Override
+        public Column select(int[] rows) {
+            byte[] selected = new byte[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                selected[i] = codes[rows[i]];
+            }
+            return new DictionaryColumn(name, selected, rows.length, selectNulls(rows), dictionary);
+        }
+
+        @Override
+        public long estimatedBytes() {
+            return codes.length + nullBytes();
+        }
+    }
+
+    /**
+     * Fallback for any other column type: plain strings.
+     */
+    public static final class TextColumn extends Column {
+        private final String[] values;
+
+        public TextColumn(String name, String[] values, int size, long[] nulls) {
+            super(name, size, nulls);
+            this.values = values;
+        }
+
+        /** Raw values (null for NULL rows); must not be modified. */
+        String[] values() {
+            return values;
+        }
+
+        @Override
+        public Type getType() {
+            return Type.TEXT;
+        }
+
+        @Override
+        protected String format(int row) {
+            return values[row];
+        }
+
+        @Override
+        protected int compareValues(int a, int b) {
+            return values[a].compareTo(values[b]);
+        }
+
+        @Override
+        public Column select(int[] rows) {
+            String[] selected = new String[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                selected[i] = values[rows[i]];
+            }
+            return new TextColumn(name, selected, rows.length, selectNulls(rows));
+        }
+
+        @Override
+        public long estimatedBytes() {
+            long bytes = values.length * 8L + nullBytes();
+            for (int i = 0; i < size; i++) {
+                if (values[i] != null) {
+                    bytes += 40 + values[i].length();
+                }
+            }
+            return bytes;
+        }
+    }
+
+    // -------------------------------------------------------
+    //                  Building from a ResultSet
+    // -------------------------------------------------------
+
+    /**
+     * Picks the column representation for a JDBC column type.
+     *
+     * @param metaData The result set metadata.
+     * @param column   The 1-based column index.
+     * @return The representation to use.
+     * @throws SQLException If the metadata cannot be read.
+     */
+    static Type typeFor(ResultSetMetaData metaData, int column) throws SQLException {
+        switch (metaData.getColumnType(column)) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return Type.INT;
+            case Types.BIGINT: // COUNT(*) and SUM results; exact as doubles up to 2^53
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+            case Types.DOUBLE:
+            case Types.FLOAT:
+            case Types.REAL:
+                return Type.DOUBLE;
+            case Types.DATE:
+                return Type.DATE;
+            case Types.CHAR:
+            case Types.VARCHAR:
+                return Type.DICTIONARY;
+            default:
+                return Type.TEXT;
+        }
+    }
+
+    /**
+     * Accumulates the values of one column row by row, growing its arrays as needed.
+     */
+    abstract static class Builder {
+        protected final String name;
+        protected int size;
+        private long[] nulls;
+
+        Builder(String name) {
+            this.name = name;
+        }
+
+        static Builder create(String name, Type type, int scale, int capacity) {
+            switch (type) {
+                case INT:
+                    return new IntBuilder(name, capacity);
+                case DOUBLE:
+                    return new DoubleBuilder(name, capacity, scale);
+                case DATE:
+                    return new DateBuilder(name, capacity);
+                case DICTIONARY:
+                    return new DictionaryBuilder(name, capacity);
+                default:
+                    return new TextBuilder(name, capacity);
+            }
+        }
+
+        /**
+         * Reads the value of the current row of {@code rs} using the primitive getter for this type.
+         */
+        abstract void read(ResultSet rs, int column) throws SQLException;
+
+        abstract Column build();
+
+        protected void markNull() {
+            if (nulls == null) {
+                nulls = new long[Math.max(1, (capacity() + 63) >>> 6)];
+            } else if ((size >>> 6) >= nulls.length) {
+                nulls = Arrays.copyOf(nulls, Math.max(nulls.length * 2, (size >>> 6) + 1));
+            }
+            nulls[size >>> 6] |= 1L << size;
+        }
+
+        /**
+         * @return A copy of the NULL bitmap covering the rows appended so far, so a column built
+         *         while rows are still being read is not affected by later rows.
+         */
+        protected long[] nulls() {
+            return nulls == null ? null : Arrays.copyOf(nulls, (size + 63) >>> 6);
+        }
+
+        protected abstract int capacity();
+
+        protected static int grow(int capacity) {
+            return Math.max(16, capacity + (capacity >> 1));
+        }
+    }
+
+    private static final class IntBuilder extends Builder {
+        private int[] values;
+
+        IntBuilder(String name, int capacity) {
+            super(name);
+            values = new int[capacity];
+        }
+
+        @Override
+        void read(ResultSet rs, int column) throws SQLException {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(size));
+            }
+            values[size] = rs.getInt(column);
+            if (rs.wasNull()) {
+                markNull();
+            }
+            size++;
+        }
+
+        @Override
+        protected int capacity() {
+            return values.length;
+        }
+
+        @Override
+        Column build() {
+            return new IntColumn(name, Arrays.copyOf(values, size), size, nulls());
+        }
+    }
+
+    private static final class DoubleBuilder extends Builder {
+        private double[] values;
+        private final int scale;
+
+        DoubleBuilder(String name, int capacity, int scale) {
+            super(name);
+            values = new double[capacity];
+            this.scale = scale;
+        }
+
+        @Override
+        void read(ResultSet rs, int column) throws SQLException {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(size));
+            }
+            values[size] = rs.getDouble(column);
+            if (rs.wasNull()) {
+                markNull();
+            }
+            size++;
+        }
+
+        @Override
+        protected int capacity() {
+            return values.length;
+        }
+
+        @Override
+        Column build() {
+            return new DoubleColumn(name, Arrays.copyOf(values, size), size, nulls(), scale);
+        }
+    }
+
+    private static final class DateBuilder extends Builder {
+        private int[] epochDays;
+
+        DateBuilder(String name, int capacity) {
+            super(name);
+            epochDays = new int[capacity];
+        }
+
+        @Override
+        void read(ResultSet rs, int column) throws SQLException {
+            if (size == epochDays.length) {
+                epochDays = Arrays.copyOf(epochDays, grow(size));
+            }
+            java.sql.Date date = rs.getDate(column);
+            if (date == null) {
+                markNull();
+            } else {
+                epochDays[size] = (int) date.toLocalDate().toEpochDay();
+            }
+            size++;
+        }
+
+        @Override
+        protected int capacity() {
+            return epochDays.length;
+        }
+
+        @Override
+        Column build() {
+            return new DateColumn(name, Arrays.copyOf(epochDays, size), size, nulls());
+        }
+    }
+
+    /**
+     * Dictionary-encodes text; switches to plain strings if more than 256 distinct values appear.
+     */
+    private static final class DictionaryBuilder extends Builder {
+        private byte[] codes;
+        private final Map<String, Integer> lookup = new HashMap<>();
+        private final List<String> dictionary = new java.util.ArrayList<>();
+        private String[] overflow; // plain values once the dictionary is full
+
+        DictionaryBuilder(String name, int capacity) {
+            super(name);
+            codes = new byte[capacity];
+        }
+
+        @Override
+        void read(ResultSet rs, int column) throws SQLException {
+            String value = rs.getString(column);
+            if (overflow != null) {
+                appendPlain(value);
+                return;
+            }
+            if (size == codes.length) {
+                codes = Arrays.copyOf(codes, grow(size));
+            }
+            if (value == null) {
+                markNull();
+                size++;
+                return;
+            }
+            Integer code = lookup.get(value);
+            if (code == null) {
+                if (dictionary.size() == DictionaryColumn.MAX_DICTIONARY_SIZE) {
+                    switchToPlain();
+                    appendPlain(value);
+                    return;
+                }
+                code = dictionary.size();
+                dictionary.add(value);
+                lookup.put(value, code);
+            }
+            codes[size++] = (byte) code.intValue();
+        }
+
+        private void switchToPlain() {
+            overflow = new String[Math.max(codes.length, size + 1)];
+            for (int i = 0; i < size; i++) {
+                overflow[i] = dictionary.get(codes[i] & 0xFF);
+            }
+            codes = null;
+        }
+
+        private void appendPlain(String value) {
+            if (size == overflow.length) {
+                overflow = Arrays.copyOf(overflow, grow(size));
+            }
+            if (value == null) {
+                markNull();
+            }
+            overflow[size++] = value;
+        }
+
+        @Override
+        protected int capacity() {
+            return overflow != null ? overflow.length : codes.length;
+        }
+
+        @Override
+        Column build() {
+            if (overflow != null) {
+                return new TextColumn(name, Arrays.copyOf(overflow, size), size, nulls());
+            }
+            return new DictionaryColumn(name, Arrays.copyOf(codes, size), size, nulls(),
+                    dictionary.toArray(new String[0]));
+        }
+    }
+
+    private static final class TextBuilder extends Builder {
+        private String[] values;
+
+        TextBuilder(String name, int capacity) {
+            super(name);
+            values = new String[capacity];
+        }
+
+        @Override
+        void read(ResultSet rs, int column) throws SQLException {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(size));
+            }
+            String value = rs.getString(column);
+            if (value == null) {
+                markNull();
+            }
+            values[size++] = value;
+        }
+
+        @Override
+        protected int capacity() {
+            return values.length;
+        }
+
+        @Override
+        Column build() {
+            return new TextColumn(name, Arrays.copyOf(values, size), size, nulls());
+        }
+    }
+}
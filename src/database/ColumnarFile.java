@@ -0,0 +1,391 @@
+package database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compact binary file format for query results that mirrors the in-memory {@link Column}
+ * layout, so that a file is read back with bulk copies instead of parsing.
+ * <p>
+ * All numbers are little-endian:
+ * <pre>
+ * header     int magic "WCOL", int version, string label, int columnCount, string name * columnCount
+ * row group  int rowCount (&gt;= 0), column block * columnCount      (repeated)
+ * footer     int -1, long totalRows
+ *
+ * column block  byte type, [int scale if DOUBLE], byte hasNulls, [long * ceil(rows / 64) NULL bitmap],
+ *               INT, DATE: int * rows   DOUBLE: double * rows
+ *               DICTIONARY: int dictionarySize, string * dictionarySize, byte code * rows
+ *               TEXT: (int byteLength or -1 for NULL, UTF-8 bytes) * rows
+ * string     int byteLength, UTF-8 bytes
+ * </pre>
+ * Row groups let a writer stream a result of any size in constant memory, one chunk at a
+ * time. Each group carries its own column types and dictionaries. The label is free text
+ * describing the content, e.g. the query it came from.
+ */
+final class ColumnarFile {
+
+    /** The file name extension of columnar result files. */
+    static final String EXTENSION = ".wcol";
+
+    private static final int MAGIC = 0x4C4F4357; // "WCOL" read as a little-endian int
+    private static final int VERSION = 1;
+    private static final int END_OF_GROUPS = -1;
+    private static final int DEFAULT_BUFFER_BYTES = 1 << 20;
+
+    private ColumnarFile() {
+    }
+
+    // -------------------------------------------------------
+    //                  Writing
+    // -------------------------------------------------------
+
+    /**
+     * Writes a complete result to a file.
+     *
+     * @param path   The file to create or replace.
+     * @param label  A description of the content.
+     * @param result The result.
+     * @throws IOException If writing fails.
+     */
+    static void write(Path path, String label, QueryResult result) throws IOException {
+        try (Writer writer = new Writer(path, label, result.getColumnNames(), DEFAULT_BUFFER_BYTES)) {
+            writer.writeRowGroup(result);
+            writer.finish();
+        }
+    }
+
+    /**
+     * Appends row groups to a new file through a direct buffer, so column arrays go from the
+     * heap to the file channel without intermediate byte arrays.
+     */
+    static final class Writer implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final int columnCount;
+        private long rowCount;
+        private int groupCount;
+
+        /**
+         * Creates the file and writes its header.
+         *
+         * @param path        The file to create or replace.
+         * @param label       A description of the content.
+         * @param columnNames The column names.
+         * @param bufferBytes The size of the direct write buffer.
+         * @throws IOException If the file cannot be created.
+         */
+        Writer(Path path, String label, String[] columnNames, int bufferBytes) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            buffer = ByteBuffer.allocateDirect(Math.max(bufferBytes, 64)).order(ByteOrder.LITTLE_ENDIAN);
+            columnCount = columnNames.length;
+            ensure(8);
+            buffer.putInt(MAGIC).putInt(VERSION);
+            putString(label);
+            ensure(4);
+            buffer.putInt(columnCount);
+            for (String name : columnNames) {
+                putString(name);
+            }
+        }
+
+        /**
+         * Writes a chunk of rows. Empty chunks are skipped, except as the first group so that an
+         * empty result still records its column types.
+         *
+         * @param group The rows, with the columns of the header in the same order.
+         * @throws IOException If writing fails.
+         */
+        void writeRowGroup(QueryResult group) throws IOException {
+            if (group.getColumnCount() != columnCount) {
+                throw new IllegalArgumentException("Row group has " + group.getColumnCount()
+                        + " columns, expected " + columnCount + ".");
+            }
+            int rows = group.getRowCount();
+            if (rows == 0 && groupCount > 0) {
+                return;
+            }
+            ensure(4);
+            buffer.putInt(rows);
+            for (int c = 0; c < columnCount; c++) {
+                writeColumn(group.getColumn(c), rows);
+            }
+            rowCount += rows;
+            groupCount++;
+        }
+
+        /**
+         * @return The number of rows written so far.
+         */
+        long getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * Writes the footer and flushes the buffer. A file without a footer is unreadable.
+         *
+         * @throws IOException If writing fails.
+         */
+        void finish() throws IOException {
+            ensure(12);
+            buffer.putInt(END_OF_GROUPS).putLong(rowCount);
+            flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private void writeColumn(Column column, int rows) throws IOException {
+            ensure(1);
+            buffer.put((byte) column.getType().ordinal());
+            if (column.getType() == Column.Type.DOUBLE) {
+                ensure(4);
+                buffer.putInt(((Column.DoubleColumn) column).getScale());
+            }
+            long[] nulls = column.nullBitmap();
+            ensure(1);
+            buffer.put((byte) (nulls != null ? 1 : 0));
+            if (nulls != null) {
+                int words = (rows + 63) >>> 6;
+                putLongs(nulls.length >= words ? nulls : Arrays.copyOf(nulls, words), words);
+            }
+
+            switch (column.getType()) {
+                case INT:
+                    putInts(((Column.IntColumn) column).values(), rows);
+                    break;
+                case DATE:
+                    putInts(((Column.DateColumn) column).values(), rows);
+                    break;
+                case DOUBLE:
+                    putDoubles(((Column.DoubleColumn) column).values(), rows);
+                    break;
+                case DICTIONARY:
+                    Column.DictionaryColumn dictionaryColumn = (Column.DictionaryColumn) column;
+                    String[] dictionary = dictionaryColumn.getDictionary();
+                    ensure(4);
+                    buffer.putInt(dictionary.length);
+                    for (String value : dictionary) {
+                        putString(value);
+                    }
+                    putBytes(dictionaryColumn.codes(), 0, rows);
+                    break;
+                default:
+                    String[] values = ((Column.TextColumn) column).values();
+                    for (int row = 0; row < rows; row++) {
+                        if (values[row] == null) {
+                            ensure(4);
+                            buffer.putInt(-1);
+                        } else {
+                            putString(values[row]);
+                        }
+                    }
+                    break;
+            }
+        }
+
+        private void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ensure(4);
+            buffer.putInt(bytes.length);
+            putBytes(bytes, 0, bytes.length);
+        }
+
+        private void putBytes(byte[] values, int offset, int count) throws IOException {
+            while (count > 0) {
+                ensure(1);
+                int n = Math.min(count, buffer.remaining());
+                buffer.put(values, offset, n);
+                offset += n;
+                count -= n;
+            }
+        }
+
+        private void putInts(int[] values, int count) throws IOException {
+            for (int offset = 0; offset < count; ) {
+                ensure(Integer.BYTES);
+                int n = Math.min(count - offset, buffer.remaining() / Integer.BYTES);
+                buffer.asIntBuffer().put(values, offset, n);
+                buffer.position(buffer.position() + n * Integer.BYTES);
+                offset += n;
+            }
+        }
+
+        private void putLongs(long[] values, int count) throws IOException {
+            for (int offset = 0; offset < count; ) {
+                ensure(Long.BYTES);
+                int n = Math.min(count - offset, buffer.remaining() / Long.BYTES);
+                buffer.asLongBuffer().put(values, offset, n);
+                buffer.position(buffer.position() + n * Long.BYTES);
+                offset += n;
+            }
+        }
+
+        private void putDoubles(double[] values, int count) throws IOException {
+            for (int offset = 0; offset < count; ) {
+                ensure(Double.BYTES);
+                int n = Math.min(count - offset, buffer.remaining() / Double.BYTES);
+                buffer.asDoubleBuffer().put(values, offset, n);
+                buffer.position(buffer.position() + n * Double.BYTES);
+                offset += n;
+            }
+        }
+
+        /**
+         * Makes room for at least {@code bytes} bytes (at most the buffer size) by flushing.
+         */
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    // -------------------------------------------------------
+    //                  Reading
+    // -------------------------------------------------------
+
+    /**
+     * Reads a file by memory-mapping it and bulk-copying each column block into its array.
+     *
+     * @param path          The file.
+     * @param expectedLabel The label the file must have, or null to accept any.
+     * @return The result, or null if the label does not match.
+     * @throws IOException If the file cannot be read or is not a complete columnar file.
+     */
+    static QueryResult read(Path path, String expectedLabel) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Columnar file too large to map: " + path);
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if (size < 20 || map.getInt() != MAGIC || map.getInt() != VERSION) {
+                throw new IOException("Not a columnar result file: " + path);
+            }
+            return read(path, map, (int) size, expectedLabel);
+        } catch (RuntimeException e) {
+            // Buffer underflows and bad lengths from a truncated or corrupted file
+            throw new IOException("Corrupt columnar file: " + path, e);
+        }
+    }
+
+    private static QueryResult read(Path path, ByteBuffer map, int size, String expectedLabel) throws IOException {
+        String label = getString(map);
+        if (expectedLabel != null && !expectedLabel.equals(label)) {
+            return null;
+        }
+        String[] names = new String[map.getInt()];
+        for (int c = 0; c < names.length; c++) {
+            names[c] = getString(map);
+        }
+        long totalRows = map.getLong(size - Long.BYTES);
+        if (map.getInt(size - Long.BYTES - Integer.BYTES) != END_OF_GROUPS || totalRows > Integer.MAX_VALUE) {
+            throw new IOException("Incomplete columnar file: " + path);
+        }
+
+        List<List<Column>> parts = new ArrayList<>();
+        for (int c = 0; c < names.length; c++) {
+            parts.add(new ArrayList<>());
+        }
+        int rows;
+        while ((rows = map.getInt()) != END_OF_GROUPS) {
+            for (int c = 0; c < names.length; c++) {
+                parts.get(c).add(readColumn(map, names[c], rows));
+            }
+        }
+        if (names.length == 0 || parts.get(0).isEmpty()) {
+            return QueryResult.empty();
+        }
+        Column[] columns = new Column[names.length];
+        for (int c = 0; c < names.length; c++) {
+            columns[c] = Column.concat(parts.get(c));
+        }
+        return new QueryResult(columns);
+    }
+
+    private static Column readColumn(ByteBuffer map, String name, int rows) throws IOException {
+        Column.Type[] types = Column.Type.values();
+        int typeIndex = map.get();
+        if (typeIndex < 0 || typeIndex >= types.length) {
+            throw new IOException("Unknown column type " + typeIndex + " in column " + name);
+        }
+        Column.Type type = types[typeIndex];
+        int scale = type == Column.Type.DOUBLE ? map.getInt() : -1;
+        long[] nulls = null;
+        if (map.get() != 0) {
+            nulls = new long[(rows + 63) >>> 6];
+            map.asLongBuffer().get(nulls);
+            map.position(map.position() + nulls.length * Long.BYTES);
+        }
+
+        switch (type) {
+            case INT: {
+                int[] values = new int[rows];
+                map.asIntBuffer().get(values);
+                map.position(map.position() + rows * Integer.BYTES);
+                return new Column.IntColumn(name, values, rows, nulls);
+            }
+            case DATE: {
+                int[] epochDays = new int[rows];
+                map.asIntBuffer().get(epochDays);
+                map.position(map.position() + rows * Integer.BYTES);
+                return new Column.DateColumn(name, epochDays, rows, nulls);
+            }
+            case DOUBLE: {
+                double[] values = new double[rows];
+                map.asDoubleBuffer().get(values);
+                map.position(map.position() + rows * Double.BYTES);
+                return new Column.DoubleColumn(name, values, rows, nulls, scale);
+            }
+            case DICTIONARY: {
+                String[] dictionary = new String[map.getInt()];
+                for (int i = 0; i < dictionary.length; i++) {
+                    dictionary[i] = getString(map);
+                }
+                byte[] codes = new byte[rows];
+                map.get(codes);
+                return new Column.DictionaryColumn(name, codes, rows, nulls, dictionary);
+            }
+            default: {
+                String[] values = new String[rows];
+                for (int row = 0; row < rows; row++) {
+                    int length = map.getInt();
+                    values[row] = length < 0 ? null : getString(map, length);
+                }
+                return new Column.TextColumn(name, values, rows, nulls);
+            }
+        }
+    }
+
+    private static String getString(ByteBuffer map) {
+        return getString(map, map.getInt());
+    }
+
+    private static String getString(ByteBuffer map, int length) {
+        byte[] bytes = new byte[length];
+        map.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,454 @@
+package database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small bounded JDBC connection pool.
+ * <p>
+ * Connections handed out by {@link #borrow()} are proxies: calling {@code close()} on them
+ * returns the physical connection to the pool instead of closing the socket. The pool keeps
+ * at least {@code minIdle} warm connections, validates connections that sat idle before lending
+ * them out, retires connections older than {@code maxLifetime}, and, when leak detection is
+ * enabled, logs a warning (with the borrower's stack trace) for connections held longer than
+ * the threshold. The stack trace is only captured while leak detection is enabled.
+ * <p>
+ * While the database is unreachable, the background warm-up logs the first failure only and
+ * retries with a growing delay until a connection can be opened again.
+ * <p>
+ * The number of physical connections never exceeds {@code maxSize}: a slot is reserved atomically
+ * before each connection is opened, and the warm-up holds a permit while it opens one. Statements
+ * created on a borrowed connection return the borrowed proxy from {@code getConnection()}, and
+ * {@code unwrap} is refused, so the physical connection cannot escape its lease.
+ */
+public class ConnectionPool {
+
+    private static final long VALIDATE_IF_IDLE_MILLIS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long HOUSEKEEPING_PERIOD_MILLIS = 5_000;
+    private static final long MAX_WARM_UP_BACKOFF_MILLIS = 60_000;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final int minIdle;
+    private final long maxLifetimeMillis;
+    private final long borrowTimeoutMillis;
+    private final long leakThresholdMillis;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledEntry> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledEntry> borrowed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean shutdown = false;
+    private volatile int warmUpFailures = 0;
+    private volatile long nextWarmUpAt = 0;
+
+    /**
+     * Creates a pool and starts filling it up to {@code minIdle} connections in the background.
+     *
+     * @param url                 The JDBC URL.
+     * @param user                The database user.
+     * @param password            The database password.
+     * @param maxSize             The maximum number of physical connections.
+     * @param minIdle             The number of idle connections to keep warm.
+     * @param maxLifetimeMillis   The age after which a connection is retired.
+     * @param borrowTimeoutMillis How long {@link #borrow()} waits for a free connection.
+     * @param leakThresholdMillis How long a connection may be held before it is reported as leaked,
+     *                            or 0 to disable leak detection.
+     */
+    public ConnectionPool(String url, String user, String password, int maxSize, int minIdle,
+                          long maxLifetimeMillis, long borrowTimeoutMillis, long leakThresholdMillis) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.minIdle = Math.min(minIdle, maxSize);
+        this.maxLifetimeMillis = maxLifetimeMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "wine-db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        housekeeper.scheduleWithFixedDelay(this::housekeep, 0, HOUSEKEEPING_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if none is idle and the pool is not full.
+     * The returned connection must be closed to give it back.
+     *
+     * @return A pooled connection.
+     * @throws SQLException If no connection becomes available in time or one cannot be opened.
+     */
+    public Connection borrow() throws SQLException {
+        if (shutdown) {
+            throw new SQLException("Connection pool has been shut down.");
+        }
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out after " + borrowTimeoutMillis
+                        + " ms waiting for a database connection (pool size " + maxSize + ").");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection.", e);
+        }
+
+        try {
+            PooledEntry entry;
+            // A full pool with no idle connection means one is being returned or discarded right now
+            while ((entry = takeUsableIdle()) == null && (entry = tryOpen()) == null) {
+                Thread.onSpinWait();
+            }
+            entry.borrowedAt = System.currentTimeMillis();
+            entry.leakReported = false;
+            // Capturing a stack trace is costly; only pay for it when someone will read it
+            entry.borrowTrace = leakThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null;
+            borrowed.add(entry);
+            return entry.newProxy();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens connections until {@code minIdle} idle connections are available. Useful to pay the
+     * connect cost up front, e.g. during application startup.
+     * <p>
+     * A failure is logged once; later failures are silent until a connection opens again, and
+     * the housekeeper retries with a delay that doubles up to a minute.
+     */
+    public void warmUp() {
+        while (!shutdown && idle.size() < minIdle) {
+            if (!permits.tryAcquire()) {
+                return; // every slot is borrowed or being opened
+            }
+            try {
+                PooledEntry entry = tryOpen();
+                if (entry == null) {
+                    return;
+                }
+                idle.offerFirst(entry);
+            } catch (SQLException e) {
+                int failures = ++warmUpFailures;
+                if (failures == 1) {
+                    System.err.println("Error warming up connection pool (retrying in the background): " + e.getMessage());
+                }
+                long backoff = Math.min(HOUSEKEEPING_PERIOD_MILLIS << Math.min(failures, 10), MAX_WARM_UP_BACKOFF_MILLIS);
+                nextWarmUpAt = System.currentTimeMillis() + backoff;
+                return;
+            } finally {
+                permits.release();
+            }
+            if (warmUpFailures > 0) {
+                System.out.println("Connection pool reconnected after " + warmUpFailures + " failed attempts.");
+                warmUpFailures = 0;
+                nextWarmUpAt = 0;
+            }
+        }
+    }
+
+    /**
+     * Closes all idle connections and stops the housekeeping thread. Borrowed connections are
+     * closed when they are returned.
+     */
+    public void shutdown() {
+        shutdown = true;
+        housekeeper.shutdownNow();
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            discard(entry);
+        }
+    }
+
+    /**
+     * @return The number of physical connections currently open (idle and borrowed).
+     */
+    public int getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    /**
+     * @return The number of connections currently lent out.
+     */
+    public int getBorrowedConnections() {
+        return borrowed.size();
+    }
+
+    /**
+     * @return The number of idle connections the pool keeps warm.
+     */
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    // -------------------------------------------------------
+    //                  Internals
+    // -------------------------------------------------------
+
+    private PooledEntry takeUsableIdle() {
+        PooledEntry entry;
+        // LIFO: the most recently used connection is the one most likely still alive
+        while ((entry = idle.pollFirst()) != null) {
+            long now = System.currentTimeMillis();
+            if (now - entry.createdAt > maxLifetimeMillis) {
+                discard(entry);
+                continue;
+            }
+            if (now - entry.returnedAt > VALIDATE_IF_IDLE_MILLIS && !isValid(entry)) {
+                discard(entry);
+                continue;
+            }
+            return entry;
+        }
+        return null;
+    }
+
+    /**
+     * Opens a physical connection if the pool is not full, reserving its slot atomically first.
+     *
+     * @return The new connection, or null if the pool already holds {@code maxSize} connections.
+     */
+    private PooledEntry tryOpen() throws SQLException {
+        int total;
+        do {
+            total = totalConnections.get();
+            if (total >= maxSize) {
+                return null;
+            }
+        } while (!totalConnections.compareAndSet(total, total + 1));
+        try {
+            return new PooledEntry(DriverManager.getConnection(url, user, password));
+        } catch (SQLException e) {
+            totalConnections.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private boolean isValid(PooledEntry entry) {
+        try {
+            return entry.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledEntry entry) {
+        borrowed.remove(entry);
+        try {
+            boolean retire = shutdown
+                    || entry.broken
+                    || System.currentTimeMillis() - entry.createdAt > maxLifetimeMillis
+                    || entry.connection.isClosed();
+            if (!retire) {
+                try {
+                    if (!entry.connection.getAutoCommit()) {
+                        entry.connection.rollback();
+                        entry.connection.setAutoCommit(true);
+                    }
+                    if (entry.connection.isReadOnly()) {
+                        entry.connection.setReadOnly(false);
+                    }
+                } catch (SQLException e) {
+                    retire = true;
+                }
+            }
+            if (retire) {
+                discard(entry);
+            } else {
+                entry.returnedAt = System.currentTimeMillis();
+                idle.offerFirst(entry);
+            }
+        } catch (SQLException e) {
+            discard(entry);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(PooledEntry entry) {
+        totalConnections.decrementAndGet();
+        try {
+            entry.connection.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing pooled connection: " + e.getMessage());
+        }
+    }
+
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+
+        // Retire idle connections that exceeded their lifetime
+        for (PooledEntry entry : idle) {
+            if (now - entry.createdAt > maxLifetimeMillis && idle.remove(entry)) {
+                discard(entry);
+            }
+        }
+
+        // Report connections that have been held for too long
+        if (leakThresholdMillis > 0) {
+            for (PooledEntry entry : borrowed) {
+                Throwable trace = entry.borrowTrace;
+                if (!entry.leakReported && trace != null && now - entry.borrowedAt > leakThresholdMillis) {
+                    entry.leakReported = true;
+                    System.err.println("Possible connection leak: connection held for "
+                            + (now - entry.borrowedAt) + " ms.");
+                    trace.printStackTrace();
+                }
+            }
+        }
+
+        if (now >= nextWarmUpAt) {
+            warmUp();
+        }
+    }
+
+    /**
+     * A physical connection plus its bookkeeping.
+     */
+    private final class PooledEntry {
+        private final Connection connection;
+        private final long createdAt = System.currentTimeMillis();
+        private volatile long returnedAt = createdAt;
+        private volatile long borrowedAt;
+        private volatile boolean leakReported;
+        private volatile Throwable borrowTrace;
+        private volatile boolean broken;
+
+        private PooledEntry(Connection connection) {
+            this.connection = connection;
+        }
+
+        private Connection newProxy() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new LeaseHandler(this));
+        }
+    }
+
+    /**
+     * Routes calls on a borrowed connection to the physical connection until the lease is closed.
+     */
+    private final class LeaseHandler implements InvocationHandler {
+        private final PooledEntry entry;
+        private boolean closed = false;
+
+        private LeaseHandler(PooledEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    synchronized (this) {
+                        if (!closed) {
+                            closed = true;
+                            release(entry);
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || entry.connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + entry.connection + "]";
+                case "isWrapperFor":
+                    return ((Class<?>) args[0]).isInstance(proxy);
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(proxy)) {
+                        return proxy;
+                    }
+                    throw new SQLException("A pooled connection cannot be unwrapped.");
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Connection has already been returned to the pool.");
+            }
+            try {
+                Object result = method.invoke(entry.connection, args);
+                if (result instanceof Statement) {
+                    return Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                            new Class<?>[]{method.getReturnType()}, new StatementHandler((Connection) proxy, result));
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException) {
+                    String state = ((SQLException) cause).getSQLState();
+                    // SQLState class 08 = connection exception; never hand this connection out again
+                    if (state != null && state.startsWith("08")) {
+                        entry.broken = true;
+                    }
+                }
+                throw cause;
+            }
+        }
+    }
+
+    /**
+     * Forwards calls to a statement of a borrowed connection, except that {@code getConnection()}
+     * returns the borrowed proxy and {@code unwrap} is refused.
+     */
+    private static final class StatementHandler implements InvocationHandler {
+        private final Connection lease;
+        private final Object statement;
+
+        private StatementHandler(Connection lease, Object statement) {
+            this.lease = lease;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getConnection":
+                    return lease;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "isWrapperFor":
+                    return ((Class<?>) args[0]).isInstance(proxy);
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(proxy)) {
+                        return proxy;
+                    }
+                    throw new SQLException("A pooled statement cannot be unwrapped.");
+                default:
+                    break;
+            }
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
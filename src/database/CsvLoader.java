@@ -0,0 +1,484 @@
+package database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bulk loads wine CSV files (the format of {@code src/resources/wine.csv}) into wine_table.
+ * <p>
+ * The file is memory-mapped and split at line boundaries into one segment per worker. Each
+ * worker parses its segment straight from the mapped bytes, decoding numbers without creating
+ * Strings, and streams the rows over its own connection as JDBC batches, which the driver
+ * rewrites into multi-row INSERTs. Progress and rows/sec are printed every second.
+ * <p>
+ * Batches are committed as they are sent, so a load that fails part way leaves the rows
+ * committed so far in the table.
+ * <p>
+ * Usage: {@code java database.CsvLoader <file.csv> [threads]}
+ */
+public final class CsvLoader {
+
+    private static final String INSERT_SQL = "INSERT INTO wine_table (fixed_acidity, volatile_acidity, "
+            + "citric_acid, residual_sugar, chlorides, free_sulfur_dioxide, total_sulfur_dioxide, "
+            + "density, pH, sulphates, alcohol, quality, color) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final int NUMERIC_FIELDS = 11;
+    private static final int FIELD_COUNT = 13;
+    private static final int FREE_SULFUR_DIOXIDE = 5;
+    private static final int TOTAL_SULFUR_DIOXIDE = 6;
+
+    private static final int BATCH_SIZE = Integer.getInteger("wine.loader.batchSize", 2000);
+    private static final long MAX_SEGMENT_BYTES = 1L << 30; // one mapping must stay below 2 GB
+    private static final int MAX_REPORTED_REJECTS = 10;
+
+    private static final double[] POWERS_OF_TEN = new double[23]; // exactly representable as doubles
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private CsvLoader() {
+    }
+
+    /**
+     * Command-line entry point.
+     *
+     * @param args The CSV file, optionally followed by the number of worker threads.
+     */
+    public static void main(String[] args) {
+        int threads = args.length == 2 ? parseThreads(args[1]) : defaultThreads();
+        if (args.length < 1 || args.length > 2 || threads <= 0) {
+            System.err.println("Usage: java database.CsvLoader <file.csv> [threads]");
+            System.err.println("  threads: a positive number of parallel connections (default " + defaultThreads() + ")");
+            System.exit(2);
+        }
+        try {
+            load(Paths.get(args[0]), threads);
+        } catch (IOException | SQLException e) {
+            System.err.println("Error loading " + args[0] + ": " + e.getMessage());
+            System.exit(1);
+        } finally {
+            DBConnection.shutdown();
+        }
+    }
+
+    /**
+     * @return The thread count given on the command line, or -1 if it is not a number.
+     */
+    private static int parseThreads(String text) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid thread count: " + text);
+            return -1;
+        }
+    }
+
+    /**
+     * @return The default number of workers: one per core, capped at four connections.
+     */
+    public static int defaultThreads() {
+        return Math.min(Runtime.getRuntime().availableProcessors(), 4);
+    }
+
+    /**
+     * Loads a CSV file into wine_table and invalidates the query caches afterwards.
+     *
+     * @param csv     The CSV file. A header line, if present, is skipped.
+     * @param threads The number of parallel workers and connections.
+     * @return The number of rows inserted.
+     * @throws IOException  If the file cannot be read.
+     * @throws SQLException If an insert fails.
+     */
+    public static long load(Path csv, int threads) throws IOException, SQLException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive.");
+        }
+        long start = System.nanoTime();
+        LongAdder progress = new LongAdder();
+        LongAdder rejected = new LongAdder();
+        AtomicInteger reportedRejects = new AtomicInteger();
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "wine-loader-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "wine-loader");
+            t.setDaemon(true);
+            return t;
+        });
+
+        try (FileChannel channel = FileChannel.open(csv, StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<long[]> segments = split(channel, size, threads);
+            System.out.println("Loading " + csv + " (" + size / 1024 + " KB) in " + segments.size()
+                    + " segments on " + threads + " connections");
+
+            reporter.scheduleAtFixedRate(() -> {
+                long rows = progress.sum();
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("  %,d rows loaded (%,.0f rows/s)%n", rows, rows / seconds);
+            }, 1, 1, TimeUnit.SECONDS);
+
+            List<Future<Long>> results = new ArrayList<>();
+            for (long[] segment : segments) {
+                Callable<Long> task = () -> loadSegment(channel, segment[0], segment[1], progress,
+                        rejected, reportedRejects);
+                results.add(workers.submit(task));
+            }
+
+            long loaded = 0;
+            for (Future<Long> result : results) {
+                loaded += awaitSegment(result);
+            }
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Loaded %,d rows in %.2f s (%,.0f rows/s), %,d rows rejected%n",
+                    loaded, seconds, loaded / seconds, rejected.sum());
+            return loaded;
+        } finally {
+            reporter.shutdownNow();
+            workers.shutdownNow();
+            // Whatever was committed is visible now; don't serve results cached before the load
+            QueryHandler.invalidateCaches();
+        }
+    }
+
+    private static long awaitSegment(Future<Long> result) throws IOException, SQLException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    // -------------------------------------------------------
+    //                  Splitting the file
+    // -------------------------------------------------------
+
+    /**
+     * Splits the file into byte ranges that start right after a line break.
+     *
+     * @return {start, end} pairs covering the whole file.
+     */
+    private static List<long[]> split(FileChannel channel, long size, int threads) throws IOException {
+        long parts = Math.max(threads, (size + MAX_SEGMENT_BYTES - 1) / MAX_SEGMENT_BYTES);
+        List<long[]> segments = new ArrayList<>();
+        long start = 0;
+        for (long k = 1; k <= parts && start < size; k++) {
+            long end = k == parts ? size : nextLineStart(channel, Math.max(start, size * k / parts), size);
+            if (end > start) {
+                segments.add(new long[]{start, end});
+                start = end;
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * @return The position after the first line break at or after position, or size if none.
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    // -------------------------------------------------------
+    //                  Parsing and inserting
+    // -------------------------------------------------------
+
+    private static long loadSegment(FileChannel channel, long offset, long end, LongAdder progress,
+                                    LongAdder rejected, AtomicInteger reportedRejects)
+            throws IOException, SQLException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, end - offset);
+        int limit = buffer.limit();
+        int[] fieldStart = new int[FIELD_COUNT];
+        int[] fieldEnd = new int[FIELD_COUNT];
+        TextDictionary qualities = new TextDictionary();
+        TextDictionary colors = new TextDictionary();
+
+        int position = 0;
+        if (offset == 0 && limit > 0 && !startsNumber(buffer.get(0))) {
+            position = lineEnd(buffer, 0, limit) + 1; // header
+        }
+
+        long loaded = 0;
+        int batched = 0;
+        try (Connection conn = DBConnection.connectForBulkLoad();
+             PreparedStatement ps = conn.prepareStatement(INSERT_SQL)) {
+            conn.setAutoCommit(false);
+
+            while (position < limit) {
+                int lineEnd = lineEnd(buffer, position, limit);
+                int contentEnd = lineEnd > position && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+                if (contentEnd > position) {
+                    if (splitFields(buffer, position, contentEnd, fieldStart, fieldEnd)
+                            && bindRow(ps, buffer, fieldStart, fieldEnd, qualities, colors)) {
+                        ps.addBatch();
+                        batched++;
+                    } else {
+                        rejected.increment();
+                        if (reportedRejects.incrementAndGet() <= MAX_REPORTED_REJECTS) {
+                            System.err.println("Skipping malformed row at byte " + (offset + position));
+                        }
+                    }
+                }
+                position = lineEnd + 1;
+
+                if (batched == BATCH_SIZE) {
+                    ps.executeBatch();
+                    conn.commit();
+                    loaded += batched;
+                    progress.add(batched);
+                    batched = 0;
+                }
+            }
+            if (batched > 0) {
+                ps.executeBatch();
+                conn.commit();
+                loaded += batched;
+                progress.add(batched);
+            }
+        }
+        return loaded;
+    }
+
+    private static int lineEnd(ByteBuffer buffer, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    private static boolean startsNumber(byte b) {
+        return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == '"';
+    }
+
+    /**
+     * Records where each comma-separated field of a line starts and ends.
+     *
+     * @return False if the line does not have exactly {@link #FIELD_COUNT} fields.
+     */
+    private static boolean splitFields(ByteBuffer buffer, int from, int to, int[] fieldStart, int[] fieldEnd) {
+        int field = 0;
+        fieldStart[0] = from;
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == ',') {
+                if (field == FIELD_COUNT - 1) {
+                    return false;
+                }
+                fieldEnd[field++] = i;
+                fieldStart[field] = i + 1;
+            }
+        }
+        fieldEnd[field] = to;
+        return field == FIELD_COUNT - 1;
+    }
+
+    private static boolean bindRow(PreparedStatement ps, ByteBuffer buffer, int[] fieldStart, int[] fieldEnd,
+                                   TextDictionary qualities, TextDictionary colors) throws SQLException {
+        for (int i = 0; i < NUMERIC_FIELDS; i++) {
+            if (fieldStart[i] == fieldEnd[i]) {
+                ps.setNull(i + 1, Types.DECIMAL);
+                continue;
+            }
+            double value = parseNumber(buffer, fieldStart[i], fieldEnd[i]);
+            if (Double.isNaN(value)) {
+                return false;
+            }
+            if (i == FREE_SULFUR_DIOXIDE || i == TOTAL_SULFUR_DIOXIDE) {
+                ps.setInt(i + 1, (int) Math.round(value));
+            } else {
+                ps.setDouble(i + 1, value);
+            }
+        }
+        bindText(ps, NUMERIC_FIELDS + 1, qualities, buffer, fieldStart[NUMERIC_FIELDS], fieldEnd[NUMERIC_FIELDS]);
+        bindText(ps, NUMERIC_FIELDS + 2, colors, buffer, fieldStart[NUMERIC_FIELDS + 1], fieldEnd[NUMERIC_FIELDS + 1]);
+        return true;
+    }
+
+    private static void bindText(PreparedStatement ps, int index, TextDictionary dictionary, ByteBuffer buffer,
+                                 int from, int to) throws SQLException {
+        if (to - from >= 2 && buffer.get(from) == '"' && buffer.get(to - 1) == '"') {
+            from++;
+            to--;
+        }
+        if (from == to) {
+            ps.setNull(index, Types.VARCHAR);
+        } else {
+            ps.setString(index, dictionary.lookup(buffer, from, to));
+        }
+    }
+
+    /**
+     * Parses a decimal number such as {@code 0.99666}, {@code -3} or {@code 1.5e-3} directly from
+     * bytes. Up to 17 significant digits are kept, which is all a double can hold.
+     *
+     * @return The value, or NaN if the bytes are not a number.
+     */
+    static double parseNumber(ByteBuffer buffer, int from, int to) {
+        if (to - from >= 2 && buffer.get(from) == '"' && buffer.get(to - 1) == '"') {
+            from++;
+            to--;
+        }
+        boolean negative = false;
+        if (from < to && (buffer.get(from) == '-' || buffer.get(from) == '+')) {
+            negative = buffer.get(from) == '-';
+            from++;
+        }
+        long mantissa = 0;
+        int scale = 0; // value = mantissa / 10^scale
+        boolean digits = false;
+        boolean fraction = false;
+        int i = from;
+        for (; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                digits = true;
+                if (mantissa < 10_000_000_000_000_000L) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (fraction) {
+                        scale++;
+                    }
+                } else if (!fraction) {
+                    scale--; // digit beyond double precision before the point
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else if ((b == 'e' || b == 'E') && digits) {
+                break;
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (!digits) {
+            return Double.NaN;
+        }
+        if (i < to) {
+            // Exponent
+            i++;
+            boolean negativeExponent = false;
+            if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                negativeExponent = buffer.get(i) == '-';
+                i++;
+            }
+            if (i == to) {
+                return Double.NaN;
+            }
+            int exponent = 0;
+            for (; i < to; i++) {
+                byte b = buffer.get(i);
+                if (b < '0' || b > '9' || exponent > 10_000) {
+                    return Double.NaN;
+                }
+                exponent = exponent * 10 + (b - '0');
+            }
+            scale += negativeExponent ? exponent : -exponent;
+        }
+        double value;
+        if (scale >= 0) {
+            value = scale < POWERS_OF_TEN.length ? mantissa / POWERS_OF_TEN[scale] : mantissa / Math.pow(10, scale);
+        } else {
+            value = -scale < POWERS_OF_TEN.length ? mantissa * POWERS_OF_TEN[-scale] : mantissa * Math.pow(10, -scale);
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Maps the raw bytes of a low-cardinality text field (quality, color) to a shared String, so
+     * each distinct value is decoded once per worker instead of once per row.
+     */
+    private static final class TextDictionary {
+        private byte[][] keys = new byte[8][];
+        private String[] values = new String[8];
+        private int size;
+
+        private String lookup(ByteBuffer buffer, int from, int to) {
+            int length = to - from;
+            for (int k = 0; k < size; k++) {
+                if (matches(keys[k], buffer, from, length)) {
+                    return values[k];
+                }
+            }
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(from + i);
+            }
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            if (size < 256) { // stop remembering if the field turns out to be free text
+                if (size == keys.length) {
+                    keys = Arrays.copyOf(keys, size * 2);
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                keys[size] = bytes;
+                values[size++] = value;
+            }
+            return value;
+        }
+
+        private static boolean matches(byte[] key, ByteBuffer buffer, int from, int length) {
+            if (key.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (key[i] != buffer.get(from + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
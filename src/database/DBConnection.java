@@ -4,12 +4,79 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 
+/**
+ * Hands out database connections for the Wine Database System.
+ * Connections come from a shared {@link ConnectionPool}; closing them returns them to the pool.
+ */
 public class DBConnection {
-    private static final String URL = "jdbc:mysql://localhost:3306/wine_db";
+    // Server-side prepared statements, cached per pooled connection, so repeated filter shapes
+    // skip parsing and planning on both the driver and the server
+    private static final String BASE_URL = "jdbc:mysql://localhost:3306/wine_db";
+    private static final String URL = BASE_URL
+            + "?useServerPrepStmts=true"
+            + "&cachePrepStmts=true"
+            + "&prepStmtCacheSize=256"
+            + "&prepStmtCacheSqlLimit=2048";
+    // Bulk loads: the driver rewrites each JDBC batch into multi-row INSERT statements
+    private static final String BULK_URL = BASE_URL + "?rewriteBatchedStatements=true";
     private static final String USER = "wine_db_project";
     private static final String PASSWORD = "12345678";
 
+    // Pool sizing, overridable with -Dwine.pool.maxSize=... etc.
+    private static final int POOL_MAX_SIZE = Integer.getInteger("wine.pool.maxSize", 10);
+    private static final int POOL_MIN_IDLE = Integer.getInteger("wine.pool.minIdle", 2);
+    private static final long POOL_MAX_LIFETIME_MILLIS = Long.getLong("wine.pool.maxLifetimeMillis", 30 * 60_000L);
+    private static final long POOL_BORROW_TIMEOUT_MILLIS = Long.getLong("wine.pool.borrowTimeoutMillis", 30_000L);
+    // Leak detection records a stack trace per borrow; enable it with e.g. -Dwine.pool.leakThresholdMillis=60000
+    private static final long POOL_LEAK_THRESHOLD_MILLIS = Long.getLong("wine.pool.leakThresholdMillis", 0L);
+
+    private static final ConnectionPool POOL = new ConnectionPool(URL, USER, PASSWORD,
+            POOL_MAX_SIZE, POOL_MIN_IDLE, POOL_MAX_LIFETIME_MILLIS,
+            POOL_BORROW_TIMEOUT_MILLIS, POOL_LEAK_THRESHOLD_MILLIS);
+
+    /**
+     * Borrows a connection from the pool. Close it to return it.
+     *
+     * @return A pooled connection.
+     * @throws SQLException If no connection could be obtained.
+     */
     public static Connection connect() throws SQLException {
+        return POOL.borrow();
+    }
+
+    /**
+     * Opens a dedicated connection that bypasses the pool. Use only for long-running jobs
+     * that should not hold a pooled connection.
+     *
+     * @return A new physical connection; closing it closes the socket.
+     * @throws SQLException If the connection cannot be opened.
+     */
+    public static Connection connectUnpooled() throws SQLException {
         return DriverManager.getConnection(URL, USER, PASSWORD);
     }
+
+    /**
+     * Opens a dedicated connection for bulk inserts, with batched statements rewritten into
+     * multi-row INSERTs. Bypasses the pool.
+     *
+     * @return A new physical connection; closing it closes the socket.
+     * @throws SQLException If the connection cannot be opened.
+     */
+    public static Connection connectForBulkLoad() throws SQLException {
+        return DriverManager.getConnection(BULK_URL, USER, PASSWORD);
+    }
+
+    /**
+     * @return The shared connection pool.
+     */
+    public static ConnectionPool getPool() {
+        return POOL;
+    }
+
+    /**
+     * Closes all pooled connections. Called when the application exits.
+     */
+    public static void shutdown() {
+        POOL.shutdown();
+    }
 }
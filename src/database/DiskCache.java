@@ -0,0 +1,239 @@
+package database;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A persistent second tier behind {@link ResultCache}: large query results are kept as
+ * {@link ColumnarFile}s so that they survive a restart and load with bulk copies from a
+ * memory-mapped file instead of a trip to MySQL.
+ * <p>
+ * An entry is keyed by the normalized query (the {@link ResultCache} key) plus the
+ * {@link TableWatermark} it was read at, so an insert or delete makes old entries unreachable.
+ * The watermark cannot see UPDATEs by other clients, so an entry is also rejected (and deleted)
+ * once it is older than {@code wine.diskCache.maxAgeMillis} (default one hour), however often it
+ * is read; the oldest entries are deleted first once the directory exceeds its byte budget.
+ * Files are written by a background thread and moved into place atomically, so a reader never
+ * sees a partial file.
+ * <p>
+ * Off by default; enable with {@code -Dwine.diskCache=true}. The directory defaults to
+ * {@code ~/.wine-cache}.
+ */
+final class DiskCache {
+
+    private static final boolean ENABLED = "true".equalsIgnoreCase(System.getProperty("wine.diskCache"));
+    private static final Path DIRECTORY = Paths.get(System.getProperty("wine.diskCache.dir",
+            System.getProperty("user.home") + "/.wine-cache"));
+    private static final long MAX_BYTES = Long.getLong("wine.diskCache.maxBytes", 1024L * 1024 * 1024);
+    // Small results are cheap to query again and not worth a file
+    private static final long MIN_BYTES = Long.getLong("wine.diskCache.minBytes", 256L * 1024);
+    private static final long MAX_AGE_MILLIS = Long.getLong("wine.diskCache.maxAgeMillis", 60 * 60_000L);
+
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "wine-disk-cache-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * A result read from disk and the time it stops being valid.
+     */
+    static final class Hit {
+        private final QueryResult result;
+        private final long expiresAt;
+
+        private Hit(QueryResult result, long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+
+        QueryResult getResult() {
+            return result;
+        }
+
+        /**
+         * @return When the entry exceeds its maximum age; a copy kept in memory must not outlive it.
+         */
+        long getExpiresAt() {
+            return expiresAt;
+        }
+    }
+
+    private DiskCache() {
+    }
+
+    /**
+     * @param key       The query key.
+     * @param watermark The current table watermark.
+     * @return The cached result, or null on a miss, if the entry is too old, or if the file
+     *         cannot be read.
+     */
+    static Hit get(String key, TableWatermark watermark) {
+        if (!ENABLED || watermark == null) {
+            return null;
+        }
+        Path file = fileFor(key, watermark);
+        String label = label(key, watermark);
+        try {
+            long expiresAt = Files.getLastModifiedTime(file).toMillis() + MAX_AGE_MILLIS;
+            if (expiresAt <= System.currentTimeMillis()) {
+                delete(file);
+                return null;
+            }
+            long start = System.nanoTime();
+            QueryResult result = ColumnarFile.read(file, label);
+            if (result == null) {
+                return null; // hash collision with another query
+            }
+            System.out.println("Loaded " + result.getRowCount() + " rows from disk cache in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+            return new Hit(result, expiresAt);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.err.println("Error reading disk cache entry " + file.getFileName() + ": " + e.getMessage());
+            delete(file);
+            return null;
+        }
+    }
+
+    /**
+     * Stores a result in the background if it is large enough to be worth it.
+     *
+     * @param key       The query key.
+     * @param watermark The table watermark the result was read at.
+     * @param result    The result.
+     */
+    static void put(String key, TableWatermark watermark, QueryResult result) {
+        if (!ENABLED || watermark == null || result.estimatedBytes() < MIN_BYTES) {
+            return;
+        }
+        WRITER.execute(() -> {
+            Path file = fileFor(key, watermark);
+            if (Files.exists(file)) {
+                return;
+            }
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            try {
+                Files.createDirectories(DIRECTORY);
+                ColumnarFile.write(temporary, label(key, watermark), result);
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                evict();
+            } catch (IOException e) {
+                System.err.println("Error writing disk cache entry: " + e.getMessage());
+                delete(temporary);
+            }
+        });
+    }
+
+    /**
+     * Deletes every entry. Call after writing to wine_table in a way the watermark cannot see
+     * (e.g. an UPDATE).
+     */
+    static void clear() {
+        if (!ENABLED) {
+            return;
+        }
+        WRITER.execute(() -> {
+            for (Path file : entries()) {
+                delete(file);
+            }
+        });
+    }
+
+    /**
+     * Deletes expired entries, then the oldest ones until the directory fits in its budget.
+     */
+    private static void evict() throws IOException {
+        List<Path> files = entries();
+        long expired = System.currentTimeMillis() - MAX_AGE_MILLIS;
+        files.removeIf(file -> {
+            if (lastModified(file) > expired) {
+                return false;
+            }
+            delete(file);
+            return true;
+        });
+        long total = 0;
+        for (Path file : files) {
+            total += Files.size(file);
+        }
+        if (total <= MAX_BYTES) {
+            return;
+        }
+        files.sort(Comparator.comparingLong(DiskCache::lastModified));
+        for (Path file : files) {
+            if (total <= MAX_BYTES) {
+                break;
+            }
+            total -= Files.size(file);
+            delete(file);
+        }
+    }
+
+    private static List<Path> entries() {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(DIRECTORY)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(DIRECTORY, "*" + ColumnarFile.EXTENSION)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        } catch (IOException e) {
+            System.err.println("Error listing disk cache: " + e.getMessage());
+        }
+        return files;
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Still mapped by a reader on some platforms; retried on the next eviction
+        }
+    }
+
+    private static String label(String key, TableWatermark watermark) {
+        return key + '@' + watermark;
+    }
+
+    /**
+     * @return The entry file: a SHA-256 of the key and watermark, which keeps arbitrary SQL out
+     *         of file names. The full label inside the file guards against collisions.
+     */
+    private static Path fileFor(String key, TableWatermark watermark) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(label(key, watermark).getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return DIRECTORY.resolve(name + ColumnarFile.EXTENSION);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+}
@@ -0,0 +1,496 @@
+package database;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Evaluates {@link WineFilter}s against the columns of a {@link QueryResult} in memory.
+ * <p>
+ * Each filter is compiled into a matcher that narrows a selection vector (an array of row
+ * indexes) with a primitive loop over the raw column array. SQL semantics are kept: a NULL
+ * cell never matches.
+ */
+final class FilterEngine {
+
+    private FilterEngine() {
+    }
+
+    /**
+     * Finds the rows of {@code data} that match all filters.
+     *
+     * @param data    The rows to filter.
+     * @param filters The filters to AND together (may be null or empty).
+     * @param limit   Stop after this many matches, or null for no limit.
+     * @return Matching row indexes in ascending order, or null if a filter cannot be evaluated
+     *         in memory (unknown column or unexpected column type).
+     */
+    static int[] evaluate(QueryResult data, List<WineFilter> filters, Integer limit) {
+        return evaluate(data, filters, limit, null);
+    }
+
+    /**
+     * Finds the rows of {@code data} that match all filters, using indexes where possible.
+     * Filters on bitmap-indexed columns are resolved first by AND-ing their bitmaps. Range filters
+     * on columns with a sorted index resolve by binary search; the narrowest one (if narrower than
+     * the bitmap result) supplies the candidate rows. Only the surviving rows are read by the
+     * remaining filters.
+     *
+     * @param data    The rows to filter.
+     * @param filters The filters to AND together (may be null or empty).
+     * @param limit   Stop after this many matches, or null for no limit.
+     * @param indexes The indexes built over {@code data}, or null to scan.
+     * @return Matching row indexes in ascending order, or null if a filter cannot be evaluated
+     *         in memory.
+     */
+    static int[] evaluate(QueryResult data, List<WineFilter> filters, Integer limit, TableIndexes indexes) {
+        List<Matcher> matchers = compile(data, filters);
+        if (matchers == null) {
+            return null;
+        }
+
+        RoaringBitmap candidates = null;
+        List<Matcher> remaining = new ArrayList<>();
+        for (Matcher matcher : matchers) {
+            BitmapIndex index = indexes != null && matcher instanceof DictionaryMatcher
+                    ? indexes.bitmapFor(matcher.column)
+                    : null;
+            if (index == null) {
+                remaining.add(matcher);
+                continue;
+            }
+            RoaringBitmap matches = index.lookup(((DictionaryMatcher) matcher).acceptedCodes());
+            candidates = candidates == null ? matches : candidates.and(matches);
+        }
+
+        // The narrowest indexed range drives the scan if it is smaller than the bitmap candidates
+        Matcher driver = null;
+        SortedIndex driverIndex = null;
+        int[] driverSlice = null;
+        for (Matcher matcher : remaining) {
+            SortedIndex index = indexes != null && matcher instanceof RangeMatcher
+                    ? indexes.sortedFor(matcher.column)
+                    : null;
+            if (index == null) {
+                continue;
+            }
+            RangeMatcher range = (RangeMatcher) matcher;
+            int[] slice = index.slice(range.getMin(), range.getMax());
+            if (driverSlice == null || slice[1] - slice[0] < driverSlice[1] - driverSlice[0]) {
+                driver = matcher;
+                driverIndex = index;
+                driverSlice = slice;
+            }
+        }
+        if (driver != null && candidates != null && driverSlice[1] - driverSlice[0] >= candidates.cardinality()) {
+            driver = null;
+        }
+
+        int[] rows;
+        int count;
+        if (driver != null) {
+            remaining.remove(driver);
+            rows = driverIndex.rows(driverSlice[0], driverSlice[1]);
+            count = rows.length;
+            if (candidates != null) {
+                int kept = 0;
+                for (int i = 0; i < count; i++) {
+                    if (candidates.contains(rows[i])) {
+                        rows[kept++] = rows[i];
+                    }
+                }
+                count = kept;
+            }
+        } else if (candidates != null) {
+            rows = candidates.toArray();
+            count = rows.length;
+        } else {
+            count = data.getRowCount();
+            rows = new int[count];
+            for (int i = 0; i < count; i++) {
+                rows[i] = i;
+            }
+        }
+        for (Matcher matcher : remaining) {
+            count = matcher.refine(rows, count);
+            if (count == 0) {
+                break;
+            }
+        }
+        if (limit != null) {
+            count = Math.min(count, Math.max(limit, 0));
+        }
+        return count == rows.length ? rows : Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * Finds the rows whose id is above a high-watermark, e.g. to drop rows of a polled delta
+     * that a result already holds.
+     *
+     * @param data The rows, with an integer id column.
+     * @param id   The high-watermark.
+     * @return Matching row indexes in ascending order (none if there is no id column).
+     */
+    static int[] idsAbove(QueryResult data, long id) {
+        int column = data.findColumn("id");
+        if (column < 0) {
+            return new int[0];
+        }
+        Column ids = data.getColumn(column);
+        int[] rows = new int[data.getRowCount()];
+        int count = 0;
+        for (int row = 0; row < rows.length; row++) {
+            if (!ids.isNull(row) && ids.getInt(row) > id) {
+                rows[count++] = row;
+            }
+        }
+        return count == rows.length ? rows : Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * Compiles the filters into matchers, cheapest and most selective first.
+     *
+     * @return The matchers, or null if any filter cannot be evaluated in memory.
+     */
+    static List<Matcher> compile(QueryResult data, List<WineFilter> filters) {
+        List<Matcher> matchers = new ArrayList<>();
+        if (filters == null) {
+            return matchers;
+        }
+        for (WineFilter filter : filters) {
+            Matcher matcher = compile(data, filter);
+            if (matcher == null) {
+                return null;
+            }
+            matchers.add(matcher);
+        }
+        // Equality tests usually remove the most rows; run them before range tests
+        matchers.sort((a, b) -> Boolean.compare(!a.isEquality(), !b.isEquality()));
+        return matchers;
+    }
+
+    private static Matcher compile(QueryResult data, WineFilter filter) {
+        int index = data.findColumn(filter.getField().getColumnName());
+        if (index < 0) {
+            return null;
+        }
+        Column column = data.getColumn(index);
+        Object[] values = filter.getValues();
+        WineFilter.Operator op = filter.getOperator();
+
+        if (column instanceof Column.DictionaryColumn) {
+            if (op != WineFilter.Operator.EQUALS && op != WineFilter.Operator.IN) {
+                return null;
+            }
+            Column.DictionaryColumn dictionary = (Column.DictionaryColumn) column;
+            boolean[] accepted = new boolean[Column.DictionaryColumn.MAX_DICTIONARY_SIZE];
+            for (Object value : values) {
+                int code = dictionary.codeOf(String.valueOf(value));
+                if (code >= 0) {
+                    accepted[code] = true;
+                }
+            }
+            return new DictionaryMatcher(dictionary, accepted);
+        }
+        if (column instanceof Column.IntColumn || column instanceof Column.DateColumn) {
+            int[] raw = column instanceof Column.IntColumn
+                    ? ((Column.IntColumn) column).values()
+                    : ((Column.DateColumn) column).values();
+            long[] bounds = new long[values.length];
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] instanceof LocalDate) {
+                    bounds[i] = ((LocalDate) values[i]).toEpochDay();
+                } else if (values[i] instanceof Number) {
+                    bounds[i] = ((Number) values[i]).longValue();
+                } else {
+                    return null;
+                }
+            }
+            if (op == WineFilter.Operator.EQUALS || op == WineFilter.Operator.IN) {
+                return new IntSetMatcher(column, raw, bounds);
+            }
+            long[] range = rangeBounds(op, bounds[0], bounds.length > 1 ? bounds[1] : 0,
+                    Long.MIN_VALUE, Long.MAX_VALUE);
+            return new IntRangeMatcher(column, raw, range[0], range[1]);
+        }
+        if (column instanceof Column.DoubleColumn) {
+            double[] bounds = new double[values.length];
+            for (int i = 0; i < values.length; i++) {
+                if (!(values[i] instanceof Number)) {
+                    return null;
+                }
+                bounds[i] = ((Number) values[i]).doubleValue();
+            }
+            double min;
+            double max;
+            switch (op) {
+                case EQUALS:
+                    min = bounds[0];
+                    max = bounds[0];
+                    break;
+                case BETWEEN:
+                    min = bounds[0];
+                    max = bounds[1];
+                    break;
+                case AT_LEAST:
+                    min = bounds[0];
+                    max = Double.POSITIVE_INFINITY;
+                    break;
+                case AT_MOST:
+                    min = Double.NEGATIVE_INFINITY;
+                    max = bounds[0];
+                    break;
+                default:
+                    return null;
+            }
+            return new DoubleRangeMatcher((Column.DoubleColumn) column, min, max);
+        }
+        return null;
+    }
+
+    private static long[] rangeBounds(WineFilter.Operator op, long first, long second, long lowest, long highest) {
+        switch (op) {
+            case BETWEEN:
+                return new long[]{first, second};
+            case AT_LEAST:
+                return new long[]{first, highest};
+            default: // AT_MOST
+                return new long[]{lowest, first};
+        }
+    }
+
+    // -------------------------------------------------------
+    //                  Matchers
+    // -------------------------------------------------------
+
+    /**
+     * Narrows a selection vector to the rows that satisfy one filter.
+     */
+    abstract static class Matcher {
+        protected final Column column;
+
+        Matcher(Column column) {
+            this.column = column;
+        }
+
+        /**
+         * Keeps only matching rows, compacting them to the front of {@code rows}.
+         *
+         * @param rows  Candidate row indexes; the first {@code count} entries are valid.
+         * @param count The number of candidates.
+         * @return The number of rows that matched.
+         */
+        abstract int refine(int[] rows, int count);
+
+        /**
+         * @param row A row index.
+         * @return True if the row satisfies the filter.
+         */
+        abstract boolean matches(int row);
+
+        boolean isEquality() {
+            return false;
+        }
+
+        protected int dropNulls(int[] rows, int count) {
+            if (!column.hasNulls()) {
+                return count;
+            }
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                if (!column.isNull(rows[i])) {
+                    rows[kept++] = rows[i];
+                }
+            }
+            return kept;
+        }
+    }
+
+    static final class DictionaryMatcher extends Matcher {
+        private final byte[] codes;
+        private final boolean[] accepted;
+
+        DictionaryMatcher(Column.DictionaryColumn column, boolean[] accepted) {
+            super(column);
+            this.codes = column.codes();
+            this.accepted = accepted;
+        }
+
+        @Override
+        int refine(int[] rows, int count) {
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int row = rows[i];
+                if (accepted[codes[row] & 0xFF]) {
+                    rows[kept++] = row;
+                }
+            }
+            return dropNulls(rows, kept);
+        }
+
+        @Override
+        boolean matches(int row) {
+            return accepted[codes[row] & 0xFF] && !column.isNull(row);
+        }
+
+        @Override
+        boolean isEquality() {
+            return true;
+        }
+
+        /**
+         * @return The accepted dictionary codes in ascending order.
+         */
+        int[] acceptedCodes() {
+            int n = 0;
+            int[] codes = new int[accepted.length];
+            for (int code = 0; code < accepted.length; code++) {
+                if (accepted[code]) {
+                    codes[n++] = code;
+                }
+            }
+            return Arrays.copyOf(codes, n);
+        }
+    }
+
+    static final class IntSetMatcher extends Matcher {
+        private final int[] values;
+        private final int[] sortedTargets;
+
+        IntSetMatcher(Column column, int[] values, long[] targets) {
+            super(column);
+            this.values = values;
+            this.sortedTargets = Arrays.stream(targets)
+                    .filter(t -> t >= Integer.MIN_VALUE && t <= Integer.MAX_VALUE)
+                    .mapToInt(t -> (int) t)
+                    .sorted()
+                    .toArray();
+        }
+
+        @Override
+        int refine(int[] rows, int count) {
+            int kept = 0;
+            if (sortedTargets.length == 1) {
+                int target = sortedTargets[0];
+                for (int i = 0; i < count; i++) {
+                    int row = rows[i];
+                    if (values[row] == target) {
+                        rows[kept++] = row;
+                    }
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    int row = rows[i];
+                    if (Arrays.binarySearch(sortedTargets, values[row]) >= 0) {
+                        rows[kept++] = row;
+                    }
+                }
+            }
+            return dropNulls(rows, kept);
+        }
+
+        @Override
+        boolean matches(int row) {
+            return Arrays.binarySearch(sortedTargets, values[row]) >= 0 && !column.isNull(row);
+        }
+
+        @Override
+        boolean isEquality() {
+            return true;
+        }
+    }
+
+    /**
+     * A matcher that accepts values in a closed interval.
+     */
+    interface RangeMatcher {
+        double getMin();
+
+        double getMax();
+    }
+
+    static final class IntRangeMatcher extends Matcher implements RangeMatcher {
+        private final int[] values;
+        private final long min;
+        private final long max;
+
+        IntRangeMatcher(Column column, int[] values, long min, long max) {
+            super(column);
+            this.values = values;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        int refine(int[] rows, int count) {
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int row = rows[i];
+                int value = values[row];
+                if (value >= min && value <= max) {
+                    rows[kept++] = row;
+                }
+            }
+            return dropNulls(rows, kept);
+        }
+
+        @Override
+        boolean matches(int row) {
+            int value = values[row];
+            return value >= min && value <= max && !column.isNull(row);
+        }
+
+        @Override
+        public double getMin() {
+            return min;
+        }
+
+        @Override
+        public double getMax() {
+            return max;
+        }
+    }
+
+    static final class DoubleRangeMatcher extends Matcher implements RangeMatcher {
+        private final double[] values;
+        private final double min;
+        private final double max;
+
+        DoubleRangeMatcher(Column.DoubleColumn column, double min, double max) {
+            super(column);
+            this.values = column.values();
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        int refine(int[] rows, int count) {
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int row = rows[i];
+                double value = values[row];
+                if (value >= min && value <= max) {
+                    rows[kept++] = row;
+                }
+            }
+            return dropNulls(rows, kept);
+        }
+
+        @Override
+        boolean matches(int row) {
+            double value = values[row];
+            return value >= min && value <= max && !column.isNull(row);
+        }
+
+        @Override
+        public double getMin() {
+            return min;
+        }
+
+        @Override
+        public double getMax() {
+            return max;
+        }
+    }
+}
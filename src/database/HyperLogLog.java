@@ -0,0 +1,63 @@
+package database;
+
+/**
+ * HyperLogLog distinct-value counter: 4096 one-byte registers (4 KB) estimate the number of
+ * distinct values in a stream of any length with a standard error of about 1.6%.
+ */
+final class HyperLogLog {
+
+    private static final int PRECISION = 12;
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    private final byte[] registers = new byte[REGISTERS];
+
+    /**
+     * Adds a value, identified by its 64-bit key (for doubles, their bit pattern).
+     */
+    void add(long key) {
+        long hash = mix(key);
+        int register = (int) (hash >>> (64 - PRECISION));
+        // Position of the first 1-bit in the remaining bits; the sentinel bit caps the rank
+        int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        if (rank > registers[register]) {
+            registers[register] = (byte) rank;
+        }
+    }
+
+    void add(double value) {
+        add(Double.doubleToLongBits(value == 0 ? 0.0 : value)); // -0.0 and 0.0 are the same value
+    }
+
+    /**
+     * @return The estimated number of distinct values added.
+     */
+    long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros); // linear counting for small sets
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * The MurmurHash3 64-bit finalizer: spreads similar keys (e.g. neighbouring decimals) over
+     * all bits.
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,298 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Proposes and creates composite indexes on {@code wine_table} for the filter combinations
+ * that users actually run, as recorded by {@link WorkloadRecorder}.
+ * <p>
+ * A shape is a candidate once it ran at least {@code wine.advisor.minExecutions} times with a
+ * mean latency of at least {@code wine.advisor.slowMillis}. Its slowest execution (the same
+ * statement, e.g. a keyset page or a COUNT, with the same bound values) is EXPLAINed,
+ * and if MySQL scans the table an index is proposed with the equality columns first and one
+ * range column last (e.g. {@code (quality, color, alcohol)}), the order in which a B-tree can
+ * use them all. Proposals that are a prefix of another one, or of an existing index, are dropped.
+ * <p>
+ * {@link #apply} times the query before and after creating the index, so every change comes
+ * with its measured effect.
+ */
+public final class IndexAdvisor {
+
+    private static final int MIN_EXECUTIONS = Integer.getInteger("wine.advisor.minExecutions", 3);
+    private static final double SLOW_MILLIS = Double.parseDouble(System.getProperty("wine.advisor.slowMillis", "50"));
+    private static final int TIMING_RUNS = Integer.getInteger("wine.advisor.timingRuns", 5);
+
+    private static final String INDEX_PREFIX = "idx_advisor_";
+    private static final String INDEXES_SQL = "SELECT INDEX_NAME, COLUMN_NAME FROM INFORMATION_SCHEMA.STATISTICS "
+            + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'wine_table' ORDER BY INDEX_NAME, SEQ_IN_INDEX";
+
+    private IndexAdvisor() {
+    }
+
+    /**
+     * A proposed index and the workload it serves.
+     */
+    public static final class Recommendation {
+        private final String where;
+        private final String sql;
+        private final List<String> columns;
+        private final List<WineFilter> filters;
+        private final Object[] trailing;
+        private final long executions;
+        private final double meanMillis;
+        private final String plan;
+
+        private Recommendation(WorkloadRecorder.Shape shape, List<String> columns, String plan) {
+            this.where = shape.getWhere();
+            this.sql = shape.getSql();
+            this.columns = columns;
+            this.filters = shape.getSlowestFilters();
+            this.trailing = shape.getSlowestTrailing();
+            this.executions = shape.getExecutions();
+            this.meanMillis = shape.getMeanMillis();
+            this.plan = plan;
+        }
+
+        public List<String> getColumns() {
+            return columns;
+        }
+
+        public String getIndexName() {
+            return INDEX_PREFIX + String.join("_", columns).toLowerCase();
+        }
+
+        /**
+         * @return The statement that creates the index without blocking writes.
+         */
+        public String getDdl() {
+            StringJoiner columnList = new StringJoiner("`, `", "(`", "`)");
+            columns.forEach(columnList::add);
+            return "ALTER TABLE wine_table ADD INDEX `" + getIndexName() + "` " + columnList
+                    + ", ALGORITHM=INPLACE, LOCK=NONE";
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s%n    for WHERE %s (%d runs, mean %.1f ms; plan: %s)",
+                    getDdl(), where, executions, meanMillis, plan);
+        }
+    }
+
+    /**
+     * The measured effect of creating an index.
+     */
+    public static final class Report {
+        private final Recommendation recommendation;
+        private final double beforeMillis;
+        private final double afterMillis;
+        private final String planAfter;
+
+        private Report(Recommendation recommendation, double beforeMillis, double afterMillis, String planAfter) {
+            this.recommendation = recommendation;
+            this.beforeMillis = beforeMillis;
+            this.afterMillis = afterMillis;
+            this.planAfter = planAfter;
+        }
+
+        public Recommendation getRecommendation() {
+            return recommendation;
+        }
+
+        /**
+         * @return The median latency of the shape's slowest query before the index, in ms.
+         */
+        public double getBeforeMillis() {
+            return beforeMillis;
+        }
+
+        /**
+         * @return The median latency of the same query with the index, in ms.
+         */
+        public double getAfterMillis() {
+            return afterMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %.1f ms -> %.1f ms (%.1fx); plan: %s", recommendation.getIndexName(),
+                    beforeMillis, afterMillis, beforeMillis / Math.max(afterMillis, 0.001), planAfter);
+        }
+    }
+
+    /**
+     * Proposes indexes for the slow, frequent filter shapes recorded so far.
+     *
+     * @return The proposals, most expensive workload first; empty if no index is needed.
+     * @throws SQLException If the existing indexes cannot be read or an EXPLAIN fails.
+     */
+    public static List<Recommendation> recommend() throws SQLException {
+        Collection<List<String>> existing = indexes().values();
+        List<Recommendation> recommendations = new ArrayList<>();
+        for (WorkloadRecorder.Shape shape : WorkloadRecorder.shapes()) {
+            if (shape.getExecutions() < MIN_EXECUTIONS || shape.getMeanMillis() < SLOW_MILLIS) {
+                continue;
+            }
+            List<String> columns = indexColumns(shape.getSlowestFilters());
+            if (columns.isEmpty() || isPrefixOfAny(columns, existing)) {
+                continue;
+            }
+            List<Map<String, String>> plan = QueryHandler.explain(shape.getSql(), shape.getSlowestFilters(),
+                    shape.getSlowestTrailing());
+            if (scansTable(plan)) {
+                recommendations.add(new Recommendation(shape, columns, describe(plan)));
+            }
+        }
+
+        // One index serves every shape whose columns are a prefix of it
+        List<Recommendation> kept = new ArrayList<>();
+        for (Recommendation candidate : recommendations) {
+            boolean served = false;
+            for (Recommendation other : recommendations) {
+                if (other != candidate && startsWith(other.columns, candidate.columns)
+                        && (other.columns.size() > candidate.columns.size() || kept.contains(other))) {
+                    served = true;
+                    break;
+                }
+            }
+            if (!served) {
+                kept.add(candidate);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Creates a proposed index and measures the query it was proposed for before and after.
+     * Runs an online ALTER on a dedicated connection; reads and writes continue meanwhile.
+     *
+     * @param recommendation A proposal from {@link #recommend()}.
+     * @return The before/after latencies.
+     * @throws SQLException If a timing run or the ALTER fails.
+     */
+    public static Report apply(Recommendation recommendation) throws SQLException {
+        double before = medianMillis(recommendation);
+        long start = System.nanoTime();
+        try (Connection conn = DBConnection.connectUnpooled();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(recommendation.getDdl());
+        }
+        System.out.println("Created index " + recommendation.getIndexName() + " in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        double after = medianMillis(recommendation);
+        // Latencies recorded from now on reflect the index
+        WorkloadRecorder.reset(recommendation.where);
+        Report report = new Report(recommendation, before, after, describe(QueryHandler.explain(recommendation.sql,
+                recommendation.filters, recommendation.trailing)));
+        System.out.println("Index advisor: " + report);
+        return report;
+    }
+
+    /**
+     * Picks the index columns for a filter combination: every equality column, then the first
+     * range column, since a B-tree cannot use columns after a range.
+     *
+     * @return The columns, or an empty list if no new index would help.
+     */
+    static List<String> indexColumns(List<WineFilter> filters) {
+        List<String> equalities = new ArrayList<>();
+        String range = null;
+        for (WineFilter filter : WineFilter.canonical(filters)) {
+            if (filter.getField() == WineFilter.Field.ID) {
+                return List.of(); // the primary key already serves it
+            }
+            String column = filter.getField().getColumnName();
+            boolean equality = filter.getOperator() == WineFilter.Operator.EQUALS
+                    || filter.getOperator() == WineFilter.Operator.IN;
+            if (equality && !equalities.contains(column)) {
+                equalities.add(column);
+            } else if (!equality && range == null) {
+                range = column;
+            }
+        }
+        if (range == null && equalities.size() < 2) {
+            // A lone quality or color value matches a large share of the table; MySQL scans anyway
+            return List.of();
+        }
+        List<String> columns = new ArrayList<>(equalities);
+        if (range != null && !columns.contains(range)) {
+            columns.add(range);
+        }
+        return columns;
+    }
+
+    /**
+     * @return The column lists of the indexes on wine_table, by index name.
+     */
+    private static Map<String, List<String>> indexes() throws SQLException {
+        Map<String, List<String>> indexes = new LinkedHashMap<>();
+        try (Connection conn = DBConnection.connect();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(INDEXES_SQL)) {
+            while (rs.next()) {
+                indexes.computeIfAbsent(rs.getString(1), name -> new ArrayList<>()).add(rs.getString(2).toLowerCase());
+            }
+        }
+        return indexes;
+    }
+
+    private static boolean isPrefixOfAny(List<String> columns, Collection<List<String>> indexes) {
+        List<String> lowerCase = new ArrayList<>();
+        for (String column : columns) {
+            lowerCase.add(column.toLowerCase());
+        }
+        for (List<String> index : indexes) {
+            if (startsWith(index, lowerCase)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(List<String> list, List<String> prefix) {
+        return list.size() >= prefix.size() && list.subList(0, prefix.size()).equals(prefix);
+    }
+
+    /**
+     * @return True if a step of the plan reads the whole table instead of an index range.
+     */
+    private static boolean scansTable(List<Map<String, String>> plan) {
+        for (Map<String, String> step : plan) {
+            if ("ALL".equals(step.get("type")) || step.get("key") == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String describe(List<Map<String, String>> plan) {
+        StringJoiner steps = new StringJoiner("; ");
+        for (Map<String, String> step : plan) {
+            steps.add(step.get("type") + " on " + (step.get("key") == null ? "no index" : step.get("key"))
+                    + ", ~" + step.get("rows") + " rows");
+        }
+        return steps.toString();
+    }
+
+    /**
+     * @return The median of several uncached runs, after one run to warm the buffer pool.
+     */
+    private static double medianMillis(Recommendation recommendation) throws SQLException {
+        QueryHandler.timeUncached(recommendation.sql, recommendation.filters, recommendation.trailing);
+        double[] runs = new double[TIMING_RUNS];
+        for (int i = 0; i < runs.length; i++) {
+            runs[i] = QueryHandler.timeUncached(recommendation.sql, recommendation.filters, recommendation.trailing) / 1e6;
+        }
+        Arrays.sort(runs);
+        return runs[runs.length / 2];
+    }
+}
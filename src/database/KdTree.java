@@ -0,0 +1,277 @@
+package database;
+
+import java.util.function.IntPredicate;
+
+/**
+ * A static k-d tree over points of a fixed dimension, answering k-nearest-neighbour queries in
+ * roughly logarithmic time instead of comparing the query with every point.
+ * <p>
+ * The tree is implicit: {@code order} is a permutation of the point indexes in which every
+ * subrange {@code [lo, hi)} is split at its middle element, with smaller coordinates (on that
+ * node's split dimension) to the left. Small subranges are leaves that are scanned linearly.
+ * Each node splits on the dimension with the widest spread, which adapts to skewed data better
+ * than cycling through the dimensions.
+ */
+final class KdTree {
+
+    private static final int LEAF_SIZE = 8;
+
+    private final double[] points; // row-major, dims values per point
+    private final int dims;
+    private final int[] order;
+    private final byte[] splitDims; // split dimension of the node whose middle element is at each position
+
+    /**
+     * @param points The coordinates, {@code dims} consecutive values per point.
+     * @param dims   The number of dimensions (at most 127).
+     * @param count  The number of points.
+     */
+    KdTree(double[] points, int dims, int count) {
+        this.points = points;
+        this.dims = dims;
+        this.order = new int[count];
+        this.splitDims = new byte[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        build(0, count);
+    }
+
+    private void build(int lo, int hi) {
+        if (hi - lo <= LEAF_SIZE) {
+            return;
+        }
+        int dim = widestDimension(lo, hi);
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, dim);
+        splitDims[mid] = (byte) dim;
+        build(lo, mid);
+        build(mid + 1, hi);
+    }
+
+    private int widestDimension(int lo, int hi) {
+        int widest = 0;
+        double widestSpread = -1;
+        for (int d = 0; d < dims; d++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = lo; i < hi; i++) {
+                double value = coordinate(order[i], d);
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            if (max - min > widestSpread) {
+                widestSpread = max - min;
+                widest = d;
+            }
+        }
+        return widest;
+    }
+
+    /**
+     * Quickselect: rearranges {@code order[left..right]} so that position k holds the element
+     * that would be there if the range were sorted by dimension dim.
+     */
+    private void select(int left, int right, int k, int dim) {
+        while (right > left) {
+            // Median of three as pivot, to stay linear on already sorted input
+            int middle = (left + right) >>> 1;
+            if (coordinate(order[middle], dim) < coordinate(order[left], dim)) {
+                swap(middle, left);
+            }
+            if (coordinate(order[right], dim) < coordinate(order[left], dim)) {
+                swap(right, left);
+            }
+            if (coordinate(order[right], dim) < coordinate(order[middle], dim)) {
+                swap(right, middle);
+            }
+            double pivot = coordinate(order[middle], dim);
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (coordinate(order[i], dim) < pivot) {
+                    i++;
+                }
+                while (coordinate(order[j], dim) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int a, int b) {
+        int t = order[a];
+        order[a] = order[b];
+        order[b] = t;
+    }
+
+    private double coordinate(int point, int dim) {
+        return points[point * dims + dim];
+    }
+
+    // -------------------------------------------------------
+    //                  Nearest-neighbour search
+    // -------------------------------------------------------
+
+    /**
+     * Finds the k points closest to a query point (Euclidean distance).
+     *
+     * @param query  The query coordinates.
+     * @param k      The number of neighbours wanted.
+     * @param accept Only points for which this returns true are considered.
+     * @return The neighbours, nearest first.
+     */
+    Neighbours nearest(double[] query, int k, IntPredicate accept) {
+        Neighbours heap = new Neighbours(k);
+        if (k > 0) {
+            search(0, order.length, query, accept, heap);
+        }
+        heap.sort();
+        return heap;
+    }
+
+    private void search(int lo, int hi, double[] query, IntPredicate accept, Neighbours heap) {
+        if (hi - lo <= LEAF_SIZE) {
+            for (int i = lo; i < hi; i++) {
+                consider(order[i], query, accept, heap);
+            }
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        int dim = splitDims[mid];
+        consider(order[mid], query, accept, heap);
+
+        double diff = query[dim] - coordinate(order[mid], dim);
+        if (diff < 0) {
+            search(lo, mid, query, accept, heap);
+            if (!heap.isFull() || diff * diff < heap.worstDistance()) {
+                search(mid + 1, hi, query, accept, heap);
+            }
+        } else {
+            search(mid + 1, hi, query, accept, heap);
+            if (!heap.isFull() || diff * diff < heap.worstDistance()) {
+                search(lo, mid, query, accept, heap);
+            }
+        }
+    }
+
+    private void consider(int point, double[] query, IntPredicate accept, Neighbours heap) {
+        if (!accept.test(point)) {
+            return;
+        }
+        double distance = 0;
+        int base = point * dims;
+        for (int d = 0; d < dims; d++) {
+            double delta = query[d] - points[base + d];
+            distance += delta * delta;
+        }
+        heap.offer(point, distance);
+    }
+
+    /**
+     * The k best candidates seen so far, kept as a max-heap on squared distance until
+     * {@link #sort()} orders them nearest first.
+     */
+    static final class Neighbours {
+        private final int[] points;
+        private final double[] distances; // squared while searching
+        private int size;
+
+        private Neighbours(int capacity) {
+            points = new int[capacity];
+            distances = new double[capacity];
+        }
+
+        private boolean isFull() {
+            return size == points.length;
+        }
+
+        private double worstDistance() {
+            return distances[0];
+        }
+
+        private void offer(int point, double distance) {
+            if (!isFull()) {
+                points[size] = point;
+                distances[size] = distance;
+                siftUp(size++);
+            } else if (distance < distances[0]) {
+                points[0] = point;
+                distances[0] = distance;
+                siftDown(0, size);
+            }
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (distances[parent] >= distances[i]) {
+                    return;
+                }
+                swap(parent, i);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i, int end) {
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= end) {
+                    return;
+                }
+                if (child + 1 < end && distances[child + 1] > distances[child]) {
+                    child++;
+                }
+                if (distances[i] >= distances[child]) {
+                    return;
+                }
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int p = points[a];
+            points[a] = points[b];
+            points[b] = p;
+            double d = distances[a];
+            distances[a] = distances[b];
+            distances[b] = d;
+        }
+
+        /**
+         * Heap-sorts the candidates ascending and turns squared distances into distances.
+         */
+        private void sort() {
+            for (int end = size - 1; end > 0; end--) {
+                swap(0, end);
+                siftDown(0, end);
+            }
+            for (int i = 0; i < size; i++) {
+                distances[i] = Math.sqrt(distances[i]);
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        int point(int i) {
+            return points[i];
+        }
+
+        double distance(int i) {
+            return distances[i];
+        }
+    }
+}
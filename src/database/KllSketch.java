@@ -0,0 +1,142 @@
+package database;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A KLL quantile sketch: summarizes a stream of doubles in a few thousand retained items so
+ * that any quantile can be answered with a rank error of about 1.7 / k.
+ * <p>
+ * Items are kept in levels of compactors; an item on level h stands for 2^h original values.
+ * When a level outgrows its capacity it is sorted and every other item (starting at a random
+ * offset, which keeps the errors unbiased) is promoted to the next level, halving its size.
+ * Lower levels get geometrically smaller capacities, so most of the memory holds the
+ * high-weight items that matter for accuracy.
+ */
+final class KllSketch {
+
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+    private static final int MIN_CAPACITY = 2;
+
+    private final int k;
+    private final Random random = new Random();
+    private double[][] levels = new double[1][];
+    private int[] sizes = new int[1];
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * @param k The accuracy parameter; 200 gives about 1% rank error.
+     */
+    KllSketch(int k) {
+        this.k = k;
+        levels[0] = new double[k];
+    }
+
+    void add(double value) {
+        append(0, value);
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        compactIfNeeded();
+    }
+
+    /**
+     * @return The number of values added.
+     */
+    long count() {
+        return count;
+    }
+
+    private void append(int level, double value) {
+        if (level == levels.length) {
+            levels = Arrays.copyOf(levels, level + 1);
+            sizes = Arrays.copyOf(sizes, level + 1);
+            levels[level] = new double[capacity(level)];
+        }
+        if (sizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], Math.max(MIN_CAPACITY, sizes[level] * 2));
+        }
+        levels[level][sizes[level]++] = value;
+    }
+
+    private int capacity(int level) {
+        int depth = levels.length - 1 - level;
+        return Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)));
+    }
+
+    private void compactIfNeeded() {
+        for (int level = 0; level < levels.length; level++) {
+            if (sizes[level] >= capacity(level)) {
+                compact(level);
+                return; // one compaction frees enough room for the next value
+            }
+        }
+    }
+
+    private void compact(int level) {
+        double[] items = levels[level];
+        int size = sizes[level];
+        Arrays.sort(items, 0, size);
+        // An odd item out stays behind so that total weight is preserved exactly
+        int pairs = size / 2;
+        double leftover = items[size - 1];
+        int offset = random.nextBoolean() ? 1 : 0;
+        sizes[level] = 0;
+        for (int i = 0; i < pairs; i++) {
+            append(level + 1, items[2 * i + offset]);
+        }
+        if (size % 2 == 1) {
+            levels[level][sizes[level]++] = leftover;
+        }
+    }
+
+    /**
+     * Summarizes the retained items as a weighted value distribution.
+     *
+     * @param column The column name.
+     * @return The summary; its count is exact, the other measures approximate.
+     */
+    WineStatistics.ColumnSummary summarize(String column) {
+        int retained = 0;
+        for (int size : sizes) {
+            retained += size;
+        }
+        // The exact extremes are added with weight 0: they fix min, max and the histogram range
+        // without moving any rank
+        double[] values = new double[retained + 2];
+        long[] weights = new long[retained + 2];
+        Integer[] order = new Integer[retained + 2];
+        int n = 0;
+        if (count > 0) {
+            values[n] = min;
+            order[n] = n++;
+            values[n] = max;
+            order[n] = n++;
+        }
+        for (int level = 0; level < levels.length; level++) {
+            for (int i = 0; i < sizes[level]; i++) {
+                values[n] = levels[level][i];
+                weights[n] = 1L << level;
+                order[n] = n;
+                n++;
+            }
+        }
+        Arrays.sort(order, 0, n, (a, b) -> Double.compare(values[a], values[b]));
+
+        double[] distinctValues = new double[n];
+        long[] counts = new long[n];
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            int index = order[i];
+            if (distinct > 0 && distinctValues[distinct - 1] == values[index]) {
+                counts[distinct - 1] += weights[index];
+            } else {
+                distinctValues[distinct] = values[index];
+                counts[distinct++] = weights[index];
+            }
+        }
+        return WineStatistics.ColumnSummary.of(column, distinctValues, counts, distinct);
+    }
+}
@@ -0,0 +1,323 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Monthly RANGE partitioning of {@code wine_table} on {@code date}, so that date-bounded
+ * queries such as {@link QueryHandler#getWinesByDateRange} only read the months they cover.
+ * <p>
+ * {@link #partitionByMonth()} converts the table once. MySQL requires every unique key to
+ * contain the partitioning column, so the primary key becomes {@code (id, date)}; id keeps
+ * leading it and stays AUTO_INCREMENT, so lookups and keyset paging by id still use the key.
+ * Rows without a date are rejected from then on, so the column defaults to the insert date.
+ * Above the last month a catch-all partition takes rows dated further ahead.
+ * {@link #rollForward(int)} splits the coming months off it before they start, which moves no
+ * rows while it is empty. While the application runs, {@link #start()} rolls forward once a day.
+ * <p>
+ * Usage: {@code java database.PartitionManager status | partition | roll [months] | explain <start> <end>}
+ * <p>
+ * Disable the background roll-forward with {@code -Dwine.partitions=false}.
+ */
+public final class PartitionManager {
+
+    private static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("wine.partitions"));
+    private static final int MONTHS_AHEAD = Integer.getInteger("wine.partitions.monthsAhead", 3);
+    private static final long CHECK_INTERVAL_HOURS = Long.getLong("wine.partitions.checkHours", 24L);
+
+    private static final String FUTURE_PARTITION = "p_future";
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+
+    private static final String PARTITIONS_SQL = "SELECT PARTITION_NAME, PARTITION_DESCRIPTION, TABLE_ROWS "
+            + "FROM INFORMATION_SCHEMA.PARTITIONS "
+            + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'wine_table' AND PARTITION_NAME IS NOT NULL "
+            + "ORDER BY PARTITION_ORDINAL_POSITION";
+    private static final String DATE_BOUNDS_SQL = "SELECT MIN(`date`), MAX(`date`), SUM(`date` IS NULL) FROM wine_table";
+
+    private static ScheduledExecutorService maintainer;
+
+    private PartitionManager() {
+    }
+
+    /**
+     * One partition of wine_table, holding the dates below its upper bound and at or above the
+     * previous partition's.
+     */
+    public static final class Partition {
+        private final String name;
+        private final LocalDate upperBound;
+        private final long estimatedRows;
+
+        private Partition(String name, LocalDate upperBound, long estimatedRows) {
+            this.name = name;
+            this.upperBound = upperBound;
+            this.estimatedRows = estimatedRows;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The first date not in this partition, or null for the catch-all (MAXVALUE).
+         */
+        public LocalDate getUpperBound() {
+            return upperBound;
+        }
+
+        /**
+         * @return The row count from the table statistics (approximate for InnoDB).
+         */
+        public long getEstimatedRows() {
+            return estimatedRows;
+        }
+
+        @Override
+        public String toString() {
+            return name + " < " + (upperBound == null ? "MAXVALUE" : upperBound) + " (~" + estimatedRows + " rows)";
+        }
+    }
+
+    /**
+     * Keeps the partitions rolled forward in the background while the application runs.
+     * Does nothing if disabled or already started; never partitions an unpartitioned table.
+     */
+    public static synchronized void start() {
+        if (!ENABLED || maintainer != null) {
+            return;
+        }
+        maintainer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "wine-partition-maintainer");
+            t.setDaemon(true);
+            return t;
+        });
+        maintainer.scheduleWithFixedDelay(() -> {
+            try {
+                rollForward(MONTHS_AHEAD);
+            } catch (SQLException e) {
+                System.err.println("Error rolling wine_table partitions forward: " + e.getMessage());
+            }
+        }, 0, CHECK_INTERVAL_HOURS, TimeUnit.HOURS);
+    }
+
+    /**
+     * @return The partitions of wine_table in order, or an empty list if it is not partitioned.
+     * @throws SQLException If the metadata cannot be read.
+     */
+    public static List<Partition> partitions() throws SQLException {
+        List<Partition> partitions = new ArrayList<>();
+        try (Connection conn = DBConnection.connect();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(PARTITIONS_SQL)) {
+            while (rs.next()) {
+                String bound = rs.getString(2);
+                // RANGE COLUMNS bounds are quoted literals, e.g. '2024-02-01'
+                LocalDate upperBound = bound == null || bound.equalsIgnoreCase("MAXVALUE")
+                        ? null
+                        : LocalDate.parse(bound.replace("'", ""));
+                partitions.add(new Partition(rs.getString(1), upperBound, rs.getLong(3)));
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * Partitions wine_table by month, from the month of its oldest row to {@link #MONTHS_AHEAD}
+     * months past the current one, and changes the primary key to {@code (id, date)}. This
+     * rebuilds the table; run it while nothing else writes to it.
+     *
+     * @throws SQLException          If the ALTER fails (e.g. a unique key without date).
+     * @throws IllegalStateException If the table is already partitioned or has rows without a date.
+     */
+    public static void partitionByMonth() throws SQLException {
+        if (!partitions().isEmpty()) {
+            throw new IllegalStateException("wine_table is already partitioned.");
+        }
+        YearMonth first;
+        YearMonth last = YearMonth.now();
+        try (Connection conn = DBConnection.connect();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(DATE_BOUNDS_SQL)) {
+            rs.next();
+            if (rs.getLong(3) > 0) {
+                throw new IllegalStateException(rs.getLong(3) + " rows of wine_table have no date; "
+                        + "set one before partitioning by date.");
+            }
+            Date oldest = rs.getDate(1);
+            Date newest = rs.getDate(2);
+            first = oldest == null ? last : YearMonth.from(oldest.toLocalDate());
+            if (newest != null && YearMonth.from(newest.toLocalDate()).isAfter(last)) {
+                last = YearMonth.from(newest.toLocalDate());
+            }
+        }
+        last = last.plusMonths(MONTHS_AHEAD);
+
+        String sql = "ALTER TABLE wine_table "
+                + "MODIFY `date` DATE NOT NULL DEFAULT (CURRENT_DATE), "
+                + "DROP PRIMARY KEY, ADD PRIMARY KEY (id, `date`) "
+                + "PARTITION BY RANGE COLUMNS(`date`) (" + monthPartitions(first, last) + ")";
+        System.out.println("Partitioning wine_table by month from " + first + " to " + last + "...");
+        long start = System.nanoTime();
+        // The table is rebuilt; keep the long statement off the pooled connections
+        try (Connection conn = DBConnection.connectUnpooled();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+        System.out.println("Partitioned wine_table in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Makes sure every month up to {@code monthsAhead} months from now has its own partition by
+     * splitting them off the catch-all partition. Does nothing if the table is not partitioned.
+     *
+     * @param monthsAhead How many months past the current one to cover.
+     * @return The number of partitions added.
+     * @throws SQLException If the metadata cannot be read or the ALTER fails.
+     */
+    public static int rollForward(int monthsAhead) throws SQLException {
+        List<Partition> partitions = partitions();
+        if (partitions.isEmpty()) {
+            return 0;
+        }
+        YearMonth next = null;
+        boolean hasFuture = false;
+        for (Partition partition : partitions) {
+            if (partition.upperBound == null) {
+                hasFuture = true;
+            } else {
+                // A bound of the 1st of a month means that month is the next one to get a partition
+                next = YearMonth.from(partition.upperBound.minusDays(1)).plusMonths(1);
+            }
+        }
+        YearMonth target = YearMonth.now().plusMonths(monthsAhead);
+        if (next == null || next.isAfter(target)) {
+            return 0;
+        }
+
+        int added = (int) ChronoUnit.MONTHS.between(next, target) + 1;
+        String sql = hasFuture
+                ? "ALTER TABLE wine_table REORGANIZE PARTITION " + FUTURE_PARTITION
+                + " INTO (" + monthPartitions(next, target) + ")"
+                : "ALTER TABLE wine_table ADD PARTITION (" + monthPartitions(next, target, false) + ")";
+        try (Connection conn = DBConnection.connectUnpooled();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+        System.out.println("Added " + added + " monthly partitions to wine_table (" + next + " to " + target + ")");
+        return added;
+    }
+
+    /**
+     * Checks with EXPLAIN that a date-bounded query reads exactly the partitions whose months
+     * overlap the range.
+     *
+     * @param start The first date (inclusive), or null for no lower bound.
+     * @param end   The last date (inclusive), or null for no upper bound (not both null).
+     * @return True if the table is partitioned and the plan reads only the expected partitions.
+     * @throws SQLException If the partition metadata cannot be read.
+     */
+    public static boolean verifyPruning(LocalDate start, LocalDate end) throws SQLException {
+        List<Partition> partitions = partitions();
+        List<String> expected = new ArrayList<>();
+        LocalDate lowerBound = null;
+        for (Partition partition : partitions) {
+            boolean startsBeforeEnd = end == null || lowerBound == null || !end.isBefore(lowerBound);
+            boolean endsAfterStart = start == null || partition.upperBound == null || start.isBefore(partition.upperBound);
+            if (startsBeforeEnd && endsAfterStart) {
+                expected.add(partition.name);
+            }
+            lowerBound = partition.upperBound;
+        }
+
+        List<String> actual = QueryHandler.explainPartitions(List.of(WineFilter.dateRange(start, end)));
+        boolean pruned = actual != null && !partitions.isEmpty()
+                && new HashSet<>(actual).equals(new HashSet<>(expected));
+        System.out.println("Dates " + (start == null ? "*" : start) + " .. " + (end == null ? "*" : end)
+                + ": plan reads " + (actual == null ? "?" : actual.size()) + " of " + partitions.size()
+                + " partitions " + actual + (pruned ? " (pruned as expected)" : ", expected " + expected));
+        return pruned;
+    }
+
+    private static String monthPartitions(YearMonth first, YearMonth last) {
+        return monthPartitions(first, last, true);
+    }
+
+    /**
+     * @return The partition definitions of the months from first to last, optionally followed
+     *         by the catch-all partition.
+     */
+    private static String monthPartitions(YearMonth first, YearMonth last, boolean withFuture) {
+        StringBuilder sql = new StringBuilder();
+        for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+            if (sql.length() > 0) {
+                sql.append(", ");
+            }
+            sql.append("PARTITION ").append(month.format(PARTITION_NAME))
+                    .append(" VALUES LESS THAN ('").append(month.plusMonths(1).atDay(1)).append("')");
+        }
+        if (withFuture) {
+            sql.append(", PARTITION ").append(FUTURE_PARTITION).append(" VALUES LESS THAN (MAXVALUE)");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Command-line entry point.
+     *
+     * @param args {@code status}, {@code partition}, {@code roll [months]} or {@code explain <start> <end>}
+     *             (dates as yyyy-mm-dd, {@code *} for an open bound).
+     */
+    public static void main(String[] args) {
+        if (args.length == 0 || (args[0].equals("explain") && args.length != 3)) {
+            System.err.println("Usage: java database.PartitionManager status | partition | roll [months] | explain <start> <end>");
+            System.exit(2);
+        }
+        int status = 0;
+        try {
+            switch (args[0]) {
+                case "status":
+                    List<Partition> partitions = partitions();
+                    System.out.println(partitions.isEmpty() ? "wine_table is not partitioned." : partitions.size() + " partitions:");
+                    for (Partition partition : partitions) {
+                        System.out.println("  " + partition);
+                    }
+                    break;
+                case "partition":
+                    partitionByMonth();
+                    break;
+                case "roll":
+                    rollForward(args.length > 1 ? Integer.parseInt(args[1]) : MONTHS_AHEAD);
+                    break;
+                case "explain":
+                    status = verifyPruning(parseBound(args[1]), parseBound(args[2])) ? 0 : 1;
+                    break;
+                default:
+                    System.err.println("Unknown command: " + args[0]);
+                    status = 2;
+            }
+        } catch (SQLException | IllegalStateException e) {
+            System.err.println("Error managing wine_table partitions: " + e.getMessage());
+            status = 1;
+        } finally {
+            DBConnection.shutdown();
+        }
+        System.exit(status);
+    }
+
+    private static LocalDate parseBound(String text) {
+        return text.equals("*") ? null : LocalDate.parse(text);
+    }
+}
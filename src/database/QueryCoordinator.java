@@ -0,0 +1,189 @@
+package database;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Makes sure only the latest of a series of queries keeps running.
+ * <p>
+ * Each query is started with {@link #begin()}, which supersedes the previous one: its ticket is
+ * marked cancelled and every statement it is executing is cancelled on the server with
+ * {@link Statement#cancel()}. The driver does that by opening a side connection and sending
+ * {@code KILL QUERY}, a network round trip or worse, so the statements are cancelled on a
+ * background thread and {@link #begin()} returns at once, even on the Event Dispatch Thread. The
+ * query body runs inside {@link #run}, which lets {@link QueryHandler} register its statements
+ * with the ticket through {@link #track}. Callers check {@link #isCurrent} before publishing
+ * a result so that answers arriving out of order are dropped.
+ * <p>
+ * A ticket can have a parent, e.g. the ticket of a {@link QueryExecutor.Scope} opened inside a
+ * query: its statements are registered with the parent as well, so cancelling the parent cancels
+ * them too.
+ */
+public final class QueryCoordinator {
+
+    private static final ThreadLocal<Ticket> CURRENT_TICKET = new ThreadLocal<>();
+    private static final Registration NOT_TRACKED = () -> { };
+    private static final ExecutorService CANCELLER = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "wine-query-canceller");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private Ticket current;
+
+    /**
+     * The handle of one query. Cancelling it cancels all statements it is running.
+     */
+    public static final class Ticket {
+        private final Ticket parent;
+        private final Set<Statement> statements = ConcurrentHashMap.newKeySet();
+        private volatile boolean cancelled;
+
+        public Ticket() {
+            this(null);
+        }
+
+        /**
+         * @param parent The ticket whose cancellation also cancels this one, or null.
+         */
+        Ticket(Ticket parent) {
+            this.parent = parent;
+        }
+
+        /**
+         * Marks the query cancelled and cancels its running statements in the background.
+         * Returns immediately; statements registered from now on are refused by {@link #track}.
+         */
+        public void cancel() {
+            cancelled = true;
+            if (!statements.isEmpty()) {
+                CANCELLER.execute(this::cancelStatements);
+            }
+        }
+
+        private void cancelStatements() {
+            for (Statement statement : statements) {
+                try {
+                    statement.cancel();
+                } catch (SQLException e) {
+                    System.err.println("Error cancelling superseded query: " + e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * @return True if this ticket or one of its parents has been cancelled.
+         */
+        public boolean isCancelled() {
+            return cancelled || (parent != null && parent.isCancelled());
+        }
+    }
+
+    /**
+     * Un-registers a statement from its ticket when closed.
+     */
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Starts a new query, cancelling the one in flight. Does not block; see {@link Ticket#cancel()}.
+     *
+     * @return The ticket of the new query.
+     */
+    public synchronized Ticket begin() {
+        if (current != null) {
+            current.cancel();
+        }
+        current = new Ticket();
+        return current;
+    }
+
+    /**
+     * @param ticket A ticket returned by {@link #begin()}.
+     * @return True if no newer query has been started since.
+     */
+    public synchronized boolean isCurrent(Ticket ticket) {
+        return ticket == current && !ticket.isCancelled();
+    }
+
+    /**
+     * Cancels the query in flight, if any, without starting a new one.
+     */
+    public synchronized void cancelCurrent() {
+        if (current != null) {
+            current.cancel();
+            current = null;
+        }
+    }
+
+    /**
+     * Runs a query body on the calling thread with the ticket attached, so the statements it
+     * executes can be cancelled.
+     *
+     * @param ticket The ticket of the query.
+     * @param query  The query body.
+     * @return The query's result.
+     */
+    public static <T> T run(Ticket ticket, Supplier<T> query) {
+        Ticket previous = CURRENT_TICKET.get();
+        CURRENT_TICKET.set(ticket);
+        try {
+            return query.get();
+        } finally {
+            if (previous == null) {
+                CURRENT_TICKET.remove();
+            } else {
+                CURRENT_TICKET.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Registers a statement with the ticket of the calling thread and its parents, if any.
+     *
+     * @param statement The statement about to be executed.
+     * @return A registration to close once the statement is done.
+     * @throws SQLException If the query was already superseded; the statement should not run.
+     */
+    static Registration track(Statement statement) throws SQLException {
+        Ticket ticket = CURRENT_TICKET.get();
+        if (ticket == null) {
+            return NOT_TRACKED;
+        }
+        for (Ticket t = ticket; t != null; t = t.parent) {
+            t.statements.add(statement);
+        }
+        Registration registration = () -> {
+            for (Ticket t = ticket; t != null; t = t.parent) {
+                t.statements.remove(statement);
+            }
+        };
+        if (ticket.isCancelled()) {
+            registration.close();
+            throw new SQLException("Query superseded before it started.", "70100");
+        }
+        return registration;
+    }
+
+    /**
+     * @return The ticket of the query running on the calling thread, or null.
+     */
+    static Ticket currentTicket() {
+        return CURRENT_TICKET.get();
+    }
+
+    /**
+     * @return True if the calling thread runs a query whose ticket has been cancelled.
+     */
+    static boolean isCancelled() {
+        Ticket ticket = CURRENT_TICKET.get();
+        return ticket != null && ticket.isCancelled();
+    }
+}
@@ -0,0 +1,247 @@
+package database;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs database work off the calling thread.
+ * <p>
+ * On JDK 21+ each query gets its own virtual thread, so a dashboard can fan out dozens of
+ * blocking sub-queries without starving a fixed pool; real concurrency against MySQL is still
+ * bounded by the {@link ConnectionPool}. On older JDKs (or with {@code -Dwine.virtualThreads=false})
+ * a cached pool of daemon platform threads is used instead.
+ * <p>
+ * The UI runs its queries here under the ticket of its {@link QueryCoordinator}, so starting a
+ * new query cancels the statements of the one it supersedes.
+ * <p>
+ * Related queries are grouped in a {@link Scope}: they share a deadline and are cancelled
+ * together. If one fails, the deadline passes, or the scope is closed early, every statement
+ * still running in the scope is cancelled on the server through its
+ * {@link QueryCoordinator.Ticket}.
+ */
+public final class QueryExecutor {
+
+    private static boolean virtualThreads; // set by createExecutor()
+    private static final ExecutorService EXECUTOR = createExecutor();
+
+    private QueryExecutor() {
+    }
+
+    private static ExecutorService createExecutor() {
+        if (!"false".equalsIgnoreCase(System.getProperty("wine.virtualThreads"))) {
+            try {
+                // Looked up reflectively so the code still compiles and runs on JDKs before 21
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                ExecutorService executor = (ExecutorService) factory.invoke(null);
+                virtualThreads = true;
+                return executor;
+            } catch (ReflectiveOperationException e) {
+                System.out.println("Virtual threads unavailable; using platform threads for queries.");
+            }
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "wine-query-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * @return True if queries run on virtual threads.
+     */
+    public static boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Runs a single query in the background with a deadline. When the deadline passes, the
+     * query's statements are cancelled and the future completes with a {@link TimeoutException}.
+     *
+     * @param query    The query to run.
+     * @param deadline The maximum time to wait for it.
+     * @return A future for the result.
+     */
+    public static <T> CompletableFuture<T> submit(Supplier<T> query, Duration deadline) {
+        QueryCoordinator.Ticket ticket = new QueryCoordinator.Ticket();
+        CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> QueryCoordinator.run(ticket, query), EXECUTOR)
+                .orTimeout(deadline.toNanos(), TimeUnit.NANOSECONDS);
+        future.whenComplete((result, error) -> {
+            if (error != null) {
+                ticket.cancel();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Runs a query in the background under an existing ticket, e.g. one from
+     * {@link QueryCoordinator#begin()}, so cancelling the ticket cancels the query's statements.
+     *
+     * @param ticket The ticket to run the query under.
+     * @param query  The query to run.
+     * @return A future for the result.
+     */
+    public static <T> CompletableFuture<T> submit(QueryCoordinator.Ticket ticket, Supplier<T> query) {
+        return CompletableFuture.supplyAsync(() -> QueryCoordinator.run(ticket, query), EXECUTOR);
+    }
+
+    /**
+     * Opens a scope for a group of queries that share a deadline. When called while a query
+     * runs under a {@link QueryCoordinator.Ticket}, the scope's queries are registered with that
+     * ticket too, so superseding the query cancels them.
+     *
+     * @param deadline The maximum time {@link Scope#join()} waits for all queries.
+     * @return The scope; close it when done.
+     */
+    public static Scope openScope(Duration deadline) {
+        return new Scope(deadline, QueryCoordinator.currentTicket());
+    }
+
+    // -------------------------------------------------------
+    //                  Structured fan-out
+    // -------------------------------------------------------
+
+    /**
+     * A group of queries forked together and joined together. Closing the scope cancels any
+     * query that is still running and waits for it to finish, so no work outlives the block
+     * that started it:
+     * <pre>
+     * try (QueryExecutor.Scope scope = QueryExecutor.openScope(Duration.ofSeconds(5))) {
+     *     QueryExecutor.Subtask&lt;Integer&gt; reds = scope.fork(() -&gt; QueryHandler.countMatching(red, null));
+     *     QueryExecutor.Subtask&lt;Integer&gt; whites = scope.fork(() -&gt; QueryHandler.countMatching(white, null));
+     *     scope.join();
+     *     ... reds.get() + whites.get() ...
+     * }
+     * </pre>
+     */
+    public static final class Scope implements AutoCloseable {
+        private final QueryCoordinator.Ticket ticket;
+        private final long deadlineNanos;
+        private final List<CompletableFuture<?>> futures = new ArrayList<>();
+        private boolean closed;
+
+        private Scope(Duration deadline, QueryCoordinator.Ticket parent) {
+            this.ticket = new QueryCoordinator.Ticket(parent);
+            this.deadlineNanos = System.nanoTime() + deadline.toNanos();
+        }
+
+        /**
+         * Starts a query in the scope.
+         *
+         * @param query The query to run.
+         * @return A handle whose value is available after {@link #join()}.
+         */
+        public synchronized <T> Subtask<T> fork(Supplier<T> query) {
+            if (closed) {
+                throw new IllegalStateException("Scope is closed.");
+            }
+            CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> QueryCoordinator.run(ticket, query), EXECUTOR);
+            // One failure makes the other results useless; stop them early
+            future.whenComplete((result, error) -> {
+                if (error != null) {
+                    ticket.cancel();
+                }
+            });
+            futures.add(future);
+            return new Subtask<>(future);
+        }
+
+        /**
+         * Waits for every forked query.
+         *
+         * @throws TimeoutException     If the deadline passes first; all queries are cancelled.
+         * @throws ExecutionException   If a query failed; the others are cancelled.
+         * @throws InterruptedException If the calling thread is interrupted; all queries are cancelled.
+         */
+        public void join() throws InterruptedException, ExecutionException, TimeoutException {
+            CompletableFuture<Void> all;
+            synchronized (this) {
+                all = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+            }
+            try {
+                all.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                ticket.cancel();
+                throw e;
+            }
+        }
+
+        /**
+         * Cancels every query of the scope that is still running.
+         */
+        public void cancel() {
+            ticket.cancel();
+        }
+
+        /**
+         * Closes the scope: cancels any query that has not finished and waits until every
+         * forked query has returned. A cancelled statement returns as soon as the server has
+         * killed it. If the calling thread is interrupted it keeps waiting and the interrupt
+         * is restored afterwards.
+         */
+        @Override
+        public void close() {
+            List<CompletableFuture<?>> forked;
+            synchronized (this) {
+                closed = true;
+                forked = new ArrayList<>(futures);
+            }
+            for (CompletableFuture<?> future : forked) {
+                if (!future.isDone()) {
+                    ticket.cancel();
+                    break;
+                }
+            }
+            boolean interrupted = false;
+            for (CompletableFuture<?> future : forked) {
+                while (true) {
+                    try {
+                        future.get();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    } catch (ExecutionException | CancellationException e) {
+                        break; // reported by join(); only completion matters here
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * The handle of a query forked in a {@link Scope}.
+     */
+    public static final class Subtask<T> {
+        private final CompletableFuture<T> future;
+
+        private Subtask(CompletableFuture<T> future) {
+            this.future = future;
+        }
+
+        /**
+         * @return The query's result.
+         * @throws IllegalStateException If the query has not completed successfully.
+         */
+        public T get() {
+            if (!future.isDone() || future.isCompletedExceptionally()) {
+                throw new IllegalStateException("Subtask has not completed successfully.");
+            }
+            return future.join();
+        }
+    }
+}
@@ -1,103 +1,986 @@
 package database;
 
 import java.sql.*;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 /**
  * Handles database queries for the Wine Database System.
  */
 public class QueryHandler {
 
-    public static class QueryResult {
-        private final String[] columnNames;
-        private final String[][] data;
+    // Streaming mode reports the first rows quickly, then at growing intervals so that
+    // snapshotting the rows received so far stays linear in the result size
+    private static final int FIRST_CHUNK_ROWS = 200;
+    private static final int MAX_CHUNK_ROWS = 500_000;
 
-        public QueryResult(String[] columnNames, String[][] data) {
-            this.columnNames = columnNames;
-            this.data = data;
+    private static final Duration STATISTICS_DEADLINE =
+            Duration.ofSeconds(Long.getLong("wine.statistics.deadlineSeconds", 60L));
+    // Per column and group, so a statistics query transfers at most this many rows per group
+    private static final int STATISTICS_BUCKETS = Integer.getInteger("wine.statistics.buckets", 1024);
+
+    // Parallel scans: one range per connection, but never ranges too small to pay for a round trip
+    private static final int SCAN_PARALLELISM = Integer.getInteger("wine.scan.parallelism",
+            Math.min(Runtime.getRuntime().availableProcessors(), 4));
+    private static final long MIN_IDS_PER_RANGE = Long.getLong("wine.scan.minIdsPerRange", 50_000L);
+    private static final Duration SCAN_DEADLINE =
+            Duration.ofSeconds(Long.getLong("wine.scan.deadlineSeconds", 600L));
+    private static final String ID_BOUNDS_SQL = "SELECT MIN(id), MAX(id) FROM wine_table";
+
+    // Failed queries per thread; most entry points return an empty result or 0 on failure
+    private static final ThreadLocal<int[]> FAILURES = ThreadLocal.withInitial(() -> new int[1]);
+
+    /**
+     * Executes a parameterized SQL query and returns the results.
+     *
+     * @param sql      The SQL query to execute, with {@code ?} placeholders.
+     * @param filters  The filters whose values are bound to the first placeholders, in canonical order.
+     * @param trailing Values bound to the placeholders after the filters (keyset bounds, LIMIT).
+     * @return QueryResult with one typed column per result column, or an empty result on error.
+     */
+    private static QueryResult executeQuery(String sql, List<WineFilter> filters, Object... trailing) {
+        return runQuery(sql, filters, null, trailing);
+    }
+
+    /**
+     * Executes a parameterized SQL query, optionally streaming rows from the server and
+     * reporting them while they arrive.
+     *
+     * @param onRows   Called with all rows received so far, or null to read the whole result at once.
+     * @see #executeQuery(String, List, Object...)
+     */
+    private static QueryResult runQuery(String sql, List<WineFilter> filters, Consumer<QueryResult> onRows,
+                                        Object... trailing) {
+        String cacheKey = ResultCache.key(sql, filters, trailing);
+        QueryResult cached = ResultCache.get(cacheKey, QueryResult.class);
+        if (cached != null) {
+            System.out.println("Served from result cache: " + cached.getRowCount() + " rows");
+            if (onRows != null) {
+                onRows.accept(cached);
+            }
+            return cached;
         }
 
-        public String[] getColumnNames() {
-            return columnNames;
+        // Identical queries already running are joined instead of being sent again
+        boolean[] executedHere = new boolean[1];
+        QueryResult result = SingleFlight.execute(cacheKey, QueryResult.class, () -> {
+            QueryResult justCached = ResultCache.get(cacheKey, QueryResult.class);
+            if (justCached != null) {
+                return justCached; // an identical query finished between the two lookups
+            }
+            executedHere[0] = true;
+            return fetch(sql, filters, onRows, cacheKey, trailing);
+        });
+        if (result == null) {
+            markFailed();
+            return QueryResult.empty();
+        }
+        if (!executedHere[0]) {
+            System.out.println("Shared result of an identical query: " + result.getRowCount() + " rows");
+            if (onRows != null) {
+                onRows.accept(result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs a query on the server and caches its result.
+     *
+     * @return The result, or null if the query failed.
+     */
+    private static QueryResult fetch(String sql, List<WineFilter> filters, Consumer<QueryResult> onRows,
+                                     String cacheKey, Object... trailing) {
+        // Read before the query runs, so a result that overlapped a write is not cached
+        long generation = ResultCache.generation();
+        try (Connection conn = DBConnection.connect();
+             PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            bind(stmt, filters, trailing);
+            if (onRows != null) {
+                // Hand over rows as they arrive instead of buffering the whole result in the driver
+                stmt.setFetchSize(Integer.MIN_VALUE);
+            }
+
+            // Read each cell straight into the typed column arrays
+            QueryCoordinator.Registration registration = QueryCoordinator.track(stmt);
+            long start = System.nanoTime();
+            long[] callbackNanos = new long[1];
+            try (ResultSet rs = stmt.executeQuery()) {
+                QueryResult result = onRows != null
+                        ? readProgressively(rs, onRows, callbackNanos)
+                        : QueryResult.fromResultSet(rs);
+                WorkloadRecorder.record(sql, filters, trailing, System.nanoTime() - start - callbackNanos[0]);
+                // A plain filtered SELECT holds every matching row, so inserted rows can be merged in later
+                boolean appendable = trailing.length == 0 && sql.equals(WineFilter.buildSelect(filters, null));
+                ResultCache.put(cacheKey, result, result.estimatedBytes(), appendable ? filters : null, generation);
+                return result;
+            } finally {
+                registration.close();
+            }
+
+        } catch (SQLException e) {
+            reportError(e);
         }
 
-        public String[][] getData() {
-            return data;
+        return null;
+    }
+
+    /**
+     * Reads a streaming result set, passing snapshots of the rows read so far to the listener:
+     * first after {@link #FIRST_CHUNK_ROWS} rows, then each time the count doubles (by at most
+     * {@link #MAX_CHUNK_ROWS}), and once more with the complete result.
+     *
+     * @param callbackNanos Receives the time spent in the listener, which is not server time.
+     */
+    private static QueryResult readProgressively(ResultSet rs, Consumer<QueryResult> onRows, long[] callbackNanos)
+            throws SQLException {
+        QueryResult.Builder builder = new QueryResult.Builder(rs.getMetaData());
+        int nextReport = FIRST_CHUNK_ROWS;
+        while (rs.next()) {
+            builder.appendRow(rs);
+            if (builder.getRowCount() == nextReport) {
+                long start = System.nanoTime();
+                onRows.accept(builder.build());
+                callbackNanos[0] += System.nanoTime() - start;
+                nextReport += Math.min(nextReport, MAX_CHUNK_ROWS);
+            }
         }
+        QueryResult result = builder.build();
+        long start = System.nanoTime();
+        onRows.accept(result);
+        callbackNanos[0] += System.nanoTime() - start;
+        return result;
     }
 
     /**
-     * Executes a SQL query and returns the results.
+     * Executes a parameterized query that returns a single integer (e.g. a COUNT or an id).
      *
-     * @param sql The SQL query to execute.
+     * @return The value of the first column of the first row, or null if there is no row, it is NULL,
+     *         or the query fails.
+     */
+    private static Integer executeScalar(String sql, List<WineFilter> filters, Object... trailing) {
+        String cacheKey = ResultCache.key(sql, filters, trailing);
+        Integer cached = ResultCache.get(cacheKey, Integer.class);
+        if (cached != null) {
+            return cached;
+        }
+        return SingleFlight.execute(cacheKey, Integer.class, () -> fetchScalar(sql, filters, cacheKey, trailing));
+    }
+
+    /**
+     * Runs a single-value query on the server and caches its result.
+     *
+     * @return The value, or null if there is no row, it is NULL, or the query fails.
+     */
+    private static Integer fetchScalar(String sql, List<WineFilter> filters, String cacheKey, Object... trailing) {
+        long generation = ResultCache.generation();
+        try (Connection conn = DBConnection.connect();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            bind(stmt, filters, trailing);
+
+            QueryCoordinator.Registration registration = QueryCoordinator.track(stmt);
+            long start = System.nanoTime();
+            try (ResultSet rs = stmt.executeQuery()) {
+                WorkloadRecorder.record(sql, filters, trailing, System.nanoTime() - start);
+                if (rs.next()) {
+                    int value = rs.getInt(1);
+                    if (rs.wasNull()) {
+                        return null;
+                    }
+                    ResultCache.put(cacheKey, value, 16, generation);
+                    return value;
+                }
+            } finally {
+                registration.close();
+            }
+
+        } catch (SQLException e) {
+            reportError(e);
+        }
+
+        return null;
+    }
+
+    /**
+     * Counts the queries that failed on the calling thread, including identical queries it
+     * joined that failed elsewhere. Entry points that return an empty result or 0 on failure
+     * cannot be told apart from ones that matched nothing; a caller that must know (e.g. a load
+     * test) compares this count before and after the call.
+     *
+     * @return The number of failed queries on the calling thread so far.
+     */
+    public static int failedQueries() {
+        return FAILURES.get()[0];
+    }
+
+    private static void markFailed() {
+        FAILURES.get()[0]++;
+    }
+
+    /**
+     * Logs a failed query; cancellations of superseded queries are expected and logged quietly.
+     */
+    private static void reportError(SQLException e) {
+        if (QueryCoordinator.isCancelled()) {
+            System.out.println("Cancelled superseded query.");
+        } else {
+            System.err.println("Error executing query: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Drops all cached results and the in-memory copy of wine_table. Call after writing to the
+     * table so the next query sees the change.
+     */
+    public static void invalidateCaches() {
+        ResultCache.invalidateAll();
+        WineStore.invalidate();
+    }
+
+    /**
+     * Binds the filter values followed by the trailing values.
+     */
+    private static void bind(PreparedStatement stmt, List<WineFilter> filters, Object... trailing) throws SQLException {
+        int index = WineFilter.bindAll(stmt, filters);
+        for (Object value : trailing) {
+            stmt.setObject(index++, value);
+        }
+    }
+
+    /**
+     * Executes a query on wine_table with the given filters and LIMIT.
+     * If the in-memory {@link WineStore} is loaded the filters are evaluated there; otherwise the
+     * SQL text depends only on the shape of the filters, and the values are bound as
+     * parameters, so repeated filter combinations reuse the same prepared statement.
+     *
+     * @param filters The filters to AND together in the WHERE clause (may be null or empty).
+     * @param limit   The LIMIT value, or null if not applicable.
+     * @return QueryResult containing column names and data rows.
+     */
+    public static QueryResult executeCustomQuery(List<WineFilter> filters, Integer limit) {
+        // Serve from the in-memory copy when it is loaded; MySQL remains the fallback
+        QueryResult local = WineStore.query(filters, limit);
+        if (local != null) {
+            return local;
+        }
+
+        String sql = WineFilter.buildSelect(filters, limit);
+        System.out.println("Executing custom query: " + sql + " " + describeParameters(filters, limit));
+        return limit != null ? executeQuery(sql, filters, limit) : executeQuery(sql, filters);
+    }
+
+    /**
+     * Executes the same query as {@link #executeCustomQuery}, but streams rows from MySQL and
+     * reports them while they arrive, so the first rows can be shown long before the last one
+     * is read. Results served from memory or the cache are reported once, complete.
+     *
+     * @param filters The filters to AND together in the WHERE clause (may be null or empty).
+     * @param limit   The LIMIT value, or null if not applicable.
+     * @param onRows  Called on the query thread with all rows received so far; the last call
+     *                carries the complete result.
      * @return QueryResult containing column names and data rows.
      */
-    private static QueryResult executeQuery(String sql) {
-        List<String[]> data = new ArrayList<>();
-        List<String> columnNames = new ArrayList<>();
+    public static QueryResult streamCustomQuery(List<WineFilter> filters, Integer limit,
+                                                Consumer<QueryResult> onRows) {
+        QueryResult local = WineStore.query(filters, limit);
+        if (local != null) {
+            onRows.accept(local);
+            return local;
+        }
+
+        String sql = WineFilter.buildSelect(filters, limit);
+        System.out.println("Streaming custom query: " + sql + " " + describeParameters(filters, limit));
+        return limit != null ? runQuery(sql, filters, onRows, limit) : runQuery(sql, filters, onRows);
+    }
+
+    // -------------------------------------------------------
+    //                  Parallel scan
+    // -------------------------------------------------------
 
+    /**
+     * Reads all wines matching the filters by splitting the id space into ranges, between
+     * {@code MIN(id)} and {@code MAX(id)}, and scanning them concurrently on pooled connections.
+     * Each range is a primary-key range read streamed on its own connection, so a large result
+     * is read and decoded on several cores instead of one. Tables too small to be worth splitting
+     * are read with a single query.
+     * <p>
+     * Like {@link #executeCustomQuery}, the in-memory store and the result cache are used first.
+     * The merged result is cached under the key of the SQL it answers: {@code ... ORDER BY id}
+     * when ordered, the range query itself otherwise, never the plain SELECT whose cached results
+     * come back in whatever order MySQL chose.
+     * <p>
+     * The ranges run under the ticket of the calling thread, if any (see {@link QueryCoordinator#run}),
+     * so superseding the caller's query cancels every range.
+     *
+     * @param filters     The filters to AND together (may be null or empty).
+     * @param parallelism The maximum number of ranges scanned at once.
+     * @param ordered     True to return the rows in id order; otherwise each range is read in
+     *                    whatever order MySQL finds cheapest.
+     * @return QueryResult containing every matching wine, or an empty result on error.
+     */
+    public static QueryResult parallelScan(List<WineFilter> filters, int parallelism, boolean ordered) {
+        QueryResult local = WineStore.query(filters, null);
+        if (local != null) {
+            return local;
+        }
+        String orderedSql = WineFilter.buildSelect(filters, null) + " ORDER BY id";
+        StringBuilder sql = new StringBuilder("SELECT * FROM wine_table");
+        WineFilter.appendWhere(sql, filters, "id BETWEEN ? AND ?");
+        if (ordered) {
+            sql.append(" ORDER BY id");
+        }
+        String rangeSql = sql.toString();
+        String cacheKey = ResultCache.key(ordered ? orderedSql : rangeSql, filters);
+        QueryResult cached = ResultCache.get(cacheKey, QueryResult.class);
+        if (cached != null) {
+            System.out.println("Served from result cache: " + cached.getRowCount() + " rows");
+            return cached;
+        }
+
+        long generation = ResultCache.generation();
+        long[] bounds = idBounds();
+        long span = bounds == null ? 0 : bounds[1] - bounds[0] + 1;
+        int ranges = (int) Math.max(1, Math.min(parallelism, span / MIN_IDS_PER_RANGE));
+        if (ranges == 1) {
+            // Empty table, failed lookup or too small to split
+            return ordered ? executeQuery(orderedSql, filters) : executeCustomQuery(filters, null);
+        }
+        System.out.println("Parallel scan in " + ranges + " id ranges: " + rangeSql + " "
+                + describeParameters(filters, null));
+
+        long start = System.nanoTime();
+        long step = (span + ranges - 1) / ranges;
+        List<QueryExecutor.Subtask<QueryResult>> parts = new ArrayList<>();
+        try (QueryExecutor.Scope scope = QueryExecutor.openScope(SCAN_DEADLINE)) {
+            for (int i = 0; i < ranges; i++) {
+                long from = bounds[0] + i * step;
+                long to = Math.min(bounds[1], from + step - 1);
+                parts.add(scope.fork(() -> scanRange(rangeSql, filters, from, to)));
+            }
+            scope.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return QueryResult.empty();
+        } catch (ExecutionException | TimeoutException e) {
+            System.err.println("Error in parallel scan: " + e);
+            return QueryResult.empty();
+        }
+
+        // The ranges are disjoint and ascending, so joining sorted ranges in order keeps id order
+        List<QueryResult> results = new ArrayList<>();
+        for (QueryExecutor.Subtask<QueryResult> part : parts) {
+            results.add(part.get());
+        }
+        QueryResult result = QueryResult.concat(results);
+        System.out.println("Parallel scan read " + result.getRowCount() + " rows in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        ResultCache.put(cacheKey, result, result.estimatedBytes(), filters, generation);
+        return result;
+    }
+
+    /**
+     * @return The lowest and highest id in wine_table, or null if it is empty or the query fails.
+     */
+    private static long[] idBounds() {
         try (Connection conn = DBConnection.connect();
              Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+             ResultSet rs = stmt.executeQuery(ID_BOUNDS_SQL)) {
+            rs.next();
+            long min = rs.getLong(1);
+            return rs.wasNull() ? null : new long[]{min, rs.getLong(2)};
+        } catch (SQLException e) {
+            reportError(e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads one id range of a parallel scan, streaming rows from the server.
+     *
+     * @throws IllegalStateException If the query fails, which cancels the other ranges.
+     */
+    private static QueryResult scanRange(String sql, List<WineFilter> filters, long from, long to) {
+        try (Connection conn = DBConnection.connect();
+             PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            bind(stmt, filters, from, to);
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            QueryCoordinator.Registration registration = QueryCoordinator.track(stmt);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return QueryResult.fromResultSet(rs);
+            } finally {
+                registration.close();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Range " + from + ".." + to + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    // -------------------------------------------------------
+    //                  Live updates
+    // -------------------------------------------------------
+
+    /**
+     * Picks the rows of a {@link ChangePoller} delta that belong in a displayed result: those
+     * matching its filters with an id above the highest one it already holds.
+     *
+     * @param rows    The inserted rows.
+     * @param filters The filters of the displayed result (may be null or empty).
+     * @param afterId The highest id the displayed result already covers.
+     * @return The rows to append, in id order, or null if the filters cannot be evaluated in
+     *         memory and the result must be re-queried instead.
+     */
+    public static QueryResult selectInsertedRows(QueryResult rows, List<WineFilter> filters, long afterId) {
+        QueryResult unseen = rows.select(FilterEngine.idsAbove(rows, afterId));
+        int[] matching = FilterEngine.evaluate(unseen, filters, null);
+        return matching == null ? null : unseen.select(matching);
+    }
+
+    /**
+     * Picks the late rows of a {@link ChangePoller} delta (see {@link ChangePoller.Listener})
+     * that match a displayed result's filters. They belong among rows already shown, so the
+     * result must be re-queried if there are any.
+     *
+     * @param rows    The inserted rows, late ones first.
+     * @param filters The filters of the displayed result (may be null or empty).
+     * @param afterId The high-watermark the delta follows.
+     * @return The matching late rows, or null if the filters cannot be evaluated in memory.
+     */
+    public static QueryResult selectLateRows(QueryResult rows, List<WineFilter> filters, long afterId) {
+        int late = rows.getRowCount() - FilterEngine.idsAbove(rows, afterId).length;
+        QueryResult lateRows = rows.select(IntStream.range(0, late).toArray());
+        int[] matching = FilterEngine.evaluate(lateRows, filters, null);
+        return matching == null ? null : lateRows.select(matching);
+    }
+
+    // -------------------------------------------------------
+    //                  Query plans
+    // -------------------------------------------------------
+
+    /**
+     * Asks MySQL which partitions of wine_table the custom query with these filters would read,
+     * by running EXPLAIN on the same statement with the same bound values.
+     *
+     * @param filters The filters to AND together (may be null or empty).
+     * @return The partition names from the plan, empty if the table is not partitioned, or null
+     *         if the EXPLAIN fails.
+     * @see PartitionManager#verifyPruning(LocalDate, LocalDate)
+     */
+    public static List<String> explainPartitions(List<WineFilter> filters) {
+        try {
+            List<String> partitions = new ArrayList<>();
+            for (Map<String, String> step : explain(filters)) {
+                String names = step.get("partitions");
+                if (names != null) {
+                    partitions.addAll(Arrays.asList(names.split(",")));
+                }
+            }
+            return partitions;
+        } catch (SQLException e) {
+            reportError(e);
+            return null;
+        }
+    }
+
+    /**
+     * Runs EXPLAIN on the custom query with these filters and their bound values.
+     *
+     * @param filters The filters to AND together (may be null or empty).
+     * @return One map per plan row, from lower-case column name (e.g. "type", "key", "rows")
+     *         to value (null for SQL NULL).
+     * @throws SQLException If the EXPLAIN fails.
+     */
+    static List<Map<String, String>> explain(List<WineFilter> filters) throws SQLException {
+        return explain(WineFilter.buildSelect(filters, null), filters);
+    }
 
-            // Retrieve column names
-            ResultSetMetaData metaData = rs.getMetaData();
-            int columnCount = metaData.getColumnCount();
+    /**
+     * Runs EXPLAIN on a statement with its bound values.
+     *
+     * @param sql      The parameterized statement, filter placeholders first.
+     * @param filters  The filters bound to it (may be null or empty).
+     * @param trailing The values bound after the filters.
+     * @see #explain(List)
+     */
+    static List<Map<String, String>> explain(String sql, List<WineFilter> filters, Object... trailing)
+            throws SQLException {
+        try (Connection conn = DBConnection.connect();
+             PreparedStatement stmt = conn.prepareStatement("EXPLAIN " + sql)) {
+            bind(stmt, filters, trailing);
+            try (ResultSet rs = stmt.executeQuery()) {
+                ResultSetMetaData metaData = rs.getMetaData();
+                List<Map<String, String>> plan = new ArrayList<>();
+                while (rs.next()) {
+                    Map<String, String> step = new LinkedHashMap<>();
+                    for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                        step.put(metaData.getColumnLabel(i).toLowerCase(), rs.getString(i));
+                    }
+                    plan.add(step);
+                }
+                return plan;
+            }
+        }
+    }
 
-            for (int i = 1; i <= columnCount; i++) {
-                columnNames.add(metaData.getColumnName(i));
+    /**
+     * Runs a statement on the server, bypassing every cache, and reads all rows without
+     * keeping them.
+     *
+     * @param sql      The parameterized statement, filter placeholders first.
+     * @param filters  The filters bound to it (may be null or empty).
+     * @param trailing The values bound after the filters.
+     * @return The elapsed time in nanoseconds.
+     * @throws SQLException If the query fails.
+     */
+    static long timeUncached(String sql, List<WineFilter> filters, Object... trailing) throws SQLException {
+        try (Connection conn = DBConnection.connect();
+             PreparedStatement stmt = conn.prepareStatement(sql,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            bind(stmt, filters, trailing);
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            long start = System.nanoTime();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    // Only the server's work is measured; the rows are not needed
+                }
             }
+            return System.nanoTime() - start;
+        }
+    }
 
-            // Retrieve data rows
-            while (rs.next()) {
-                String[] row = new String[columnCount];
-                for (int i = 1; i <= columnCount; i++) {
-                    row[i - 1] = rs.getString(i) != null ? rs.getString(i) : "NULL";
+    // -------------------------------------------------------
+    //                  Keyset paging
+    // -------------------------------------------------------
+
+    /**
+     * Counts the wines matching the filters, capped at the limit.
+     *
+     * @param filters The filters to AND together (may be null or empty).
+     * @param limit   The LIMIT value, or null if not applicable.
+     * @return The number of matching rows, or 0 if the query fails (see {@link #failedQueries()}).
+     */
+    public static int countMatching(List<WineFilter> filters, Integer limit) {
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*) FROM wine_table");
+        WineFilter.appendWhere(sql, filters);
+        System.out.println("Executing count query: " + sql + " " + describeParameters(filters, null));
+        Integer count = executeScalar(sql.toString(), filters);
+        if (count == null) {
+            markFailed(); // a COUNT(*) always has a row
+            return 0;
+        }
+        return limit != null ? Math.min(count, limit) : count;
+    }
+
+    /**
+     * Counts the wines matching the filters among those with an id up to a high-watermark, so
+     * that rows inserted later can be added to the count exactly once.
+     *
+     * @param filters The filters to AND together (may be null or empty).
+     * @param limit   The LIMIT value, or null if not applicable.
+     * @param maxId   The highest id to count, e.g. {@link ChangePoller#getHighWatermark()}.
+     * @return The number of matching rows, or 0 if the query fails (see {@link #failedQueries()}).
+     */
+    public static int countMatchingUpTo(List<WineFilter> filters, Integer limit, long maxId) {
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*) FROM wine_table");
+        WineFilter.appendWhere(sql, filters, "id <= ?");
+        System.out.println("Executing count query: " + sql + " " + describeParameters(filters, null));
+        Integer count = executeScalar(sql.toString(), filters, maxId);
+        if (count == null) {
+            markFailed(); // a COUNT(*) always has a row
+            return 0;
+        }
+        return limit != null ? Math.min(count, limit) : count;
+    }
+
+    /**
+     * @return The SQL of the statements the UI runs right after startup (the unfiltered count
+     *         and the first pages), so they can be prepared on warm connections in advance.
+     */
+    static List<String> startupStatements() {
+        List<String> statements = new ArrayList<>();
+        StringBuilder count = new StringBuilder("SELECT COUNT(*) FROM wine_table");
+        WineFilter.appendWhere(count, null);
+        statements.add(count.toString());
+        StringBuilder firstPage = new StringBuilder("SELECT * FROM wine_table");
+        WineFilter.appendWhere(firstPage, null);
+        statements.add(firstPage.append(" ORDER BY id LIMIT ?").toString());
+        StringBuilder nextPage = new StringBuilder("SELECT * FROM wine_table");
+        WineFilter.appendWhere(nextPage, null, "id > ?");
+        statements.add(nextPage.append(" ORDER BY id LIMIT ?").toString());
+        return statements;
+    }
+
+    /**
+     * Fetches the next page of matching wines in id order, starting after a given id
+     * ({@code id > afterId ORDER BY id LIMIT pageSize}). Uses the primary key, so a deep page
+     * costs the same as the first one.
+     *
+     * @param filters  The filters to AND together (may be null or empty).
+     * @param afterId  The last id of the previous page, or null for the first page.
+     * @param pageSize The maximum number of rows to return.
+     * @return QueryResult containing at most pageSize wines.
+     */
+    public static QueryResult fetchPageAfter(List<WineFilter> filters, Integer afterId, int pageSize) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM wine_table");
+        if (afterId != null) {
+            WineFilter.appendWhere(sql, filters, "id > ?");
+            sql.append(" ORDER BY id LIMIT ?");
+            return executeQuery(sql.toString(), filters, afterId, pageSize);
+        }
+        WineFilter.appendWhere(sql, filters);
+        sql.append(" ORDER BY id LIMIT ?");
+        return executeQuery(sql.toString(), filters, pageSize);
+    }
+
+    /**
+     * Fetches the matching wines immediately before a given id, returned in ascending id order
+     * ({@code id < beforeId ORDER BY id DESC LIMIT pageSize}, then reversed).
+     *
+     * @param filters  The filters to AND together (may be null or empty).
+     * @param beforeId The first id of the following page.
+     * @param pageSize The maximum number of rows to return.
+     * @return QueryResult containing at most pageSize wines.
+     */
+    public static QueryResult fetchPageBefore(List<WineFilter> filters, int beforeId, int pageSize) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM wine_table");
+        WineFilter.appendWhere(sql, filters, "id < ?");
+        sql.append(" ORDER BY id DESC LIMIT ?");
+        QueryResult descending = executeQuery(sql.toString(), filters, beforeId, pageSize);
+        return slice(descending, descending.getRowCount() - 1, -1);
+    }
+
+    /**
+     * Finds the id of the matching wine at a given position in id order. Used to jump to an
+     * arbitrary page; the scan only touches the primary key.
+     *
+     * @param filters The filters to AND together (may be null or empty).
+     * @param offset  The zero-based position.
+     * @return The id at that position, or null if there are fewer matching rows.
+     */
+    public static Integer findIdAtOffset(List<WineFilter> filters, int offset) {
+        return findIdAtOffset(filters, null, offset);
+    }
+
+    /**
+     * Finds the id of the matching wine a given number of rows after a known id. Seeking from
+     * the nearest known page boundary keeps the scanned range short however deep the jump is.
+     *
+     * @param filters The filters to AND together (may be null or empty).
+     * @param afterId The id to count from (exclusive), or null to count from the first wine.
+     * @param offset  The zero-based position after {@code afterId}.
+     * @return The id at that position, or null if there are fewer matching rows.
+     */
+    public static Integer findIdAtOffset(List<WineFilter> filters, Integer afterId, int offset) {
+        StringBuilder sql = new StringBuilder("SELECT id FROM wine_table");
+        if (afterId == null) {
+            WineFilter.appendWhere(sql, filters);
+            sql.append(" ORDER BY id LIMIT ?, 1");
+            return executeScalar(sql.toString(), filters, offset);
+        }
+        WineFilter.appendWhere(sql, filters, "id > ?");
+        sql.append(" ORDER BY id LIMIT ?, 1");
+        return executeScalar(sql.toString(), filters, afterId, offset);
+    }
+
+    /**
+     * Finds the id of the matching wine a given number of rows before a known id, for seeking
+     * backwards from a page boundary that lies after the target.
+     *
+     * @param filters  The filters to AND together (may be null or empty).
+     * @param beforeId The id to count back from (exclusive).
+     * @param offset   The zero-based position before {@code beforeId}, counting downwards.
+     * @return The id at that position, or null if there are fewer matching rows.
+     */
+    public static Integer findIdBefore(List<WineFilter> filters, int beforeId, int offset) {
+        StringBuilder sql = new StringBuilder("SELECT id FROM wine_table");
+        WineFilter.appendWhere(sql, filters, "id < ?");
+        sql.append(" ORDER BY id DESC LIMIT ?, 1");
+        return executeScalar(sql.toString(), filters, beforeId, offset);
+    }
+
+    // -------------------------------------------------------
+    //                  Cursor pagination
+    // -------------------------------------------------------
+
+    /**
+     * Fetches the first page of matching wines in id order.
+     *
+     * @param filters  The filters to AND together (may be null or empty).
+     * @param pageSize The number of rows per page.
+     * @return The first page, with cursors to the neighbouring pages.
+     */
+    public static WinePage firstPage(List<WineFilter> filters, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive.");
+        }
+        List<WineFilter> snapshot = filters == null ? List.of() : List.copyOf(filters);
+        // One extra row tells whether another page follows without a COUNT(*)
+        QueryResult rows = fetchPageAfter(snapshot, null, pageSize + 1);
+        boolean hasNext = rows.getRowCount() > pageSize;
+        return new WinePage(snapshot, pageSize, 0, hasNext ? slice(rows, 0, pageSize) : rows, false, hasNext);
+    }
+
+    /**
+     * Fetches the page after the given one.
+     *
+     * @param page The current page.
+     * @return The next page, or the current page if it is the last one.
+     */
+    public static WinePage nextPage(WinePage page) {
+        Integer lastId = page.getLastId();
+        if (!page.hasNext() || lastId == null) {
+            return page;
+        }
+        int pageSize = page.getPageSize();
+        QueryResult rows = fetchPageAfter(page.getFilters(), lastId, pageSize + 1);
+        if (rows.getRowCount() == 0) {
+            // The following rows were deleted since this page was read
+            return new WinePage(page.getFilters(), pageSize, page.getPageNumber(), page.getRows(),
+                    page.hasPrevious(), false);
+        }
+        boolean hasNext = rows.getRowCount() > pageSize;
+        return new WinePage(page.getFilters(), pageSize, page.getPageNumber() + 1,
+                hasNext ? slice(rows, 0, pageSize) : rows, true, hasNext);
+    }
+
+    /**
+     * Fetches the page before the given one.
+     *
+     * @param page The current page.
+     * @return The previous page, or the current page if it is the first one.
+     */
+    public static WinePage previousPage(WinePage page) {
+        Integer firstId = page.getFirstId();
+        if (!page.hasPrevious() || firstId == null) {
+            return page;
+        }
+        int pageSize = page.getPageSize();
+        QueryResult rows = fetchPageBefore(page.getFilters(), firstId, pageSize + 1);
+        if (rows.getRowCount() == 0) {
+            return firstPage(page.getFilters(), pageSize);
+        }
+        boolean hasPrevious = rows.getRowCount() > pageSize;
+        int rowCount = rows.getRowCount();
+        return new WinePage(page.getFilters(), pageSize, Math.max(page.getPageNumber() - 1, 0),
+                hasPrevious ? slice(rows, rowCount - pageSize, rowCount) : rows, hasPrevious, true);
+    }
+
+    /**
+     * Selects rows from start (inclusive) towards end (exclusive), stepping backwards if end
+     * is below start.
+     */
+    private static QueryResult slice(QueryResult result, int start, int end) {
+        int step = end >= start ? 1 : -1;
+        int[] rows = new int[Math.abs(end - start)];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = start + i * step;
+        }
+        return result.select(rows);
+    }
+
+    // -------------------------------------------------------
+    //                  Aggregation
+    // -------------------------------------------------------
+
+    /**
+     * Computes count, min, max, mean, standard deviation, percentiles and a histogram of every
+     * numeric column over the wines matching the filters, optionally per quality or color.
+     * <p>
+     * With the in-memory store loaded the columns are summarized locally in parallel. Otherwise
+     * one query fetches the range of every column, then MySQL groups each column into at most
+     * {@code wine.statistics.buckets} equal-width buckets per group, one query per column running
+     * concurrently, so the rows transferred are bounded no matter how many distinct values there are.
+     *
+     * @param filters The filters to AND together (may be null or empty).
+     * @param groupBy {@link WineFilter.Field#QUALITY}, {@link WineFilter.Field#COLOR}, or null.
+     * @return The statistics, or null if a query failed or took too long.
+     */
+    public static WineStatistics computeStatistics(List<WineFilter> filters, WineFilter.Field groupBy) {
+        WineStatistics.checkGroupBy(groupBy);
+        WineStatistics local = WineStore.statistics(filters, groupBy);
+        if (local != null) {
+            return local;
+        }
+
+        QueryResult ranges = executeQuery(rangeSql(filters), filters);
+        if (ranges.getColumnCount() == 0) {
+            return null; // the query failed; it was already logged
+        }
+
+        Map<String, QueryExecutor.Subtask<QueryResult>> subtasks = new LinkedHashMap<>();
+        try (QueryExecutor.Scope scope = QueryExecutor.openScope(STATISTICS_DEADLINE)) {
+            for (int i = 0; i < WineStatistics.NUMERIC_COLUMNS.size(); i++) {
+                if (ranges.getRowCount() == 0 || ranges.isNull(0, 2 * i)) {
+                    continue; // no values at all
                 }
-                data.add(row);
+                double min = ranges.getColumn(2 * i).getDouble(0);
+                double max = ranges.getColumn(2 * i + 1).getDouble(0);
+                double width = max > min ? (max - min) / STATISTICS_BUCKETS : 1;
+                String column = WineStatistics.NUMERIC_COLUMNS.get(i);
+                String sql = bucketSql(column, filters, groupBy);
+                subtasks.put(column, scope.fork(() -> executeQuery(sql, filters, min, width)));
             }
+            scope.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            System.err.println("Error computing statistics: " + e);
+            return null;
+        }
 
-        } catch (SQLException e) {
-            System.err.println("Error executing query: " + e.getMessage());
+        Map<String, QueryResult> buckets = new LinkedHashMap<>();
+        for (Map.Entry<String, QueryExecutor.Subtask<QueryResult>> entry : subtasks.entrySet()) {
+            QueryResult distribution = entry.getValue().get();
+            if (distribution.getColumnCount() == 0) {
+                return null; // the query failed; it was already logged
+            }
+            buckets.put(entry.getKey(), distribution);
+        }
+        return WineStatistics.fromBuckets(groupBy, buckets);
+    }
+
+    /**
+     * Builds {@code SELECT MIN(c1), MAX(c1), MIN(c2), MAX(c2), ...} over the numeric columns.
+     */
+    private static String rangeSql(List<WineFilter> filters) {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (int i = 0; i < WineStatistics.NUMERIC_COLUMNS.size(); i++) {
+            String quoted = "`" + WineStatistics.NUMERIC_COLUMNS.get(i) + "`";
+            sql.append(i == 0 ? "" : ", ").append("MIN(").append(quoted).append("), MAX(").append(quoted).append(")");
+        }
+        sql.append(" FROM wine_table");
+        WineFilter.appendWhere(sql, filters);
+        return sql.toString();
+    }
+
+    /**
+     * Builds {@code SELECT [grp,] LEAST(FLOOR((v - base) / width), buckets - 1) AS bucket, COUNT(*) AS n,
+     * COUNT(DISTINCT v) AS n_distinct, MIN, MAX, AVG, VAR_POP ... GROUP BY [grp,] bucket} over the
+     * filtered non-NULL values {@code v} of the column. The bucket base and width are bound after
+     * the filters, from a one-row derived table that follows the filtered one, so the statement
+     * text depends only on the filter shape. Values equal to max are clamped into the last bucket,
+     * so there are at most {@code buckets} per group.
+     */
+    private static String bucketSql(String column, List<WineFilter> filters, WineFilter.Field groupBy) {
+        String quoted = "`" + column + "`";
+        String groups = groupBy != null ? "grp, bucket" : "bucket";
+        StringBuilder sql = new StringBuilder("SELECT ");
+        if (groupBy != null) {
+            sql.append("t.grp, ");
+        }
+        sql.append("LEAST(FLOOR((t.v - b.base) / b.width), ").append(STATISTICS_BUCKETS - 1).append(") AS bucket, ")
+                .append("COUNT(*) AS n, COUNT(DISTINCT t.v) AS n_distinct, MIN(t.v) AS lo, MAX(t.v) AS hi, ")
+                .append("AVG(t.v) AS mean, VAR_POP(t.v) AS var FROM (SELECT ");
+        if (groupBy != null) {
+            sql.append(groupBy.getSqlName()).append(" AS grp, ");
+        }
+        sql.append(quoted).append(" AS v FROM wine_table");
+        WineFilter.appendWhere(sql, filters, quoted + " IS NOT NULL");
+        sql.append(") AS t CROSS JOIN (SELECT ? AS base, ? AS width) AS b");
+        sql.append(" GROUP BY ").append(groups).append(" ORDER BY ").append(groups);
+        return sql.toString();
+    }
+
+    // -------------------------------------------------------
+    //                  Similarity search
+    // -------------------------------------------------------
+
+    /**
+     * Finds the wines most similar to a given wine by their 11 physicochemical features
+     * (normalized Euclidean distance), using a k-d tree instead of comparing every pair in SQL.
+     *
+     * @param id      The id of the reference wine.
+     * @param k       The number of similar wines to return.
+     * @param filters Pre-filters (e.g. quality, color) the similar wines must match; may be null or empty.
+     * @return The similar wines, nearest first, with a trailing {@code distance} column;
+     *         empty if the id does not exist or the search fails.
+     */
+    public static QueryResult findSimilarWines(int id, int k, List<WineFilter> filters) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("The number of similar wines must be positive.");
+        }
+        SimilarityIndex index = SimilarityIndex.current();
+        if (index == null) {
+            return QueryResult.empty();
+        }
+        long start = System.nanoTime();
+        QueryResult neighbours = index.nearest(id, k, filters);
+        if (neighbours == null) {
+            System.err.println("Similarity pre-filters cannot be evaluated: " + describeParameters(filters, null));
+            return QueryResult.empty();
         }
+        System.out.println("Found " + neighbours.getRowCount() + " wines similar to #" + id + " in "
+                + (System.nanoTime() - start) / 1_000 + " us");
+        return neighbours;
+    }
 
-        return new QueryResult(
-                columnNames.toArray(new String[0]),
-                data.toArray(new String[0][])
-        );
+    /**
+     * Drops the similarity index built from MySQL when the in-memory store is off, freeing its
+     * copy of the table. The next similarity search rebuilds it.
+     */
+    public static void releaseSimilarityIndex() {
+        SimilarityIndex.release();
     }
 
+    // -------------------------------------------------------
+    //                  Approximate preview
+    // -------------------------------------------------------
+
     /**
-     * Executes a custom SQL query with optional WHERE filters and LIMIT.
+     * Estimates the number of wines matching the filters, and their column distributions, from
+     * the background {@link TableSample} without touching MySQL. Meant to be shown while the
+     * exact query runs.
      *
-     * @param baseQuery     The base SQL query (e.g., "SELECT * FROM wine_table").
-     * @param whereFilters  A list of SQL conditions to apply in the WHERE clause.
-     * @param limitFilter   The LIMIT clause value (e.g., "10"), or null if not applicable.
-     * @return QueryResult containing column names and data rows.
+     * @param filters The filters to AND together (may be null or empty).
+     * @return The estimate, or null if no sample is available yet or the filters cannot be
+     *         evaluated on it.
      */
-    public static QueryResult executeCustomQuery(String baseQuery, List<String> whereFilters, String limitFilter) {
-        StringBuilder sql = new StringBuilder(baseQuery);
-        if (whereFilters != null && !whereFilters.isEmpty()) {
-            sql.append(" WHERE ");
-            sql.append(String.join(" AND ", whereFilters));
+    public static WineEstimate estimateCustomQuery(List<WineFilter> filters) {
+        long start = System.nanoTime();
+        WineEstimate estimate = TableSample.estimate(filters);
+        if (estimate != null) {
+            System.out.println("Estimated " + estimate.getEstimatedCount() + " matching wines from "
+                    + estimate.getSampleSize() + " sampled in " + (System.nanoTime() - start) / 1_000 + " us");
         }
-        if (limitFilter != null && !limitFilter.isEmpty()) {
-            sql.append(" LIMIT ").append(limitFilter);
+        return estimate;
+    }
+
+    /**
+     * Formats the bound values of a query for logging.
+     */
+    private static String describeParameters(List<WineFilter> filters, Integer limit) {
+        List<String> parts = new ArrayList<>();
+        if (filters != null) {
+            for (WineFilter filter : WineFilter.canonical(filters)) {
+                parts.add(filter.toString());
+            }
+        }
+        if (limit != null) {
+            parts.add("LIMIT " + limit);
         }
-        System.out.println("Executing custom query: " + sql.toString());
-        return executeQuery(sql.toString());
+        return parts.toString();
     }
 
     /**
-     * Retrieves all wines without any filters.
+     * Retrieves all wines without any filters. On a large table the id space is scanned in
+     * parallel ranges (see {@link #parallelScan}).
      *
-     * @return QueryResult containing all wines.
+     * @return QueryResult containing all wines, in id order.
      */
     public static QueryResult getAllWines() {
-        String sql = "SELECT * FROM wine_table";
-        System.out.println("Executing query: " + sql);
-        return executeQuery(sql);
+        return parallelScan(null, SCAN_PARALLELISM, true);
     }
 
     /**
@@ -107,9 +990,7 @@ public class QueryHandler {
      * @return QueryResult containing the limited set of wines.
      */
     public static QueryResult getLimitWines(int limit) {
-        String sql = "SELECT * FROM wine_table LIMIT " + limit;
-        System.out.println("Executing query: " + sql);
-        return executeQuery(sql);
+        return executeCustomQuery(null, limit);
     }
 
     /**
@@ -119,30 +1000,23 @@ public class QueryHandler {
      * @return QueryResult containing wines of the specified quality.
      */
     public static QueryResult getWinesByQuality(String quality) {
-        String escapedQuality = quality.replace("'", "''");
-        String sql = "SELECT * FROM wine_table WHERE quality = '" + escapedQuality + "'";
-        System.out.println("Executing query for quality: " + escapedQuality);
-        return executeQuery(sql);
+        return executeCustomQuery(List.of(WineFilter.quality(quality)), null);
     }
 
     /**
      * Retrieves wines within a specified alcohol range.
      *
-     * @param minAlcohol The minimum alcohol level.
-     * @param maxAlcohol The maximum alcohol level.
+     * @param minAlcohol The minimum alcohol level, or -1 for no minimum.
+     * @param maxAlcohol The maximum alcohol level, or -1 for no maximum.
      * @return QueryResult containing wines within the specified alcohol range.
      */
     public static QueryResult getWinesByAlcoholRange(double minAlcohol, double maxAlcohol) {
-        String sql = "";
-        if (minAlcohol != -1 && maxAlcohol != -1) {
-            sql = "SELECT * FROM wine_table WHERE alcohol BETWEEN " + minAlcohol + " AND " + maxAlcohol;
-        } else if (minAlcohol != -1) {
-            sql = "SELECT * FROM wine_table WHERE alcohol >= " + minAlcohol;
-        } else if (maxAlcohol != -1) {
-            sql = "SELECT * FROM wine_table WHERE alcohol <= " + maxAlcohol;
+        if (minAlcohol == -1 && maxAlcohol == -1) {
+            return getAllWines();
         }
-        System.out.println("Executing alcohol range query: " + sql);
-        return executeQuery(sql);
+        return executeCustomQuery(List.of(WineFilter.alcoholRange(
+                minAlcohol != -1 ? minAlcohol : null,
+                maxAlcohol != -1 ? maxAlcohol : null)), null);
     }
 
     /**
@@ -152,10 +1026,7 @@ public class QueryHandler {
      * @return QueryResult containing wines of the specified color.
      */
     public static QueryResult getWinesByColor(String color) {
-        String escapedColor = color.replace("'", "''");
-        String sql = "SELECT * FROM wine_table WHERE color = '" + escapedColor + "'";
-        System.out.println("Executing color query: " + sql);
-        return executeQuery(sql);
+        return executeCustomQuery(List.of(WineFilter.color(color)), null);
     }
 
     /**
@@ -165,50 +1036,53 @@ public class QueryHandler {
      * @return QueryResult containing wines matching the specified IDs or range.
      */
     public static QueryResult getWinesById(String ids) {
-        String sql;
-
-        if (ids.contains("-")) {
-            // Range case (e.g., 5-10)
-            String[] range = ids.split("-");
-            if (range.length == 2) {
-                sql = "SELECT * FROM wine_table WHERE id BETWEEN " + range[0].trim() + " AND " + range[1].trim();
+        WineFilter filter;
+        try {
+            if (ids.contains("-")) {
+                // Range case (e.g., 5-10)
+                String[] range = ids.split("-");
+                if (range.length != 2) {
+                    System.err.println("Invalid ID range format.");
+                    return QueryResult.empty();
+                }
+                filter = WineFilter.idRange(Integer.parseInt(range[0].trim()), Integer.parseInt(range[1].trim()));
+            } else if (ids.contains(",")) {
+                // Multiple IDs case (e.g., 1,2,3)
+                filter = WineFilter.idIn(Arrays.stream(ids.split(","))
+                        .mapToInt(id -> Integer.parseInt(id.trim()))
+                        .toArray());
             } else {
-                // Invalid range format
-                System.err.println("Invalid ID range format.");
-                return new QueryResult(new String[]{}, new String[][]{});
+                // Single ID case (e.g., 5)
+                filter = WineFilter.id(Integer.parseInt(ids.trim()));
             }
-        } else if (ids.contains(",")) {
-            // Multiple IDs case (e.g., 1,2,3)
-            sql = "SELECT * FROM wine_table WHERE id IN (" + ids + ")";
-        } else {
-            // Single ID case (e.g., 5)
-            sql = "SELECT * FROM wine_table WHERE id = " + ids;
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid ID format: " + ids);
+            return QueryResult.empty();
         }
-
-        System.out.println("Executing ID query: " + sql);
-        return executeQuery(sql);
+        return executeCustomQuery(List.of(filter), null);
     }
 
     /**
      * Retrieves wines within a specified date range.
      *
-     * @param startDate The start date (inclusive) in 'YYYY-MM-DD' format.
-     * @param endDate   The end date (inclusive) in 'YYYY-MM-DD' format.
+     * @param startDate The start date (inclusive) in 'YYYY-MM-DD' format, or empty for no start.
+     * @param endDate   The end date (inclusive) in 'YYYY-MM-DD' format, or empty for no end.
      * @return QueryResult containing wines within the specified date range.
      */
     public static QueryResult getWinesByDateRange(String startDate, String endDate) {
-        String sql;
-        if (!startDate.isEmpty() && !endDate.isEmpty()) {
-            sql = "SELECT * FROM wine_table WHERE `date` BETWEEN '" + startDate + "' AND '" + endDate + "'";
-        } else if (!startDate.isEmpty()) {
-            sql = "SELECT * FROM wine_table WHERE `date` >= '" + startDate + "'";
-        } else if (!endDate.isEmpty()) {
-            sql = "SELECT * FROM wine_table WHERE `date` <= '" + endDate + "'";
-        } else {
-            sql = "SELECT * FROM wine_table"; // No date filters applied
+        if (startDate.isEmpty() && endDate.isEmpty()) {
+            return getAllWines(); // No date filters applied
+        }
+        WineFilter filter;
+        try {
+            filter = WineFilter.dateRange(
+                    startDate.isEmpty() ? null : LocalDate.parse(startDate),
+                    endDate.isEmpty() ? null : LocalDate.parse(endDate));
+        } catch (DateTimeParseException e) {
+            System.err.println("Invalid date format: " + e.getParsedString());
+            return QueryResult.empty();
         }
-        System.out.println("Executing date range query: " + sql);
-        return executeQuery(sql);
+        return executeCustomQuery(List.of(filter), null);
     }
 
     /**
@@ -219,26 +1093,21 @@ public class QueryHandler {
      * @return QueryResult containing wines within the specified pH range.
      */
     public static QueryResult getWinesByPH(String minPHStr, String maxPHStr) {
-        String sql;
-
         boolean hasMin = (minPHStr != null && !minPHStr.isEmpty());
         boolean hasMax = (maxPHStr != null && !maxPHStr.isEmpty());
 
-        if (hasMin && hasMax) {
-            // BETWEEN
-            sql = "SELECT * FROM wine_table WHERE `pH` BETWEEN " + minPHStr + " AND " + maxPHStr;
-        } else if (hasMin) {
-            // >=
-            sql = "SELECT * FROM wine_table WHERE `pH` >= " + minPHStr;
-        } else if (hasMax) {
-            // <=
-            sql = "SELECT * FROM wine_table WHERE `pH` <= " + maxPHStr;
-        } else {
-            // No pH filters applied
-            sql = "SELECT * FROM wine_table";
+        if (!hasMin && !hasMax) {
+            return getAllWines(); // No pH filters applied
         }
-
-        System.out.println("Executing pH query: " + sql);
-        return executeQuery(sql);
+        WineFilter filter;
+        try {
+            filter = WineFilter.phRange(
+                    hasMin ? Double.valueOf(minPHStr) : null,
+                    hasMax ? Double.valueOf(maxPHStr) : null);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid pH format: " + minPHStr + " - " + maxPHStr);
+            return QueryResult.empty();
+        }
+        return executeCustomQuery(List.of(filter), null);
     }
 }
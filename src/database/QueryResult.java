@@ -0,0 +1,274 @@
+package database;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The columnar, immutable result of a query.
+ * <p>
+ * Each column is stored as a primitive array (see {@link Column}); cells are only turned into
+ * strings when {@link #getValueAt(int, int)} is called for rendering.
+ */
+public final class QueryResult {
+
+    private static final QueryResult EMPTY = new QueryResult(new Column[0], 0);
+
+    private final Column[] columns;
+    private final int rowCount;
+
+    private QueryResult(Column[] columns, int rowCount) {
+        this.columns = columns;
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * Creates a result from columns of equal length.
+     *
+     * @param columns The columns.
+     */
+    public QueryResult(Column... columns) {
+        this(columns.clone(), columns.length == 0 ? 0 : columns[0].size());
+        for (Column column : columns) {
+            if (column.size() != rowCount) {
+                throw new IllegalArgumentException("Column " + column.getName() + " has " + column.size()
+                        + " rows, expected " + rowCount + ".");
+            }
+        }
+    }
+
+    /**
+     * @return A result with no columns and no rows.
+     */
+    public static QueryResult empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Reads all remaining rows of a result set.
+     *
+     * @param rs The result set, positioned before its first row.
+     * @return The columnar result.
+     * @throws SQLException If reading fails.
+     */
+    public static QueryResult fromResultSet(ResultSet rs) throws SQLException {
+        Builder builder = new Builder(rs.getMetaData());
+        while (rs.next()) {
+            builder.appendRow(rs);
+        }
+        return builder.build();
+    }
+
+    public String[] getColumnNames() {
+        String[] names = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            names[i] = columns[i].getName();
+        }
+        return names;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public Column getColumn(int index) {
+        return columns[index];
+    }
+
+    /**
+     * @param name The column name (case-insensitive).
+     * @return The column index, or -1 if there is no such column.
+     */
+    public int findColumn(String name) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].getName().equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The display text of a cell ("NULL" for SQL NULL).
+     */
+    public String getValueAt(int row, int column) {
+        return columns[column].getString(row);
+    }
+
+    public boolean isNull(int row, int column) {
+        return columns[column].isNull(row);
+    }
+
+    /**
+     * Gathers the given rows into a new result.
+     *
+     * @param rows Row indexes, in output order.
+     * @return A result with {@code rows.length} rows.
+     */
+    public QueryResult select(int[] rows) {
+        Column[] selected = new Column[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            selected[i] = columns[i].select(rows);
+        }
+        return new QueryResult(selected, rows.length);
+    }
+
+    /**
+     * Appends rows with the same columns, e.g. rows inserted since this result was read.
+     *
+     * @param rows The rows to add after this result's rows.
+     * @return A new result; this result if {@code rows} is empty.
+     * @throws IllegalArgumentException If the columns do not match.
+     */
+    public QueryResult append(QueryResult rows) {
+        return rows.rowCount == 0 ? this : concat(List.of(this, rows));
+    }
+
+    /**
+     * Joins results with the same columns into one, in order, e.g. the parts of a scan that
+     * was split into ranges.
+     *
+     * @param parts The results; parts without columns (see {@link #empty()}) are skipped.
+     * @return The joined result.
+     * @throws IllegalArgumentException If the columns do not match.
+     */
+    public static QueryResult concat(List<QueryResult> parts) {
+        List<QueryResult> withColumns = new ArrayList<>();
+        for (QueryResult part : parts) {
+            if (part.columns.length > 0) {
+                withColumns.add(part);
+            }
+        }
+        if (withColumns.isEmpty()) {
+            return EMPTY;
+        }
+        if (withColumns.size() == 1) {
+            return withColumns.get(0);
+        }
+        int columnCount = withColumns.get(0).columns.length;
+        int rowCount = 0;
+        for (QueryResult part : withColumns) {
+            if (part.columns.length != columnCount) {
+                throw new IllegalArgumentException("Cannot join results with " + part.columns.length
+                        + " and " + columnCount + " columns");
+            }
+            rowCount += part.rowCount;
+        }
+        Column[] joined = new Column[columnCount];
+        List<Column> chunks = new ArrayList<>(withColumns.size());
+        for (int i = 0; i < columnCount; i++) {
+            chunks.clear();
+            for (QueryResult part : withColumns) {
+                chunks.add(part.columns[i]);
+            }
+            joined[i] = Column.concat(chunks);
+        }
+        return new QueryResult(joined, rowCount);
+    }
+
+    /**
+     * @param column The column index of an integer column, e.g. the id.
+     * @return The largest non-null value, or {@link Integer#MIN_VALUE} if there is none.
+     */
+    public int maxInt(int column) {
+        Column values = columns[column];
+        int max = Integer.MIN_VALUE;
+        for (int row = 0; row < rowCount; row++) {
+            if (!values.isNull(row)) {
+                max = Math.max(max, values.getInt(row));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Sorts the rows by one column using primitive comparisons.
+     *
+     * @param column    The column index to sort by.
+     * @param ascending True for ascending order (NULLs last either way).
+     * @return A new, sorted result.
+     */
+    public QueryResult sortBy(int column, boolean ascending) {
+        Column key = columns[column];
+        int[] order = ascending
+                ? key.sortedRows()
+                : Column.sortPermutation(rowCount, (a, b) -> {
+                    boolean nullA = key.isNull(a);
+                    boolean nullB = key.isNull(b);
+                    return nullA || nullB ? Boolean.compare(nullA, nullB) : key.compareRows(b, a);
+                });
+        return select(order);
+    }
+
+    /**
+     * @return Approximate heap footprint of the result data in bytes.
+     */
+    public long estimatedBytes() {
+        long bytes = 0;
+        for (Column column : columns) {
+            bytes += column.estimatedBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Builds a result row by row from a {@link ResultSet}, reading each cell with the primitive
+     * getter that matches its column type.
+     */
+    public static final class Builder {
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private final Column.Builder[] builders;
+        private int rowCount;
+
+        /**
+         * @param metaData The metadata of the result set that rows will be read from.
+         * @throws SQLException If the metadata cannot be read.
+         */
+        public Builder(ResultSetMetaData metaData) throws SQLException {
+            int columnCount = metaData.getColumnCount();
+            builders = new Column.Builder[columnCount];
+            for (int i = 1; i <= columnCount; i++) {
+                int jdbcType = metaData.getColumnType(i);
+                // Only DECIMAL has a fixed display scale; floating-point columns print their shortest form
+                int scale = jdbcType == Types.DECIMAL || jdbcType == Types.NUMERIC ? metaData.getScale(i)
+                        : jdbcType == Types.BIGINT ? 0 : -1;
+                // getColumnLabel honors aliases and matches getColumnName for plain columns
+                builders[i - 1] = Column.Builder.create(metaData.getColumnLabel(i),
+                        Column.typeFor(metaData, i), scale, INITIAL_CAPACITY);
+            }
+        }
+
+        /**
+         * Reads the current row of the result set.
+         *
+         * @param rs The result set, positioned on a row.
+         * @throws SQLException If reading fails.
+         */
+        public void appendRow(ResultSet rs) throws SQLException {
+            for (int i = 0; i < builders.length; i++) {
+                builders[i].read(rs, i + 1);
+            }
+            rowCount++;
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        public QueryResult build() {
+            Column[] columns = new Column[builders.length];
+            for (int i = 0; i < builders.length; i++) {
+                columns[i] = builders[i].build();
+            }
+            return new QueryResult(columns, rowCount);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package database;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A size- and TTL-bounded cache of query results, shared by all {@link QueryHandler} queries.
+ * <p>
+ * Keys are the parameterized SQL text plus the bound values in canonical filter order, so the
+ * same filter set applied in any order maps to one entry. Entries are evicted least recently
+ * used first once either the entry or the byte budget is exceeded, and expire after a TTL.
+ * <p>
+ * Staleness is detected with the {@link TableWatermark}: at most once per check interval a
+ * lookup triggers a re-read in the background (only the very first read blocks), and if it
+ * moved every entry is dropped. The watermark cannot see in-place UPDATEs or a delete plus an
+ * insert that keep the count and highest id, so code that writes to wine_table must call
+ * {@link #invalidateAll()}; the TTL bounds how long other clients' such writes go unnoticed.
+ * <p>
+ * Every clear or merge starts a new generation. Callers read {@link #generation()} before
+ * running a query and pass it to {@code put}, which drops the result if the generation moved
+ * meanwhile: a query that overlapped a write could otherwise cache pre-write rows after the
+ * cache was cleared for that write.
+ * <p>
+ * With {@code -Dwine.diskCache=true}, large results are also written to the persistent
+ * {@link DiskCache}, which is consulted on a miss, so they survive a restart.
+ * <p>
+ * Rows found by the {@link ChangePoller} are merged into the entries that hold a complete
+ * filtered selection of wine_table, and every other entry is dropped. The watermark moves
+ * along with the merge, so an append-only table keeps its cached results.
+ */
+final class ResultCache {
+
+    private static final int MAX_ENTRIES = Integer.getInteger("wine.cache.maxEntries", 256);
+    private static final long MAX_BYTES = Long.getLong("wine.cache.maxBytes", 64L * 1024 * 1024);
+    private static final long TTL_MILLIS = Long.getLong("wine.cache.ttlMillis", 5 * 60_000L);
+    private static final long WATERMARK_CHECK_MILLIS = Long.getLong("wine.cache.watermarkCheckMillis", 2_000L);
+    private static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("wine.cache"));
+
+    private static final Map<String, Entry> ENTRIES = new LinkedHashMap<>(64, 0.75f, true);
+    private static long totalBytes;
+    private static TableWatermark watermark;
+    private static volatile long watermarkCheckedAt;
+    private static long generation;
+
+    private static final AtomicBoolean WATERMARK_CHECK_RUNNING = new AtomicBoolean();
+    private static final ExecutorService WATERMARK_CHECKER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "wine-cache-watermark");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final class Entry {
+        private final Object value;
+        private final long bytes;
+        private final long expiresAt;
+        // The filters of a result holding every matching row, so new rows can be merged in; else null
+        private final List<WineFilter> appendFilters;
+
+        private Entry(Object value, long bytes, long expiresAt, List<WineFilter> appendFilters) {
+            this.value = value;
+            this.bytes = bytes;
+            this.expiresAt = expiresAt;
+            this.appendFilters = appendFilters;
+        }
+    }
+
+    private ResultCache() {
+    }
+
+    /**
+     * Builds the cache key of a query.
+     *
+     * @param sql      The parameterized SQL text (already in canonical filter order).
+     * @param filters  The filters bound to the statement.
+     * @param trailing The values bound after the filters.
+     * @return The key.
+     */
+    static String key(String sql, List<WineFilter> filters, Object... trailing) {
+        String values = filters == null ? "[]" : WineFilter.canonical(filters).toString();
+        return sql + '|' + values + '|' + Arrays.toString(trailing);
+    }
+
+    /**
+     * @return The current generation, to pass to {@code put} for a query about to run.
+     */
+    static synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * @param key  The query key.
+     * @param type The expected value type.
+     * @return The cached value, or null on a miss, after expiry, or if the table changed.
+     */
+    static <T> T get(String key, Class<T> type) {
+        if (!ENABLED) {
+            return null;
+        }
+        checkWatermark();
+        TableWatermark current;
+        long readIn;
+        synchronized (ResultCache.class) {
+            Entry entry = ENTRIES.get(key);
+            if (entry != null && entry.expiresAt >= System.currentTimeMillis()) {
+                return type.cast(entry.value);
+            }
+            if (entry != null) {
+                remove(key);
+            }
+            current = watermark;
+            readIn = generation;
+        }
+        if (type != QueryResult.class) {
+            return null;
+        }
+        DiskCache.Hit stored = DiskCache.get(key, current);
+        if (stored == null) {
+            return null;
+        }
+        QueryResult result = stored.getResult();
+        // Kept in memory no longer than the disk entry is valid
+        long expiresAt = Math.min(System.currentTimeMillis() + TTL_MILLIS, stored.getExpiresAt());
+        putInMemory(key, result, result.estimatedBytes(), null, readIn, expiresAt);
+        return type.cast(result);
+    }
+
+    /**
+     * Stores a value, evicting least recently used entries to stay within budget.
+     *
+     * @param key        The query key.
+     * @param value      The immutable result to cache.
+     * @param bytes      Its approximate size in bytes.
+     * @param generation The {@link #generation()} read before the query ran.
+     */
+    static void put(String key, Object value, long bytes, long generation) {
+        put(key, value, bytes, null, generation);
+    }
+
+    /**
+     * Stores a value, evicting least recently used entries to stay within budget. Nothing is
+     * stored if the cache was cleared or merged into since {@code generation} was read.
+     *
+     * @param key           The query key.
+     * @param value         The immutable result to cache.
+     * @param bytes         Its approximate size in bytes.
+     * @param appendFilters If the value is every row of wine_table matching these filters, the
+     *                      filters, so inserted rows can be merged in later; otherwise null.
+     * @param generation    The {@link #generation()} read before the query ran.
+     */
+    static void put(String key, Object value, long bytes, List<WineFilter> appendFilters, long generation) {
+        if (!ENABLED) {
+            return;
+        }
+        if (value instanceof QueryResult) {
+            TableWatermark current;
+            synchronized (ResultCache.class) {
+                if (generation != ResultCache.generation) {
+                    return;
+                }
+                current = watermark;
+            }
+            DiskCache.put(key, current, (QueryResult) value);
+        }
+        putInMemory(key, value, bytes, appendFilters == null ? null : List.copyOf(appendFilters), generation,
+                System.currentTimeMillis() + TTL_MILLIS);
+    }
+
+    private static synchronized void putInMemory(String key, Object value, long bytes, List<WineFilter> appendFilters,
+                                                 long readIn, long expiresAt) {
+        if (readIn != generation) {
+            return; // read before the table changed; may hold rows the change removed or lack new ones
+        }
+        if (bytes > MAX_BYTES / 4) {
+            return; // a single huge result would flush everything else
+        }
+        remove(key);
+        ENTRIES.put(key, new Entry(value, bytes, expiresAt, appendFilters));
+        totalBytes += bytes;
+        evict();
+    }
+
+    /**
+     * Merges rows inserted into wine_table into the entries that can take them and drops the rest.
+     * Late rows (committed below ids already merged) may or may not be in the entries already,
+     * so they clear the cache.
+     *
+     * @see ChangePoller.Listener#rowsInserted(long, QueryResult)
+     */
+    static synchronized void rowsInserted(long afterId, QueryResult rows) {
+        if (!ENABLED || watermark == null) {
+            return;
+        }
+        if (watermark.getMaxId() < afterId || FilterEngine.idsAbove(rows, afterId).length < rows.getRowCount()) {
+            // Rows between the two are in neither; start over like a watermark change does
+            clear();
+            watermark = null;
+            return;
+        }
+        QueryResult newRows = rows.select(FilterEngine.idsAbove(rows, watermark.getMaxId()));
+        if (newRows.getRowCount() == 0) {
+            return;
+        }
+        // Results of queries still running may lack the new rows and must not be stored as they are
+        generation++;
+
+        int merged = 0;
+        int dropped = 0;
+        Iterator<Map.Entry<String, Entry>> entries = ENTRIES.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Entry> mapEntry = entries.next();
+            Entry entry = mapEntry.getValue();
+            QueryResult extended = entry.appendFilters != null && entry.value instanceof QueryResult
+                    ? extend((QueryResult) entry.value, newRows, entry.appendFilters)
+                    : null;
+            totalBytes -= entry.bytes;
+            if (extended == null || extended.estimatedBytes() > MAX_BYTES / 4) {
+                entries.remove();
+                dropped++;
+                continue;
+            }
+            long bytes = extended.estimatedBytes();
+            mapEntry.setValue(new Entry(extended, bytes, entry.expiresAt, entry.appendFilters));
+            totalBytes += bytes;
+            merged++;
+        }
+        watermark = watermark.appended(newRows.getRowCount(), newRows.maxInt(newRows.findColumn("id")));
+        evict();
+        System.out.println("Merged " + newRows.getRowCount() + " new wines into " + merged
+                + " cached results; dropped " + dropped + ".");
+    }
+
+    /**
+     * @return The result with the matching new rows appended, or null if the filters cannot be
+     *         evaluated in memory.
+     */
+    private static QueryResult extend(QueryResult result, QueryResult newRows, List<WineFilter> filters) {
+        // The result may already hold rows inserted after the watermark was read
+        int idColumn = result.findColumn("id");
+        if (idColumn < 0) {
+            return null;
+        }
+        QueryResult unseen = newRows.select(FilterEngine.idsAbove(newRows, result.maxInt(idColumn)));
+        int[] matching = FilterEngine.evaluate(unseen, filters, null);
+        return matching == null ? null : result.append(unseen.select(matching));
+    }
+
+    /**
+     * Drops least recently used entries until both the entry and the byte budget are met.
+     */
+    private static void evict() {
+        Iterator<Entry> eldest = ENTRIES.values().iterator();
+        while ((ENTRIES.size() > MAX_ENTRIES || totalBytes > MAX_BYTES) && eldest.hasNext()) {
+            totalBytes -= eldest.next().bytes;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Drops every cached result. Call after writing to wine_table.
+     */
+    static synchronized void invalidateAll() {
+        clear();
+        watermark = null;
+        DiskCache.clear();
+    }
+
+    private static void clear() {
+        ENTRIES.clear();
+        totalBytes = 0;
+        generation++;
+    }
+
+    private static void remove(String key) {
+        Entry old = ENTRIES.remove(key);
+        if (old != null) {
+            totalBytes -= old.bytes;
+        }
+    }
+
+    /**
+     * Starts a throttled watermark check, like a lookup does, and returns the current generation.
+     * Lets other holders of table data (e.g. {@link SimilarityIndex}) notice changes without
+     * running a {@code COUNT(*)} of their own; works even with the cache disabled.
+     *
+     * @return The generation; it moves whenever the watermark does.
+     */
+    static long tableGeneration() {
+        checkWatermark();
+        return generation();
+    }
+
+    /**
+     * Re-reads the table watermark if the last check is older than the check interval. The
+     * read runs in the background, so a lookup never waits for the COUNT(*); only the first
+     * check, before any watermark is known, runs on the caller's thread.
+     */
+    private static void checkWatermark() {
+        long now = System.currentTimeMillis();
+        if (now - watermarkCheckedAt < WATERMARK_CHECK_MILLIS || !WATERMARK_CHECK_RUNNING.compareAndSet(false, true)) {
+            return;
+        }
+        boolean first = watermarkCheckedAt == 0;
+        watermarkCheckedAt = now;
+        if (first) {
+            refreshWatermark();
+        } else {
+            WATERMARK_CHECKER.execute(ResultCache::refreshWatermark);
+        }
+    }
+
+    /**
+     * Reads the table watermark and clears the cache if it moved.
+     */
+    private static void refreshWatermark() {
+        try {
+            TableWatermark current = TableWatermark.read();
+            synchronized (ResultCache.class) {
+                if (watermark != null && !watermark.equals(current)) {
+                    System.out.println("wine_table changed (" + watermark + " -> " + current
+                            + "); clearing result cache.");
+                    clear();
+                }
+                watermark = current;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error reading table watermark: " + e.getMessage());
+        } finally {
+            WATERMARK_CHECK_RUNNING.set(false);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Exports the wines matching a set of filters to a file, streaming rows from MySQL straight
+ * to disk in constant memory, however large the result.
+ * <p>
+ * Rows are read from a streaming result set on a dedicated connection. CSV rows are encoded
+ * into a large direct buffer that is written to a {@link FileChannel} whenever it fills up, so
+ * the bytes go to the file without another copy on the heap. The columnar format
+ * ({@link ColumnarFile}, the format of the disk cache) is written one row group at a time, so
+ * only one group of rows is ever held in memory. Either way the file is written next to its
+ * destination and moved into place when complete, so a failed export leaves no partial file.
+ */
+public final class ResultExporter {
+
+    private static final int BUFFER_BYTES = Integer.getInteger("wine.export.bufferBytes", 4 * 1024 * 1024);
+    private static final int ROW_GROUP_ROWS = Integer.getInteger("wine.export.rowGroupRows", 65_536);
+    private static final int PROGRESS_INTERVAL_ROWS = 100_000;
+
+    /**
+     * The supported file formats.
+     */
+    public enum Format {
+        CSV(".csv"),
+        COLUMNAR(ColumnarFile.EXTENSION);
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        /**
+         * @param file A file name.
+         * @return The format its extension names; CSV if it names none.
+         */
+        public static Format forFile(Path file) {
+            return file.getFileName().toString().toLowerCase().endsWith(COLUMNAR.extension) ? COLUMNAR : CSV;
+        }
+    }
+
+    private ResultExporter() {
+    }
+
+    /**
+     * Exports the wines matching the filters in id order.
+     *
+     * @param filters  The filters to AND together (may be null or empty).
+     * @param limit    The LIMIT value, or null for every matching wine.
+     * @param file     The file to create or replace.
+     * @param format   The file format.
+     * @param progress Called on the exporting thread with the number of rows written so far,
+     *                 every {@value #PROGRESS_INTERVAL_ROWS} rows; may be null.
+     * @return The number of rows exported.
+     * @throws IOException  If the file cannot be written.
+     * @throws SQLException If the query fails.
+     */
+    public static long export(List<WineFilter> filters, Integer limit, Path file, Format format,
+                              LongConsumer progress) throws IOException, SQLException {
+        StringBuilder sql = new StringBuilder("SELECT * FROM wine_table");
+        WineFilter.appendWhere(sql, filters);
+        sql.append(" ORDER BY id");
+        if (limit != null) {
+            sql.append(" LIMIT ?");
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        long start = System.nanoTime();
+        long rows;
+        // A long export must not hold a pooled connection
+        try (Connection conn = DBConnection.connectUnpooled();
+             PreparedStatement stmt = conn.prepareStatement(sql.toString(),
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            int index = WineFilter.bindAll(stmt, filters);
+            if (limit != null) {
+                stmt.setInt(index, limit);
+            }
+            // Stream rows instead of letting the driver buffer the whole result
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            QueryCoordinator.Registration registration = QueryCoordinator.track(stmt);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rows = format == Format.CSV
+                        ? writeCsv(rs, temporary, progress)
+                        : writeColumnar(rs, temporary, describe(filters, limit), progress);
+            } finally {
+                registration.close();
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | SQLException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long bytes = Files.size(file);
+        System.out.printf("Exported %,d rows to %s (%,d KB) in %.1f s: %,.0f rows/s, %.1f MB/s%n",
+                rows, file, bytes / 1024, seconds, rows / seconds, bytes / seconds / (1024 * 1024));
+        return rows;
+    }
+
+    /**
+     * Writes a header line and one line per row, quoting values that contain a separator, a
+     * quote or a line break. SQL NULL is written as an empty field.
+     */
+    private static long writeCsv(ResultSet rs, Path file, LongConsumer progress) throws IOException, SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        long rows = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (int i = 1; i <= columnCount; i++) {
+                putField(buffer, channel, metaData.getColumnLabel(i), i == columnCount);
+            }
+            while (rs.next()) {
+                for (int i = 1; i <= columnCount; i++) {
+                    putField(buffer, channel, rs.getString(i), i == columnCount);
+                }
+                if (++rows % PROGRESS_INTERVAL_ROWS == 0 && progress != null) {
+                    progress.accept(rows);
+                }
+            }
+            flush(buffer, channel);
+            channel.force(false);
+        }
+        return rows;
+    }
+
+    /**
+     * Appends one CSV field and its separator (a comma, or a line break after the last field).
+     */
+    private static void putField(ByteBuffer buffer, FileChannel channel, String value, boolean last) throws IOException {
+        if (value != null) {
+            boolean quoted = needsQuotes(value);
+            if (quoted) {
+                value = '"' + value.replace("\"", "\"\"") + '"';
+            }
+            // Worst case of UTF-8 is three bytes per char
+            if (buffer.remaining() < value.length() * 3 + 1) {
+                flush(buffer, channel);
+            }
+            if (buffer.remaining() < value.length() * 3 + 1) {
+                // Longer than the whole buffer; write it on its own
+                channel.write(ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8)));
+            } else {
+                putChars(buffer, value);
+            }
+        } else if (!buffer.hasRemaining()) {
+            flush(buffer, channel);
+        }
+        buffer.put((byte) (last ? '\n' : ','));
+    }
+
+    /**
+     * Encodes a string into the buffer, byte by byte for the ASCII that numbers, dates and the
+     * quality and color values consist of.
+     */
+    private static void putChars(ByteBuffer buffer, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                buffer.put(value.substring(i).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            buffer.put((byte) c);
+        }
+    }
+
+    private static boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void flush(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes the rows as a {@link ColumnarFile}, building and writing one row group at a time.
+     */
+    private static long writeColumnar(ResultSet rs, Path file, String label, LongConsumer progress)
+            throws IOException, SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        String[] names = new String[metaData.getColumnCount()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = metaData.getColumnLabel(i + 1);
+        }
+        try (ColumnarFile.Writer writer = new ColumnarFile.Writer(file, label, names, BUFFER_BYTES)) {
+            QueryResult.Builder group = new QueryResult.Builder(metaData);
+            long nextProgress = PROGRESS_INTERVAL_ROWS;
+            while (rs.next()) {
+                group.appendRow(rs);
+                if (group.getRowCount() == ROW_GROUP_ROWS) {
+                    writer.writeRowGroup(group.build());
+                    group = new QueryResult.Builder(metaData);
+                    if (progress != null && writer.getRowCount() >= nextProgress) {
+                        progress.accept(writer.getRowCount());
+                        nextProgress += PROGRESS_INTERVAL_ROWS;
+                    }
+                }
+            }
+            writer.writeRowGroup(group.build());
+            writer.finish();
+            return writer.getRowCount();
+        }
+    }
+
+    private static String describe(List<WineFilter> filters, Integer limit) {
+        String where = filters == null || filters.isEmpty() ? "all wines" : WineFilter.canonical(filters).toString();
+        return "export of " + where + (limit != null ? " limit " + limit : "");
+    }
+}
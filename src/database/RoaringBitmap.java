@@ -0,0 +1,343 @@
+package database;
+
+import java.util.Arrays;
+
+/**
+ * A compressed set of non-negative row indexes in the style of Roaring bitmaps.
+ * <p>
+ * The 32-bit row space is split into chunks of 65536 rows keyed by the high 16 bits. Each chunk
+ * stores its low 16 bits either as a sorted {@code char[]} array (sparse chunks, up to 4096
+ * values) or as a 1024-word {@code long[]} bitmap (dense chunks). AND and OR work chunk by chunk,
+ * so combining two indexes costs time proportional to their compressed size, not to the table.
+ * <p>
+ * Bitmaps are mutable while being built and treated as immutable once published.
+ */
+public final class RoaringBitmap {
+
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    private char[] keys = new char[0];
+    private Object[] containers = new Object[0]; // char[] (sorted array) or long[] (bitmap)
+    private int[] arraySizes = new int[0];        // used entries of array containers, cardinality of bitmaps
+    private int chunkCount;
+
+    /**
+     * Builds a bitmap from row indexes in ascending order.
+     *
+     * @param rows  The row indexes, sorted ascending.
+     * @param count The number of valid entries.
+     * @return The bitmap.
+     */
+    public static RoaringBitmap fromSorted(int[] rows, int count) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (int i = 0; i < count; i++) {
+            bitmap.add(rows[i]);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Adds a row index. Appending in ascending order is the fast path.
+     *
+     * @param row A non-negative row index.
+     */
+    public void add(int row) {
+        char high = (char) (row >>> 16);
+        char low = (char) row;
+        int index = chunkCount > 0 && keys[chunkCount - 1] == high ? chunkCount - 1 : findChunk(high);
+        if (index < 0) {
+            index = -index - 1;
+            insertChunk(index, high, new char[4]);
+        }
+        Object container = containers[index];
+        if (container instanceof long[]) {
+            long[] words = (long[]) container;
+            long before = words[low >>> 6];
+            words[low >>> 6] |= 1L << low;
+            if (before != words[low >>> 6]) {
+                arraySizes[index]++;
+            }
+            return;
+        }
+        char[] values = (char[]) container;
+        int size = arraySizes[index];
+        int position;
+        if (size == 0 || values[size - 1] < low) {
+            position = size;
+        } else {
+            position = Arrays.binarySearch(values, 0, size, low);
+            if (position >= 0) {
+                return; // already present
+            }
+            position = -position - 1;
+        }
+        if (size == ARRAY_MAX) {
+            long[] words = toWords(values, size);
+            words[low >>> 6] |= 1L << low;
+            containers[index] = words;
+            arraySizes[index] = size + 1;
+            return;
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.min(ARRAY_MAX, values.length * 2));
+            containers[index] = values;
+        }
+        System.arraycopy(values, position, values, position + 1, size - position);
+        values[position] = low;
+        arraySizes[index] = size + 1;
+    }
+
+    /**
+     * @param row A row index.
+     * @return True if the row is in the set.
+     */
+    public boolean contains(int row) {
+        int index = findChunk((char) (row >>> 16));
+        if (index < 0) {
+            return false;
+        }
+        char low = (char) row;
+        Object container = containers[index];
+        if (container instanceof long[]) {
+            return (((long[]) container)[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) container, 0, arraySizes[index], low) >= 0;
+    }
+
+    /**
+     * @return The number of rows in the set.
+     */
+    public int cardinality() {
+        int total = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            total += arraySizes[i];
+        }
+        return total;
+    }
+
+    /**
+     * @return The rows of the set in ascending order.
+     */
+    public int[] toArray() {
+        int[] rows = new int[cardinality()];
+        int n = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            int base = keys[i] << 16;
+            Object container = containers[i];
+            if (container instanceof long[]) {
+                long[] words = (long[]) container;
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    long word = words[w];
+                    while (word != 0) {
+                        rows[n++] = base | (w << 6) | Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                char[] values = (char[]) container;
+                for (int j = 0; j < arraySizes[i]; j++) {
+                    rows[n++] = base | values[j];
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @return A new bitmap with the rows present in both sets.
+     */
+    public RoaringBitmap and(RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < chunkCount && j < other.chunkCount) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.appendChunk(keys[i], andContainers(containers[i], arraySizes[i],
+                        other.containers[j], other.arraySizes[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return A new bitmap with the rows present in either set.
+     */
+    public RoaringBitmap or(RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < chunkCount || j < other.chunkCount) {
+            if (j == other.chunkCount || (i < chunkCount && keys[i] < other.keys[j])) {
+                result.appendChunk(keys[i], copy(containers[i], arraySizes[i]));
+                i++;
+            } else if (i == chunkCount || keys[i] > other.keys[j]) {
+                result.appendChunk(other.keys[j], copy(other.containers[j], other.arraySizes[j]));
+                j++;
+            } else {
+                long[] words = asWords(containers[i], arraySizes[i]);
+                long[] otherWords = asWords(other.containers[j], other.arraySizes[j]);
+                long[] merged = new long[BITMAP_WORDS];
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    merged[w] = words[w] | otherWords[w];
+                }
+                result.appendChunk(keys[i], compact(merged));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return Approximate heap footprint in bytes.
+     */
+    public long estimatedBytes() {
+        long bytes = keys.length * 2L + arraySizes.length * 4L;
+        for (int i = 0; i < chunkCount; i++) {
+            bytes += containers[i] instanceof long[] ? BITMAP_WORDS * 8L : ((char[]) containers[i]).length * 2L;
+        }
+        return bytes;
+    }
+
+    // -------------------------------------------------------
+    //                  Container helpers
+    // -------------------------------------------------------
+
+    /**
+     * A container together with its cardinality, as produced by the set operations.
+     */
+    private static final class Chunk {
+        private final Object container;
+        private final int size;
+
+        private Chunk(Object container, int size) {
+            this.container = container;
+            this.size = size;
+        }
+    }
+
+    private static Chunk andContainers(Object a, int sizeA, Object b, int sizeB) {
+        if (a instanceof long[] && b instanceof long[]) {
+            long[] wordsA = (long[]) a;
+            long[] wordsB = (long[]) b;
+            long[] result = new long[BITMAP_WORDS];
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                result[w] = wordsA[w] & wordsB[w];
+            }
+            return compact(result);
+        }
+        if (a instanceof long[]) {
+            return andArrayBitmap((char[]) b, sizeB, (long[]) a);
+        }
+        if (b instanceof long[]) {
+            return andArrayBitmap((char[]) a, sizeA, (long[]) b);
+        }
+        // Both sparse: merge-intersect the sorted arrays
+        char[] valuesA = (char[]) a;
+        char[] valuesB = (char[]) b;
+        char[] result = new char[Math.min(sizeA, sizeB)];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < sizeA && j < sizeB) {
+            if (valuesA[i] < valuesB[j]) {
+                i++;
+            } else if (valuesA[i] > valuesB[j]) {
+                j++;
+            } else {
+                result[n++] = valuesA[i];
+                i++;
+                j++;
+            }
+        }
+        return new Chunk(result, n);
+    }
+
+    private static Chunk andArrayBitmap(char[] values, int size, long[] words) {
+        char[] result = new char[size];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            char low = values[i];
+            if ((words[low >>> 6] & (1L << low)) != 0) {
+                result[n++] = low;
+            }
+        }
+        return new Chunk(result, n);
+    }
+
+    private static Chunk copy(Object container, int size) {
+        if (container instanceof long[]) {
+            return new Chunk(((long[]) container).clone(), size);
+        }
+        return new Chunk(Arrays.copyOf((char[]) container, size), size);
+    }
+
+    private static long[] asWords(Object container, int size) {
+        return container instanceof long[] ? (long[]) container : toWords((char[]) container, size);
+    }
+
+    private static long[] toWords(char[] values, int size) {
+        long[] words = new long[BITMAP_WORDS];
+        for (int i = 0; i < size; i++) {
+            words[values[i] >>> 6] |= 1L << values[i];
+        }
+        return words;
+    }
+
+    /**
+     * Converts a bitmap container back to a sorted array if it became sparse.
+     */
+    private static Chunk compact(long[] words) {
+        int size = 0;
+        for (long word : words) {
+            size += Long.bitCount(word);
+        }
+        if (size > ARRAY_MAX) {
+            return new Chunk(words, size);
+        }
+        char[] values = new char[size];
+        int n = 0;
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+            long word = words[w];
+            while (word != 0) {
+                values[n++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return new Chunk(values, size);
+    }
+
+    private void appendChunk(char key, Chunk chunk) {
+        if (chunk.size > 0) {
+            insertChunk(chunkCount, key, chunk.container);
+            arraySizes[chunkCount - 1] = chunk.size;
+        }
+    }
+
+    private int findChunk(char key) {
+        return Arrays.binarySearch(keys, 0, chunkCount, key);
+    }
+
+    private void insertChunk(int index, char key, Object container) {
+        if (chunkCount == keys.length) {
+            int capacity = Math.max(4, chunkCount * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+            arraySizes = Arrays.copyOf(arraySizes, capacity);
+        }
+        System.arraycopy(keys, index, keys, index + 1, chunkCount - index);
+        System.arraycopy(containers, index, containers, index + 1, chunkCount - index);
+        System.arraycopy(arraySizes, index, arraySizes, index + 1, chunkCount - index);
+        keys[index] = key;
+        containers[index] = container;
+        arraySizes[index] = 0;
+        chunkCount++;
+    }
+}
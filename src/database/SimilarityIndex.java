@@ -0,0 +1,226 @@
+package database;
+
+import java.sql.SQLException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nearest-neighbour index over the 11 physicochemical features of every wine (fixed acidity
+ * through alcohol).
+ * <p>
+ * Each feature is z-score normalized (mean 0, standard deviation 1) so that, for example,
+ * total sulfur dioxide in the hundreds does not drown out density differences in the fourth
+ * decimal. A missing value is treated as the mean. The normalized vectors are indexed in a
+ * {@link KdTree}.
+ * <p>
+ * With the in-memory store loaded its copy of the table is indexed. Otherwise the first lookup
+ * reads the whole table into a private copy (about the size of the store, plus 88 bytes per
+ * wine for the vectors), which is dropped after {@code wine.similarity.idleMillis} (default
+ * five minutes) without a lookup, or by {@link QueryHandler#releaseSimilarityIndex()}.
+ */
+final class SimilarityIndex {
+
+    private static final long IDLE_MILLIS = Long.getLong("wine.similarity.idleMillis", 5 * 60_000L);
+
+    // Built from MySQL when the in-memory store is not loaded; rebuilt when the table changes
+    private static SimilarityIndex loaded;
+    private static long loadedGeneration;
+    private static long lastUsedAt;
+    private static boolean releaseScheduled;
+
+    private final QueryResult data;
+    private final TableIndexes indexes;
+    private final Column idColumn;
+    private final double[] vectors;
+    private final int dims;
+    private final KdTree tree;
+
+    private SimilarityIndex(QueryResult data, TableIndexes indexes) {
+        this.data = data;
+        this.indexes = indexes;
+        this.idColumn = data.getColumn(data.findColumn("id"));
+
+        List<String> features = WineStatistics.NUMERIC_COLUMNS;
+        this.dims = features.size();
+        int rowCount = data.getRowCount();
+        this.vectors = new double[rowCount * dims];
+        for (int d = 0; d < dims; d++) {
+            Column column = data.getColumn(data.findColumn(features.get(d)));
+            double sum = 0;
+            int count = 0;
+            for (int row = 0; row < rowCount; row++) {
+                if (!column.isNull(row)) {
+                    sum += column.getDouble(row);
+                    count++;
+                }
+            }
+            double mean = count == 0 ? 0 : sum / count;
+            double squares = 0;
+            for (int row = 0; row < rowCount; row++) {
+                if (!column.isNull(row)) {
+                    double delta = column.getDouble(row) - mean;
+                    squares += delta * delta;
+                }
+            }
+            double stddev = count > 1 ? Math.sqrt(squares / (count - 1)) : 0;
+            double scale = stddev > 0 ? 1 / stddev : 0; // a constant feature carries no information
+            for (int row = 0; row < rowCount; row++) {
+                vectors[row * dims + d] = column.isNull(row) ? 0 : (column.getDouble(row) - mean) * scale;
+            }
+        }
+        this.tree = new KdTree(vectors, dims, rowCount);
+    }
+
+    /**
+     * Builds an index over a loaded table.
+     *
+     * @param data    The whole of wine_table.
+     * @param indexes Its filter indexes, or null.
+     * @return The index, or null if the table lacks an id or feature column.
+     */
+    static SimilarityIndex build(QueryResult data, TableIndexes indexes) {
+        if (data.findColumn("id") < 0) {
+            return null;
+        }
+        for (String feature : WineStatistics.NUMERIC_COLUMNS) {
+            int column = data.findColumn(feature);
+            if (column < 0 || !data.getColumn(column).isNumeric()) {
+                return null;
+            }
+        }
+        long start = System.nanoTime();
+        SimilarityIndex index = new SimilarityIndex(data, indexes);
+        System.out.println("Built similarity index over " + data.getRowCount() + " wines in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return index;
+    }
+
+    /**
+     * Returns the index of the in-memory store, or one built from a fresh read of the table
+     * when the store is not loaded. The latter is reused until the {@link ResultCache}
+     * generation moves, i.e. until its throttled watermark check sees the table change, so a
+     * lookup does not run a {@code COUNT(*)} of its own.
+     *
+     * @return The index, or null if the table could not be read.
+     */
+    static SimilarityIndex current() {
+        SimilarityIndex local = WineStore.similarityIndex();
+        if (local != null) {
+            return local;
+        }
+        long generation = ResultCache.tableGeneration();
+        try {
+            synchronized (SimilarityIndex.class) {
+                if (loaded == null || generation != loadedGeneration) {
+                    QueryResult data = WineStore.loadTable();
+                    loaded = build(data, TableIndexes.build(data));
+                    loadedGeneration = generation;
+                }
+                lastUsedAt = System.currentTimeMillis();
+                if (loaded != null && !releaseScheduled) {
+                    releaseScheduled = true;
+                    releaseWhenIdle(IDLE_MILLIS);
+                }
+                return loaded;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error building similarity index: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Drops the index built from MySQL, if any, so its copy of the table can be collected.
+     * The index of the in-memory store is not affected.
+     */
+    static synchronized void release() {
+        if (loaded != null) {
+            System.out.println("Released similarity index over " + loaded.data.getRowCount() + " wines");
+        }
+        loaded = null;
+    }
+
+    private static void releaseWhenIdle(long delayMillis) {
+        CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS).execute(() -> {
+            long idle;
+            synchronized (SimilarityIndex.class) {
+                idle = System.currentTimeMillis() - lastUsedAt;
+                if (loaded == null || idle >= IDLE_MILLIS) {
+                    release();
+                    releaseScheduled = false;
+                    return;
+                }
+            }
+            releaseWhenIdle(IDLE_MILLIS - idle);
+        });
+    }
+
+    /**
+     * Finds the wines most similar to a given wine.
+     *
+     * @param id      The id of the reference wine.
+     * @param k       The number of neighbours wanted.
+     * @param filters Pre-filters the neighbours must match (may be null or empty).
+     * @return The neighbours, nearest first, with a trailing {@code distance} column; empty if
+     *         the id does not exist; or null if the filters cannot be evaluated in memory.
+     */
+    QueryResult nearest(int id, int k, List<WineFilter> filters) {
+        int reference = rowOf(id);
+        if (reference < 0) {
+            return QueryResult.empty();
+        }
+        BitSet allowed = null;
+        if (filters != null && !filters.isEmpty()) {
+            int[] rows = FilterEngine.evaluate(data, filters, null, indexes);
+            if (rows == null) {
+                return null;
+            }
+            allowed = new BitSet(data.getRowCount());
+            for (int row : rows) {
+                allowed.set(row);
+            }
+        }
+
+        double[] query = new double[dims];
+        System.arraycopy(vectors, reference * dims, query, 0, dims);
+        BitSet accepted = allowed;
+        KdTree.Neighbours neighbours = tree.nearest(query, k,
+                row -> row != reference && (accepted == null || accepted.get(row)));
+
+        int[] rows = new int[neighbours.size()];
+        double[] distances = new double[neighbours.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = neighbours.point(i);
+            distances[i] = neighbours.distance(i);
+        }
+        QueryResult selected = data.select(rows);
+        Column[] columns = new Column[selected.getColumnCount() + 1];
+        for (int c = 0; c < selected.getColumnCount(); c++) {
+            columns[c] = selected.getColumn(c);
+        }
+        columns[columns.length - 1] = new Column.DoubleColumn("distance", distances, rows.length, null, 4);
+        return new QueryResult(columns);
+    }
+
+    /**
+     * @return The row holding the id, or -1. Rows are loaded in id order, so this is a binary search.
+     */
+    private int rowOf(int id) {
+        int lo = 0;
+        int hi = data.getRowCount() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int value = idColumn.getInt(mid);
+            if (value < id) {
+                lo = mid + 1;
+            } else if (value > id) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+}
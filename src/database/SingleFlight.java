@@ -0,0 +1,101 @@
+package database;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent calls: while a call for a key is running, other callers with
+ * the same key wait for it and receive the same result instead of running it again.
+ * <p>
+ * A null result means the call failed (or was cancelled by its owner's
+ * {@link QueryCoordinator.Ticket}); it is not shared. The waiting callers then elect a new leader
+ * among themselves, so a failed or superseded leader does not turn into a burst of identical
+ * calls. Only one such retry is made; if the new leader fails too, its followers fail with it.
+ * Shared results must be immutable, which {@link QueryResult} is.
+ * <p>
+ * A waiting caller gives up (returning null) as soon as its own ticket is cancelled or its thread
+ * is interrupted, instead of holding its thread until the leader finishes.
+ * <p>
+ * Disabled with {@code -Dwine.singleFlight=false}, e.g. by a load test that wants every call
+ * to reach the server.
+ */
+final class SingleFlight {
+
+    private static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("wine.singleFlight"));
+    private static final ConcurrentHashMap<String, CompletableFuture<Object>> IN_FLIGHT = new ConcurrentHashMap<>();
+    private static final long CANCEL_CHECK_MILLIS = 50;
+    private static final Object ABANDONED = new Object();
+
+    private SingleFlight() {
+    }
+
+    /**
+     * Runs the call unless an identical one is in flight, in which case waits for that one.
+     *
+     * @param key  The normalized key of the call (see {@link ResultCache#key}).
+     * @param type The result type.
+     * @param call The call; returns null on failure.
+     * @return The result of this call or of the identical one it joined, or null on failure or
+     *         if the caller's query was cancelled while waiting.
+     */
+    static <T> T execute(String key, Class<T> type, Supplier<T> call) {
+        if (!ENABLED) {
+            return call.get();
+        }
+        for (int leaderFailures = 0; ; leaderFailures++) {
+            CompletableFuture<Object> mine = new CompletableFuture<>();
+            CompletableFuture<Object> running = IN_FLIGHT.putIfAbsent(key, mine);
+            if (running == null) {
+                return lead(key, mine, call);
+            }
+            Object shared = await(running);
+            if (shared == ABANDONED) {
+                return null;
+            }
+            if (shared != null) {
+                return type.cast(shared);
+            }
+            if (leaderFailures > 0) {
+                return null; // two leaders failed in a row; the error is most likely ours too
+            }
+        }
+    }
+
+    private static <T> T lead(String key, CompletableFuture<Object> mine, Supplier<T> call) {
+        T result = null;
+        try {
+            result = call.get();
+            return result;
+        } finally {
+            IN_FLIGHT.remove(key, mine);
+            mine.complete(result);
+        }
+    }
+
+    /**
+     * Waits for the leader's result, checking the caller's ticket while waiting.
+     *
+     * @return The leader's result, or {@link #ABANDONED} if the caller stopped waiting.
+     */
+    private static Object await(CompletableFuture<Object> running) {
+        while (true) {
+            if (QueryCoordinator.isCancelled()) {
+                return ABANDONED;
+            }
+            try {
+                return running.get(CANCEL_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // check the ticket again
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return ABANDONED;
+            } catch (ExecutionException e) {
+                return null; // the leader threw; treat it like a failure
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package database;
+
+/**
+ * A sorted permutation index over one numeric column: the row ids of the column ordered by value.
+ * <p>
+ * A range predicate resolves with two binary searches to a contiguous slice of the permutation.
+ * Only the {@code int[]} of row ids is stored; the searches read values through the column, so the
+ * index costs four bytes per row.
+ */
+final class SortedIndex {
+
+    private final Column column;
+    private final int[] rowsByValue; // NULL rows excluded
+    private final int nonNullCount;
+
+    private SortedIndex(Column column, int[] rowsByValue, int nonNullCount) {
+        this.column = column;
+        this.rowsByValue = rowsByValue;
+        this.nonNullCount = nonNullCount;
+    }
+
+    /**
+     * Sorts the column's row ids by value.
+     *
+     * @param column A numeric column.
+     * @return The index.
+     */
+    static SortedIndex build(Column column) {
+        int[] sorted = column.sortedRows(); // NULLs sort last
+        int nonNull = sorted.length;
+        while (nonNull > 0 && column.isNull(sorted[nonNull - 1])) {
+            nonNull--;
+        }
+        return new SortedIndex(column, sorted, nonNull);
+    }
+
+    /**
+     * Finds the slice of the permutation holding values in {@code [min, max]}.
+     *
+     * @return {@code {from, to}}: positions {@code from} (inclusive) to {@code to} (exclusive).
+     */
+    int[] slice(double min, double max) {
+        int from = lowerBound(min);
+        int to = Math.max(from, upperBound(max));
+        return new int[]{from, to};
+    }
+
+    /**
+     * @return The row ids at positions {@code from..to-1} of the permutation, sorted by row id.
+     */
+    int[] rows(int from, int to) {
+        int[] rows = new int[to - from];
+        System.arraycopy(rowsByValue, from, rows, 0, rows.length);
+        java.util.Arrays.sort(rows);
+        return rows;
+    }
+
+    /** First position whose value is {@code >= min}. */
+    private int lowerBound(double min) {
+        int lo = 0;
+        int hi = nonNullCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (column.getDouble(rowsByValue[mid]) < min) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** First position whose value is {@code > max}. */
+    private int upperBound(double max) {
+        int lo = 0;
+        int hi = nonNullCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (column.getDouble(rowsByValue[mid]) <= max) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    long estimatedBytes() {
+        return rowsByValue.length * 4L;
+    }
+}
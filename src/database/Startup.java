@@ -0,0 +1,136 @@
+package database;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The application's startup pipeline and its cold-start measurements.
+ * <p>
+ * {@link #warmUp()} runs while the UI is being built. It connects to MySQL on several threads
+ * at once, so TLS, authentication and the driver's server-variable queries are paid in parallel
+ * instead of on the first click. It also prepares the statements of the first query on each of
+ * those pooled connections. The driver caches server-side prepared statements per connection,
+ * so the first real query skips parsing and planning.
+ * <p>
+ * Milestones are timed from JVM start and reported together once the first result is on
+ * screen. Work that is not needed for the first result is postponed with {@link #afterFirstResult}.
+ */
+public final class Startup {
+
+    private static final Duration WARM_UP_DEADLINE = Duration.ofSeconds(30);
+
+    private static final long JVM_START_MILLIS = jvmStartMillis();
+    private static final Map<String, Long> MILESTONES = new LinkedHashMap<>();
+    private static final List<Runnable> DEFERRED = new ArrayList<>();
+    private static boolean firstResultShown;
+
+    private Startup() {
+    }
+
+    /**
+     * Opens the pooled connections and prepares the startup statements on them in the background.
+     *
+     * @return A future completed when the connections are warm (also on failure, which is logged).
+     */
+    public static CompletableFuture<Void> warmUp() {
+        List<String> statements = QueryHandler.startupStatements();
+        AtomicInteger warmed = new AtomicInteger();
+        // One task per connection: each borrow finds no idle connection and opens its own
+        int connectionCount = Math.max(1, DBConnection.getPool().getMinIdle());
+        CompletableFuture<?>[] connections = new CompletableFuture<?>[connectionCount];
+        for (int i = 0; i < connections.length; i++) {
+            connections[i] = QueryExecutor.submit(() -> {
+                try (Connection conn = DBConnection.connect()) {
+                    for (String sql : statements) {
+                        // Closing a cached statement keeps it prepared on the server for reuse
+                        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                            stmt.getParameterMetaData();
+                        }
+                    }
+                    warmed.incrementAndGet();
+                } catch (SQLException e) {
+                    System.err.println("Error warming up database connection: " + e.getMessage());
+                }
+                return null;
+            }, WARM_UP_DEADLINE);
+        }
+        return CompletableFuture.allOf(connections).exceptionally(e -> null).thenRun(() ->
+                milestone("connections warm (" + warmed.get() + " x " + statements.size() + " statements)"));
+    }
+
+    /**
+     * Records that a startup phase finished.
+     *
+     * @param name The phase, e.g. "UI built".
+     */
+    public static synchronized void milestone(String name) {
+        if (!firstResultShown) {
+            MILESTONES.put(name, System.currentTimeMillis() - JVM_START_MILLIS);
+        }
+    }
+
+    /**
+     * Runs a task once the first result has been shown, or right away if it already has.
+     *
+     * @param task The task, e.g. starting a background job that would compete with the first query.
+     */
+    public static void afterFirstResult(Runnable task) {
+        synchronized (Startup.class) {
+            if (!firstResultShown) {
+                DEFERRED.add(task);
+                return;
+            }
+        }
+        task.run();
+    }
+
+    /**
+     * Records that the first query result is on screen. The first call reports the startup
+     * timeline and runs the deferred tasks; later calls do nothing.
+     */
+    public static void firstResult() {
+        List<Runnable> tasks;
+        synchronized (Startup.class) {
+            if (firstResultShown) {
+                return;
+            }
+            milestone("first result");
+            firstResultShown = true;
+            tasks = new ArrayList<>(DEFERRED);
+            DEFERRED.clear();
+
+            StringBuilder report = new StringBuilder("Cold start (ms since JVM start):");
+            for (Map.Entry<String, Long> milestone : MILESTONES.entrySet()) {
+                report.append(' ').append(milestone.getKey()).append(" @ ").append(milestone.getValue()).append(';');
+            }
+            System.out.println(report);
+        }
+        for (Runnable task : tasks) {
+            task.run();
+        }
+    }
+
+    /**
+     * @return True once the first result has been shown.
+     */
+    public static synchronized boolean isFirstResultShown() {
+        return firstResultShown;
+    }
+
+    private static long jvmStartMillis() {
+        try {
+            return ManagementFactory.getRuntimeMXBean().getStartTime();
+        } catch (RuntimeException | LinkageError e) {
+            return System.currentTimeMillis(); // java.management missing from a trimmed runtime
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package database;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The secondary indexes built over an in-memory copy of wine_table.
+ */
+final class TableIndexes {
+
+    /** Numeric columns that users filter by range. */
+    private static final List<String> RANGE_INDEXED_COLUMNS = List.of("alcohol", "pH", "density", "date");
+
+    private final Map<Column, BitmapIndex> bitmaps = new IdentityHashMap<>();
+    private final Map<Column, SortedIndex> sorted = new IdentityHashMap<>();
+
+    private TableIndexes() {
+    }
+
+    /**
+     * Builds a bitmap index for every dictionary-encoded (low-cardinality) column and a sorted
+     * permutation index for the numeric range-filtered columns.
+     *
+     * @param data The loaded table.
+     * @return The indexes.
+     */
+    static TableIndexes build(QueryResult data) {
+        TableIndexes indexes = new TableIndexes();
+        for (int i = 0; i < data.getColumnCount(); i++) {
+            Column column = data.getColumn(i);
+            if (column instanceof Column.DictionaryColumn) {
+                indexes.bitmaps.put(column, BitmapIndex.build((Column.DictionaryColumn) column));
+            }
+        }
+        for (String name : RANGE_INDEXED_COLUMNS) {
+            int index = data.findColumn(name);
+            if (index >= 0 && data.getColumn(index).isNumeric()) {
+                indexes.sorted.put(data.getColumn(index), SortedIndex.build(data.getColumn(index)));
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * @return The bitmap index of the column, or null if it has none.
+     */
+    BitmapIndex bitmapFor(Column column) {
+        return bitmaps.get(column);
+    }
+
+    /**
+     * @return The sorted index of the column, or null if it has none.
+     */
+    SortedIndex sortedFor(Column column) {
+        return sorted.get(column);
+    }
+
+    long estimatedBytes() {
+        long bytes = 0;
+        for (BitmapIndex index : bitmaps.values()) {
+            bytes += index.estimatedBytes();
+        }
+        for (SortedIndex index : sorted.values()) {
+            bytes += index.estimatedBytes();
+        }
+        return bytes;
+    }
+}
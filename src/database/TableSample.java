@@ -0,0 +1,282 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A uniform random sample of {@code wine_table} plus per-column sketches, maintained in the
+ * background so that {@link QueryHandler#estimateCustomQuery} can answer instantly on tables
+ * too large to keep in memory.
+ * <p>
+ * One streaming pass over the table feeds a reservoir of row ids (Algorithm R), a
+ * {@link HyperLogLog} distinct counter and a {@link KllSketch} quantile sketch per numeric
+ * column; the sampled rows are then fetched by primary key. Afterwards only rows above the
+ * last seen id are scanned, which keeps the reservoir uniform over an append-only table. A
+ * full rescan happens when the {@link TableWatermark} shows rows were deleted.
+ * <p>
+ * Disable with {@code -Dwine.sample=false}.
+ */
+public final class TableSample {
+
+    private static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("wine.sample"));
+    private static final int SAMPLE_SIZE = Integer.getInteger("wine.sample.size", 10_000);
+    private static final long REFRESH_INTERVAL_SECONDS = Long.getLong("wine.sample.refreshSeconds", 60L);
+    private static final int SKETCH_K = 200;
+    private static final int FETCH_CHUNK = 1000;
+    private static final double Z_95 = 1.96;
+
+    private static final String SCAN_SQL = "SELECT * FROM wine_table WHERE id > ? ORDER BY id";
+
+    private static volatile Snapshot snapshot;
+    private static ScheduledExecutorService maintainer;
+
+    // Scan state, only touched on the maintainer thread
+    private static final Random RANDOM = new Random();
+    private static int[] reservoir;
+    private static int reservoirSize;
+    private static long rowsSeen;
+    private static long lastId;
+    private static HyperLogLog[] distinctCounters;
+    private static KllSketch[] quantileSketches;
+
+    private TableSample() {
+    }
+
+    /**
+     * What the estimates are computed from: the sampled rows and the whole-table sketch
+     * summaries at one point in time.
+     */
+    private static final class Snapshot {
+        private final QueryResult rows;
+        private final long tableRows;
+        private final WineStatistics overall;
+        private final TableWatermark watermark;
+
+        private Snapshot(QueryResult rows, long tableRows, WineStatistics overall, TableWatermark watermark) {
+            this.rows = rows;
+            this.tableRows = tableRows;
+            this.overall = overall;
+            this.watermark = watermark;
+        }
+    }
+
+    /**
+     * Starts building the sample in the background and keeps it up to date afterwards.
+     * Does nothing if sampling is disabled or already started.
+     */
+    public static synchronized void start() {
+        if (!ENABLED || maintainer != null) {
+            return;
+        }
+        maintainer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "wine-sample-maintainer");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        maintainer.scheduleWithFixedDelay(TableSample::refresh, 0, REFRESH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return True if a sample is available.
+     */
+    public static boolean isReady() {
+        return snapshot != null;
+    }
+
+    /**
+     * Estimates the matches of a set of filters from the sample.
+     *
+     * @param filters The filters to AND together (may be null or empty).
+     * @return The estimate, or null if no sample is available yet or the filters cannot be
+     *         evaluated in memory.
+     */
+    static WineEstimate estimate(List<WineFilter> filters) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return null;
+        }
+        int sampleSize = current.rows.getRowCount();
+        if (filters == null || filters.isEmpty()) {
+            // Nothing to estimate: the count is known and the sketches cover every row
+            return new WineEstimate(current.tableRows, current.tableRows, current.tableRows, sampleSize,
+                    sampleSize, current.overall);
+        }
+        int[] matches = FilterEngine.evaluate(current.rows, filters, null, null);
+        if (matches == null) {
+            return null;
+        }
+        WineStatistics statistics = WineStatistics.fromColumns(current.rows, matches, null);
+        if (sampleSize >= current.tableRows) {
+            // The sample is the whole table
+            return new WineEstimate(matches.length, matches.length, matches.length, sampleSize,
+                    matches.length, statistics);
+        }
+
+        // Scale the sample proportion up to the table. The 95% Wilson score interval stays
+        // sensible for proportions near 0 or 1, and the finite population correction narrows it
+        // as the sample covers more of the table.
+        long population = current.tableRows;
+        double n = sampleSize;
+        double proportion = matches.length / n;
+        double z2 = Z_95 * Z_95;
+        double center = (proportion + z2 / (2 * n)) / (1 + z2 / n);
+        double halfWidth = Z_95 / (1 + z2 / n) * Math.sqrt(proportion * (1 - proportion) / n + z2 / (4 * n * n))
+                * Math.sqrt((population - n) / (population - 1));
+        long estimated = Math.round(proportion * population);
+        long lower = Math.max(matches.length, Math.round((center - halfWidth) * population));
+        long upper = Math.min(population - (sampleSize - matches.length),
+                Math.round((center + halfWidth) * population));
+        WineStatistics scaled = statistics.scaled(matches.length == 0 ? 0 : (double) estimated / matches.length);
+        return new WineEstimate(estimated, Math.min(lower, estimated), Math.max(upper, estimated), sampleSize,
+                matches.length, scaled);
+    }
+
+    // -------------------------------------------------------
+    //                  Maintenance
+    // -------------------------------------------------------
+
+    /**
+     * Brings the sample up to date with the table: nothing if the watermark is unchanged, a scan
+     * of the new rows if rows were only added, a full rescan otherwise.
+     */
+    private static void refresh() {
+        try {
+            TableWatermark watermark = TableWatermark.read();
+            Snapshot current = snapshot;
+            if (current != null && current.watermark.equals(watermark)) {
+                return;
+            }
+            long start = System.nanoTime();
+            boolean rebuild = reservoir == null || watermark.getRowCount() < rowsSeen
+                    || watermark.getMaxId() < lastId;
+            if (rebuild) {
+                reset();
+            }
+            long before = rowsSeen;
+            try (Connection conn = DBConnection.connectUnpooled()) {
+                scan(conn);
+                QueryResult rows = fetchSample(conn);
+                snapshot = new Snapshot(rows, rowsSeen, summarizeSketches(), watermark);
+            }
+            System.out.println((rebuild ? "Built" : "Updated") + " sample of " + reservoirSize + " wines from "
+                    + (rowsSeen - before) + " scanned rows in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (SQLException e) {
+            reservoir = null; // the scan state is unreliable after a partial scan
+            System.err.println("Error maintaining wine sample: " + e.getMessage());
+        }
+    }
+
+    private static void reset() {
+        reservoir = new int[SAMPLE_SIZE];
+        reservoirSize = 0;
+        rowsSeen = 0;
+        lastId = Long.MIN_VALUE;
+        int columns = WineStatistics.NUMERIC_COLUMNS.size();
+        distinctCounters = new HyperLogLog[columns];
+        quantileSketches = new KllSketch[columns];
+        for (int c = 0; c < columns; c++) {
+            distinctCounters[c] = new HyperLogLog();
+            quantileSketches[c] = new KllSketch(SKETCH_K);
+        }
+    }
+
+    /**
+     * Streams the rows above the last seen id into the reservoir and the sketches.
+     */
+    private static void scan(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SCAN_SQL, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            stmt.setLong(1, lastId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                int idColumn = rs.findColumn("id");
+                int[] featureColumns = new int[quantileSketches.length];
+                for (int c = 0; c < featureColumns.length; c++) {
+                    featureColumns[c] = rs.findColumn(WineStatistics.NUMERIC_COLUMNS.get(c));
+                }
+                while (rs.next()) {
+                    int id = rs.getInt(idColumn);
+                    offer(id);
+                    lastId = id;
+                    for (int c = 0; c < featureColumns.length; c++) {
+                        double value = rs.getDouble(featureColumns[c]);
+                        if (!rs.wasNull()) {
+                            distinctCounters[c].add(value);
+                            quantileSketches[c].add(value);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Algorithm R: the n-th row replaces a random slot with probability size / n, which leaves
+     * every row seen so far in the reservoir with the same probability.
+     */
+    private static void offer(int id) {
+        rowsSeen++;
+        if (reservoirSize < reservoir.length) {
+            reservoir[reservoirSize++] = id;
+            return;
+        }
+        long slot = (long) (RANDOM.nextDouble() * rowsSeen);
+        if (slot < reservoir.length) {
+            reservoir[(int) slot] = id;
+        }
+    }
+
+    /**
+     * Reads the sampled rows by primary key, in id order.
+     */
+    private static QueryResult fetchSample(Connection conn) throws SQLException {
+        int[] ids = Arrays.copyOf(reservoir, reservoirSize);
+        Arrays.sort(ids);
+        QueryResult.Builder builder = null;
+        for (int from = 0; from < ids.length; from += FETCH_CHUNK) {
+            int to = Math.min(ids.length, from + FETCH_CHUNK);
+            StringBuilder sql = new StringBuilder("SELECT * FROM wine_table WHERE id IN (");
+            for (int i = from; i < to; i++) {
+                sql.append(i == from ? "?" : ", ?");
+            }
+            sql.append(") ORDER BY id");
+            try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+                for (int i = from; i < to; i++) {
+                    stmt.setInt(i - from + 1, ids[i]);
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (builder == null) {
+                        builder = new QueryResult.Builder(rs.getMetaData());
+                    }
+                    while (rs.next()) {
+                        builder.appendRow(rs);
+                    }
+                }
+            }
+        }
+        return builder == null ? QueryResult.empty() : builder.build();
+    }
+
+    private static WineStatistics summarizeSketches() {
+        List<WineStatistics.ColumnSummary> summaries = new ArrayList<>();
+        for (int c = 0; c < quantileSketches.length; c++) {
+            summaries.add(quantileSketches[c].summarize(WineStatistics.NUMERIC_COLUMNS.get(c))
+                    .withDistinct(distinctCounters[c].estimate()));
+        }
+        Map<String, List<WineStatistics.ColumnSummary>> groups = new LinkedHashMap<>();
+        groups.put(WineStatistics.ALL_WINES, List.copyOf(summaries));
+        return new WineStatistics(null, groups);
+    }
+}
@@ -0,0 +1,83 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Objects;
+
+/**
+ * Row count and highest id of {@code wine_table}. Inserts and deletes change it, so comparing
+ * two watermarks is a cheap way to detect that cached data is stale.
+ * <p>
+ * It is not a full change marker: an in-place UPDATE, or deletes and inserts that leave the
+ * count and highest id as they were, go unnoticed. Writers in this application invalidate the
+ * caches explicitly ({@link QueryHandler#invalidateCaches()}); such writes by other clients are
+ * only picked up when cached entries expire or the in-memory store reloads for another reason.
+ * <p>
+ * Reading it runs {@code COUNT(*)}, which scans an index of the whole table; callers throttle
+ * how often they read it.
+ */
+public final class TableWatermark {
+
+    private static final String WATERMARK_SQL = "SELECT COUNT(*), MAX(id) FROM wine_table";
+
+    private final long rowCount;
+    private final long maxId;
+
+    public TableWatermark(long rowCount, long maxId) {
+        this.rowCount = rowCount;
+        this.maxId = maxId;
+    }
+
+    /**
+     * Reads the current watermark from the database.
+     *
+     * @return The watermark.
+     * @throws SQLException If the query fails.
+     */
+    public static TableWatermark read() throws SQLException {
+        try (Connection conn = DBConnection.connect();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(WATERMARK_SQL)) {
+            rs.next();
+            return new TableWatermark(rs.getLong(1), rs.getLong(2));
+        }
+    }
+
+    /**
+     * @param rows  The number of rows appended.
+     * @param maxId The highest id among them.
+     * @return The watermark after the rows were inserted, assuming nothing else changed.
+     */
+    public TableWatermark appended(int rows, long maxId) {
+        return new TableWatermark(rowCount + rows, Math.max(this.maxId, maxId));
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public long getMaxId() {
+        return maxId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof TableWatermark)) {
+            return false;
+        }
+        TableWatermark other = (TableWatermark) o;
+        return rowCount == other.rowCount && maxId == other.maxId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(rowCount, maxId);
+    }
+
+    @Override
+    public String toString() {
+        return rowCount + "@" + maxId;
+    }
+}
@@ -0,0 +1,77 @@
+package database;
+
+/**
+ * An approximate answer to a filter query, computed from {@link TableSample} in microseconds
+ * while the exact query is still running. Obtain with {@link QueryHandler#estimateCustomQuery}.
+ */
+public final class WineEstimate {
+
+    private final long estimatedCount;
+    private final long lowerBound;
+    private final long upperBound;
+    private final int sampleSize;
+    private final int sampleMatches;
+    private final WineStatistics statistics;
+
+    WineEstimate(long estimatedCount, long lowerBound, long upperBound, int sampleSize, int sampleMatches,
+                 WineStatistics statistics) {
+        this.estimatedCount = estimatedCount;
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+        this.sampleSize = sampleSize;
+        this.sampleMatches = sampleMatches;
+        this.statistics = statistics;
+    }
+
+    /**
+     * @return The estimated number of matching wines.
+     */
+    public long getEstimatedCount() {
+        return estimatedCount;
+    }
+
+    /**
+     * @return The lower end of the 95% confidence interval of the count.
+     */
+    public long getLowerBound() {
+        return lowerBound;
+    }
+
+    /**
+     * @return The upper end of the 95% confidence interval of the count.
+     */
+    public long getUpperBound() {
+        return upperBound;
+    }
+
+    /**
+     * @return True if the count is exact (no filters, or the sample is the whole table).
+     */
+    public boolean isExactCount() {
+        return lowerBound == upperBound;
+    }
+
+    /**
+     * @return The number of sampled wines the estimate is based on.
+     */
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * @return The number of sampled wines matching the filters.
+     */
+    public int getSampleMatches() {
+        return sampleMatches;
+    }
+
+    /**
+     * @return Approximate, ungrouped column statistics of the matching wines. Without filters
+     *         they come from the quantile sketches of the whole table, with exact counts and
+     *         sketched distinct counts; otherwise from the matching sampled wines, with counts
+     *         scaled to the table and unknown distinct counts.
+     */
+    public WineStatistics getStatistics() {
+        return statistics;
+    }
+}
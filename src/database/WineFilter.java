@@ -0,0 +1,361 @@
+package database;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * A typed predicate on one column of {@code wine_table}.
+ * <p>
+ * A filter renders to a SQL fragment with {@code ?} placeholders and binds its values separately,
+ * so the statement text depends only on the filter's shape (column + operator), never on the
+ * values. Together with {@code useServerPrepStmts}/{@code cachePrepStmts} this lets the driver and
+ * the server reuse one prepared statement for every filter combination of the same shape.
+ */
+public final class WineFilter {
+
+    /**
+     * The columns that can be filtered on, with their SQL spelling.
+     */
+    public enum Field {
+        ID("id", "id"),
+        QUALITY("quality", "quality"),
+        COLOR("color", "color"),
+        ALCOHOL("alcohol", "alcohol"),
+        PH("`pH`", "pH"),
+        DENSITY("density", "density"),
+        DATE("`date`", "date");
+
+        private final String sqlName;
+        private final String columnName;
+
+        Field(String sqlName, String columnName) {
+            this.sqlName = sqlName;
+            this.columnName = columnName;
+        }
+
+        public String getSqlName() {
+            return sqlName;
+        }
+
+        /**
+         * @return The plain column name, as reported in result set metadata.
+         */
+        public String getColumnName() {
+            return columnName;
+        }
+    }
+
+    /**
+     * The supported comparison operators.
+     */
+    public enum Operator {
+        EQUALS,
+        IN,
+        BETWEEN,
+        AT_LEAST,
+        AT_MOST
+    }
+
+    /**
+     * Orders filters so that the same set of filters always produces the same SQL text,
+     * no matter in which order the user applied them.
+     */
+    public static final Comparator<WineFilter> CANONICAL_ORDER = Comparator
+            .comparing(WineFilter::getField)
+            .thenComparing(WineFilter::getOperator)
+            .thenComparing(WineFilter::valuesKey);
+
+    private final Field field;
+    private final Operator operator;
+    private final Object[] values;
+
+    private WineFilter(Field field, Operator operator, Object... values) {
+        this.field = field;
+        this.operator = operator;
+        this.values = values;
+    }
+
+    // -------------------------------------------------------
+    //                  Factories
+    // -------------------------------------------------------
+
+    public static WineFilter quality(String quality) {
+        return new WineFilter(Field.QUALITY, Operator.EQUALS, Objects.requireNonNull(quality));
+    }
+
+    public static WineFilter color(String color) {
+        return new WineFilter(Field.COLOR, Operator.EQUALS, Objects.requireNonNull(color));
+    }
+
+    public static WineFilter id(int id) {
+        return new WineFilter(Field.ID, Operator.EQUALS, id);
+    }
+
+    public static WineFilter idIn(int... ids) {
+        if (ids.length == 0) {
+            throw new IllegalArgumentException("At least one ID is required.");
+        }
+        Object[] values = Arrays.stream(ids).sorted().distinct().boxed().toArray();
+        if (values.length == 1) {
+            return id((Integer) values[0]);
+        }
+        return new WineFilter(Field.ID, Operator.IN, values);
+    }
+
+    public static WineFilter idRange(int startId, int endId) {
+        return new WineFilter(Field.ID, Operator.BETWEEN, startId, endId);
+    }
+
+    /**
+     * @param min The minimum alcohol level, or null for no lower bound.
+     * @param max The maximum alcohol level, or null for no upper bound.
+     */
+    public static WineFilter alcoholRange(Double min, Double max) {
+        return range(Field.ALCOHOL, min, max);
+    }
+
+    /**
+     * @param min The minimum pH, or null for no lower bound.
+     * @param max The maximum pH, or null for no upper bound.
+     */
+    public static WineFilter phRange(Double min, Double max) {
+        return range(Field.PH, min, max);
+    }
+
+    /**
+     * @param min The minimum density, or null for no lower bound.
+     * @param max The maximum density, or null for no upper bound.
+     */
+    public static WineFilter densityRange(Double min, Double max) {
+        return range(Field.DENSITY, min, max);
+    }
+
+    /**
+     * @param start The first date (inclusive), or null for no lower bound.
+     * @param end   The last date (inclusive), or null for no upper bound.
+     */
+    public static WineFilter dateRange(LocalDate start, LocalDate end) {
+        return range(Field.DATE, start, end);
+    }
+
+    private static WineFilter range(Field field, Object min, Object max) {
+        if (min != null && max != null) {
+            return new WineFilter(field, Operator.BETWEEN, min, max);
+        } else if (min != null) {
+            return new WineFilter(field, Operator.AT_LEAST, min);
+        } else if (max != null) {
+            return new WineFilter(field, Operator.AT_MOST, max);
+        }
+        throw new IllegalArgumentException("A range needs at least one bound.");
+    }
+
+    // -------------------------------------------------------
+    //                  SQL rendering
+    // -------------------------------------------------------
+
+    /**
+     * Renders the filter as a SQL condition with {@code ?} placeholders.
+     * IN lists are padded to the next power of two so that lists of similar length
+     * share one statement shape.
+     *
+     * @return The SQL condition, e.g. {@code alcohol BETWEEN ? AND ?}.
+     */
+    public String toSql() {
+        String column = field.getSqlName();
+        switch (operator) {
+            case EQUALS:
+                return column + " = ?";
+            case IN:
+                StringJoiner placeholders = new StringJoiner(", ", column + " IN (", ")");
+                for (int i = 0; i < paddedInSize(); i++) {
+                    placeholders.add("?");
+                }
+                return placeholders.toString();
+            case BETWEEN:
+                return column + " BETWEEN ? AND ?";
+            case AT_LEAST:
+                return column + " >= ?";
+            case AT_MOST:
+                return column + " <= ?";
+            default:
+                throw new IllegalStateException("Unknown operator: " + operator);
+        }
+    }
+
+    /**
+     * Binds the filter's values to the placeholders produced by {@link #toSql()}.
+     *
+     * @param statement The statement to bind to.
+     * @param index     The index of the first placeholder of this filter.
+     * @return The index of the first placeholder after this filter.
+     * @throws SQLException If binding fails.
+     */
+    public int bind(PreparedStatement statement, int index) throws SQLException {
+        int count = operator == Operator.IN ? paddedInSize() : values.length;
+        for (int i = 0; i < count; i++) {
+            // Padding repeats the last value; duplicates do not change the IN result
+            Object value = values[Math.min(i, values.length - 1)];
+            if (value instanceof LocalDate) {
+                statement.setDate(index++, Date.valueOf((LocalDate) value));
+            } else {
+                statement.setObject(index++, value);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return The number of IN placeholders: the value count rounded up to a power of two, so
+     *         that lists of similar length share one prepared statement. Never less than the
+     *         number of values.
+     */
+    private int paddedInSize() {
+        return Math.max(values.length, Integer.highestOneBit(values.length - 1) << 1);
+    }
+
+    /**
+     * Builds a {@code SELECT * FROM wine_table} statement for the given filters and limit.
+     * Filters are rendered in {@link #CANONICAL_ORDER}, so permutations of the same filters
+     * produce identical SQL.
+     *
+     * @param filters The filters to AND together (may be null or empty).
+     * @param limit   The row limit, or null for no limit.
+     * @return The parameterized SQL text.
+     */
+    public static String buildSelect(List<WineFilter> filters, Integer limit) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM wine_table");
+        appendWhere(sql, filters);
+        if (limit != null) {
+            sql.append(" LIMIT ?");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Appends {@code WHERE ...} for the given filters in canonical order.
+     *
+     * @param sql     The statement being built.
+     * @param filters The filters to AND together (may be null or empty).
+     */
+    public static void appendWhere(StringBuilder sql, List<WineFilter> filters) {
+        appendWhere(sql, filters, new String[0]);
+    }
+
+    /**
+     * Appends {@code WHERE ...} for the given filters in canonical order, followed by extra
+     * conditions (e.g. a keyset bound such as {@code id > ?}). Placeholders in the extra
+     * conditions must be bound after {@link #bindAll}.
+     *
+     * @param sql             The statement being built.
+     * @param filters         The filters to AND together (may be null or empty).
+     * @param extraConditions Additional SQL conditions appended after the filters.
+     */
+    public static void appendWhere(StringBuilder sql, List<WineFilter> filters, String... extraConditions) {
+        StringJoiner where = new StringJoiner(" AND ", " WHERE ", "");
+        where.setEmptyValue("");
+        if (filters != null) {
+            for (WineFilter filter : canonical(filters)) {
+                where.add(filter.toSql());
+            }
+        }
+        for (String condition : extraConditions) {
+            where.add(condition);
+        }
+        sql.append(where);
+    }
+
+    /**
+     * Binds the filters (in canonical order) starting at placeholder 1.
+     *
+     * @param statement The statement built by {@link #buildSelect} or {@link #appendWhere}.
+     * @param filters   The same filters that were rendered.
+     * @return The index of the next unbound placeholder.
+     * @throws SQLException If binding fails.
+     */
+    public static int bindAll(PreparedStatement statement, List<WineFilter> filters) throws SQLException {
+        int index = 1;
+        if (filters != null) {
+            for (WineFilter filter : canonical(filters)) {
+                index = filter.bind(statement, index);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @param filters Filters in any order.
+     * @return A new list with the filters in canonical order.
+     */
+    public static List<WineFilter> canonical(List<WineFilter> filters) {
+        return filters.stream().sorted(CANONICAL_ORDER).toList();
+    }
+
+    // -------------------------------------------------------
+    //                  Accessors
+    // -------------------------------------------------------
+
+    public Field getField() {
+        return field;
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    /**
+     * @return A copy of the filter's values (Integer, Double, String or LocalDate depending on the field).
+     */
+    public Object[] getValues() {
+        return values.clone();
+    }
+
+    private String valuesKey() {
+        return Arrays.toString(values);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof WineFilter)) {
+            return false;
+        }
+        WineFilter other = (WineFilter) o;
+        return field == other.field && operator == other.operator && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(field, operator, Arrays.hashCode(values));
+    }
+
+    /**
+     * @return A readable form with the values inlined, for logging only.
+     */
+    @Override
+    public String toString() {
+        String column = field.getSqlName();
+        switch (operator) {
+            case EQUALS:
+                return column + " = " + values[0];
+            case IN:
+                return column + " IN " + Arrays.toString(values);
+            case BETWEEN:
+                return column + " BETWEEN " + values[0] + " AND " + values[1];
+            case AT_LEAST:
+                return column + " >= " + values[0];
+            case AT_MOST:
+                return column + " <= " + values[0];
+            default:
+                return column + " " + operator + " " + Arrays.toString(values);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package database;
+
+import java.util.List;
+
+/**
+ * One page of matching wines in id order, together with the keyset cursor needed to move to the
+ * neighbouring pages.
+ * <p>
+ * The cursor is just the first and last id on the page: the next page is
+ * {@code id > lastId ORDER BY id} and the previous one {@code id < firstId ORDER BY id DESC},
+ * both served by the primary key, so page 1000 costs the same as page 1. Obtain pages from
+ * {@link QueryHandler#firstPage}, {@link QueryHandler#nextPage} and
+ * {@link QueryHandler#previousPage}.
+ */
+public final class WinePage {
+
+    private final List<WineFilter> filters;
+    private final int pageSize;
+    private final int pageNumber;
+    private final QueryResult rows;
+    private final boolean hasPrevious;
+    private final boolean hasNext;
+
+    WinePage(List<WineFilter> filters, int pageSize, int pageNumber, QueryResult rows,
+             boolean hasPrevious, boolean hasNext) {
+        this.filters = filters;
+        this.pageSize = pageSize;
+        this.pageNumber = pageNumber;
+        this.rows = rows;
+        this.hasPrevious = hasPrevious;
+        this.hasNext = hasNext;
+    }
+
+    /**
+     * @return The filters every page of this sequence is restricted to.
+     */
+    public List<WineFilter> getFilters() {
+        return filters;
+    }
+
+    /**
+     * @return The maximum number of rows per page.
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return The zero-based position of this page, counted from the first page.
+     */
+    public int getPageNumber() {
+        return pageNumber;
+    }
+
+    /**
+     * @return The wines on this page, in id order.
+     */
+    public QueryResult getRows() {
+        return rows;
+    }
+
+    public boolean hasPrevious() {
+        return hasPrevious;
+    }
+
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    /**
+     * @return The id of the first wine on the page, or null if the page is empty.
+     */
+    Integer getFirstId() {
+        return idAt(0);
+    }
+
+    /**
+     * @return The id of the last wine on the page, or null if the page is empty.
+     */
+    Integer getLastId() {
+        return idAt(rows.getRowCount() - 1);
+    }
+
+    private Integer idAt(int row) {
+        int idColumn = rows.findColumn("id");
+        if (idColumn < 0 || row < 0 || row >= rows.getRowCount()) {
+            return null;
+        }
+        return rows.getColumn(idColumn).getInt(row);
+    }
+}
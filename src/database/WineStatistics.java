@@ -0,0 +1,481 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+/**
+ * Summary statistics of the numeric columns of the wines matching a set of filters, optionally
+ * per quality or color group. Obtain with {@link QueryHandler#computeStatistics}.
+ * <p>
+ * In memory, every summary is computed exactly from the column's value distribution (each
+ * distinct value with its number of occurrences). From MySQL, the columns are DECIMALs with close
+ * to one distinct value per wine, so the server groups each column into a bounded number of
+ * equal-width buckets instead: count, distinct count, min, max, mean and standard deviation are
+ * still exact, while percentiles and the histogram are interpolated within the buckets.
+ */
+public final class WineStatistics {
+
+    /** The columns summarized, in table order. */
+    public static final List<String> NUMERIC_COLUMNS = List.of(
+            "fixed_acidity", "volatile_acidity", "citric_acid", "residual_sugar", "chlorides",
+            "free_sulfur_dioxide", "total_sulfur_dioxide", "density", "pH", "sulphates", "alcohol");
+
+    /** The percentiles reported for each column, as fractions. */
+    public static final double[] PERCENTILES = {0.05, 0.25, 0.50, 0.75, 0.95};
+
+    /** The number of equal-width histogram bins between a column's min and max. */
+    public static final int HISTOGRAM_BINS = 10;
+
+    /** The group name used when the statistics are not grouped. */
+    public static final String ALL_WINES = "All wines";
+
+    private final WineFilter.Field groupBy;
+    private final Map<String, List<ColumnSummary>> groups;
+
+    WineStatistics(WineFilter.Field groupBy, Map<String, List<ColumnSummary>> groups) {
+        this.groupBy = groupBy;
+        this.groups = Collections.unmodifiableMap(groups);
+    }
+
+    /**
+     * @return The grouping column, or null if the statistics cover all matching wines at once.
+     */
+    public WineFilter.Field getGroupBy() {
+        return groupBy;
+    }
+
+    /**
+     * @return The summaries of each group, in group order; a single {@link #ALL_WINES} group
+     *         when not grouped.
+     */
+    public Map<String, List<ColumnSummary>> getGroups() {
+        return groups;
+    }
+
+    /**
+     * Checks that a grouping column is supported.
+     *
+     * @param groupBy The grouping column, or null.
+     * @throws IllegalArgumentException If it is neither quality nor color.
+     */
+    static void checkGroupBy(WineFilter.Field groupBy) {
+        if (groupBy != null && groupBy != WineFilter.Field.QUALITY && groupBy != WineFilter.Field.COLOR) {
+            throw new IllegalArgumentException("Statistics can only be grouped by quality or color.");
+        }
+    }
+
+    /**
+     * @param factor The population size divided by the sample size.
+     * @return The statistics with every summary {@link ColumnSummary#scaled scaled} by the factor.
+     */
+    WineStatistics scaled(double factor) {
+        Map<String, List<ColumnSummary>> scaledGroups = new LinkedHashMap<>();
+        for (Map.Entry<String, List<ColumnSummary>> group : groups.entrySet()) {
+            List<ColumnSummary> summaries = new ArrayList<>();
+            for (ColumnSummary summary : group.getValue()) {
+                summaries.add(summary.scaled(factor));
+            }
+            scaledGroups.put(group.getKey(), List.copyOf(summaries));
+        }
+        return new WineStatistics(groupBy, scaledGroups);
+    }
+
+    // -------------------------------------------------------
+    //                  Column summaries
+    // -------------------------------------------------------
+
+    /**
+     * Count, extremes, moments, percentiles and histogram of one numeric column (NULLs excluded).
+     */
+    public static final class ColumnSummary {
+        private final String column;
+        private final long count;
+        private final long distinct;
+        private final double min;
+        private final double max;
+        private final double mean;
+        private final double stddev;
+        private final double[] percentiles;
+        private final long[] histogram;
+
+        private ColumnSummary(String column, long count, long distinct, double min, double max, double mean,
+                              double stddev, double[] percentiles, long[] histogram) {
+            this.column = column;
+            this.count = count;
+            this.distinct = distinct;
+            this.min = min;
+            this.max = max;
+            this.mean = mean;
+            this.stddev = stddev;
+            this.percentiles = percentiles;
+            this.histogram = histogram;
+        }
+
+        /**
+         * Summarizes a value distribution.
+         *
+         * @param column The column name.
+         * @param values The distinct values, ascending.
+         * @param counts The number of occurrences of each value.
+         * @param size   The number of valid entries.
+         * @return The summary; all measures are NaN when there are no values.
+         */
+        static ColumnSummary of(String column, double[] values, long[] counts, int size) {
+            long count = 0;
+            double sum = 0;
+            for (int i = 0; i < size; i++) {
+                count += counts[i];
+                sum += values[i] * counts[i];
+            }
+            if (count == 0) {
+                double[] none = new double[PERCENTILES.length];
+                Arrays.fill(none, Double.NaN);
+                return new ColumnSummary(column, 0, 0, Double.NaN, Double.NaN, Double.NaN, Double.NaN,
+                        none, new long[HISTOGRAM_BINS]);
+            }
+            double mean = sum / count;
+            double squares = 0; // second pass: numerically stable sample variance
+            for (int i = 0; i < size; i++) {
+                double delta = values[i] - mean;
+                squares += delta * delta * counts[i];
+            }
+            double stddev = count > 1 ? Math.sqrt(squares / (count - 1)) : 0;
+
+            double min = values[0];
+            double max = values[size - 1];
+            double[] percentiles = new double[PERCENTILES.length];
+            for (int p = 0; p < PERCENTILES.length; p++) {
+                percentiles[p] = percentile(values, counts, size, count, PERCENTILES[p]);
+            }
+
+            long[] histogram = new long[HISTOGRAM_BINS];
+            double width = (max - min) / HISTOGRAM_BINS;
+            for (int i = 0; i < size; i++) {
+                int bin = width == 0 ? 0 : (int) ((values[i] - min) / width);
+                histogram[Math.min(bin, HISTOGRAM_BINS - 1)] += counts[i];
+            }
+            return new ColumnSummary(column, count, size, min, max, mean, stddev, percentiles, histogram);
+        }
+
+        /**
+         * Summarizes a bucketed distribution. The count, distinct count, extremes and moments are
+         * exact; percentiles assume the values of a bucket are spread evenly between its extremes,
+         * and each bucket falls in the histogram bin of its mean.
+         *
+         * @param column   The column name.
+         * @param counts   The number of values in each bucket, buckets ascending and non-empty.
+         * @param distinct The number of distinct values in each bucket.
+         * @param lo       The smallest value of each bucket.
+         * @param hi       The largest value of each bucket.
+         * @param means    The mean of each bucket.
+         * @param vars     The population variance of each bucket.
+         * @return The summary.
+         */
+        static ColumnSummary ofBuckets(String column, long[] counts, long[] distinct, double[] lo, double[] hi,
+                                       double[] means, double[] vars) {
+            int size = counts.length;
+            long count = 0;
+            long distinctCount = 0;
+            double sum = 0;
+            for (int i = 0; i < size; i++) {
+                count += counts[i];
+                distinctCount += distinct[i];
+                sum += means[i] * counts[i];
+            }
+            if (count == 0) {
+                return of(column, new double[0], new long[0], 0);
+            }
+            double mean = sum / count;
+            double squares = 0; // within-bucket plus between-bucket sums of squares
+            for (int i = 0; i < size; i++) {
+                double delta = means[i] - mean;
+                squares += (vars[i] + delta * delta) * counts[i];
+            }
+            double stddev = count > 1 ? Math.sqrt(squares / (count - 1)) : 0;
+
+            double min = lo[0];
+            double max = hi[size - 1];
+            double[] percentiles = new double[PERCENTILES.length];
+            for (int p = 0; p < PERCENTILES.length; p++) {
+                double rank = PERCENTILES[p] * (count - 1);
+                long lowerRank = (long) Math.floor(rank);
+                double lower = bucketValueAtRank(counts, lo, hi, lowerRank);
+                double upper = bucketValueAtRank(counts, lo, hi, Math.min(lowerRank + 1, count - 1));
+                percentiles[p] = lower + (upper - lower) * (rank - lowerRank);
+            }
+
+            long[] histogram = new long[HISTOGRAM_BINS];
+            double width = (max - min) / HISTOGRAM_BINS;
+            for (int i = 0; i < size; i++) {
+                int bin = width == 0 ? 0 : (int) ((means[i] - min) / width);
+                histogram[Math.max(0, Math.min(bin, HISTOGRAM_BINS - 1))] += counts[i];
+            }
+            return new ColumnSummary(column, count, distinctCount, min, max, mean, stddev, percentiles, histogram);
+        }
+
+        private static double bucketValueAtRank(long[] counts, double[] lo, double[] hi, long rank) {
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (rank < seen + counts[i]) {
+                    return counts[i] == 1 ? lo[i] : lo[i] + (hi[i] - lo[i]) * (rank - seen) / (counts[i] - 1);
+                }
+                seen += counts[i];
+            }
+            return hi[counts.length - 1];
+        }
+
+        /**
+         * Scales a summary of sampled rows up to the population they were drawn from: the count
+         * and histogram are multiplied, the distinct count becomes unknown.
+         *
+         * @param factor The population size divided by the sample size.
+         * @return The scaled summary.
+         */
+        ColumnSummary scaled(double factor) {
+            long[] bins = new long[histogram.length];
+            for (int i = 0; i < bins.length; i++) {
+                bins[i] = Math.round(histogram[i] * factor);
+            }
+            return new ColumnSummary(column, Math.round(count * factor), -1, min, max, mean, stddev,
+                    percentiles, bins);
+        }
+
+        /**
+         * @param estimate A distinct count estimated elsewhere (e.g. by a sketch).
+         * @return A copy of the summary with that distinct count.
+         */
+        ColumnSummary withDistinct(long estimate) {
+            return new ColumnSummary(column, count, estimate, min, max, mean, stddev, percentiles, histogram);
+        }
+
+        /**
+         * Interpolates between the two values around rank {@code fraction * (count - 1)}, like
+         * {@code PERCENTILE_CONT}.
+         */
+        private static double percentile(double[] values, long[] counts, int size, long count, double fraction) {
+            double rank = fraction * (count - 1);
+            long lowerRank = (long) Math.floor(rank);
+            double lower = valueAtRank(values, counts, size, lowerRank);
+            double upper = valueAtRank(values, counts, size, Math.min(lowerRank + 1, count - 1));
+            return lower + (upper - lower) * (rank - lowerRank);
+        }
+
+        private static double valueAtRank(double[] values, long[] counts, int size, long rank) {
+            long seen = 0;
+            for (int i = 0; i < size; i++) {
+                seen += counts[i];
+                if (rank < seen) {
+                    return values[i];
+                }
+            }
+            return values[size - 1];
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return The number of distinct values, or -1 if unknown.
+         */
+        public long getDistinct() {
+            return distinct;
+        }
+
+        public double getMin() {
+            return min;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        /**
+         * @return The sample standard deviation.
+         */
+        public double getStddev() {
+            return stddev;
+        }
+
+        /**
+         * @return The values at {@link #PERCENTILES}, in the same order.
+         */
+        public double[] getPercentiles() {
+            return percentiles.clone();
+        }
+
+        /**
+         * @return The number of values in each of {@link #HISTOGRAM_BINS} equal-width bins from
+         *         min to max (the last bin includes max).
+         */
+        public long[] getHistogram() {
+            return histogram.clone();
+        }
+    }
+
+    // -------------------------------------------------------
+    //                  From MySQL buckets
+    // -------------------------------------------------------
+
+    /**
+     * Builds the statistics from per-column bucketed distributions computed by MySQL, each with
+     * the columns {@code [grp,] bucket, n, n_distinct, lo, hi, mean, var} ordered by group and
+     * bucket, where the buckets are disjoint ascending value ranges.
+     *
+     * @param groupBy The grouping column, or null.
+     * @param buckets The buckets of each column in {@link #NUMERIC_COLUMNS}.
+     * @return The statistics.
+     */
+    static WineStatistics fromBuckets(WineFilter.Field groupBy, Map<String, QueryResult> buckets) {
+        Map<String, Map<String, ColumnSummary>> byGroup = new TreeMap<>();
+        if (groupBy == null) {
+            byGroup.put(ALL_WINES, new HashMap<>());
+        }
+        int first = groupBy == null ? 1 : 2;
+        for (Map.Entry<String, QueryResult> entry : buckets.entrySet()) {
+            QueryResult distribution = entry.getValue();
+            int rowCount = distribution.getRowCount();
+            int start = 0;
+            while (start < rowCount) {
+                String group = groupBy == null ? ALL_WINES : distribution.getValueAt(start, 0);
+                int end = start + 1;
+                while (end < rowCount && (groupBy == null || group.equals(distribution.getValueAt(end, 0)))) {
+                    end++;
+                }
+                int size = end - start;
+                long[] counts = new long[size];
+                long[] distinct = new long[size];
+                double[][] measures = new double[4][size]; // lo, hi, mean, var
+                for (int row = start; row < end; row++) {
+                    counts[row - start] = (long) distribution.getColumn(first).getDouble(row);
+                    distinct[row - start] = (long) distribution.getColumn(first + 1).getDouble(row);
+                    for (int m = 0; m < measures.length; m++) {
+                        measures[m][row - start] = distribution.getColumn(first + 2 + m).getDouble(row);
+                    }
+                }
+                byGroup.computeIfAbsent(group, g -> new HashMap<>())
+                        .put(entry.getKey(), ColumnSummary.ofBuckets(entry.getKey(), counts, distinct,
+                                measures[0], measures[1], measures[2], measures[3]));
+                start = end;
+            }
+        }
+
+        Map<String, List<ColumnSummary>> groups = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, ColumnSummary>> group : byGroup.entrySet()) {
+            List<ColumnSummary> summaries = new ArrayList<>();
+            for (String column : NUMERIC_COLUMNS) {
+                ColumnSummary summary = group.getValue().get(column);
+                summaries.add(summary != null ? summary : ColumnSummary.of(column, new double[0], new long[0], 0));
+            }
+            groups.put(group.getKey(), List.copyOf(summaries));
+        }
+        return new WineStatistics(groupBy, groups);
+    }
+
+    // -------------------------------------------------------
+    //                  In-memory computation
+    // -------------------------------------------------------
+
+    /**
+     * Computes the statistics of selected rows of an in-memory table, one task per group and
+     * column in parallel.
+     *
+     * @param data    The table.
+     * @param rows    The matching rows.
+     * @param groupBy The grouping column, or null.
+     * @return The statistics.
+     */
+    static WineStatistics fromColumns(QueryResult data, int[] rows, WineFilter.Field groupBy) {
+        checkGroupBy(groupBy);
+        Map<String, int[]> groupRows = groupRows(data, rows, groupBy);
+        List<String> groupNames = new ArrayList<>(groupRows.keySet());
+        List<Column> columns = new ArrayList<>();
+        for (String name : NUMERIC_COLUMNS) {
+            int index = data.findColumn(name);
+            if (index >= 0 && data.getColumn(index).isNumeric()) {
+                columns.add(data.getColumn(index));
+            }
+        }
+
+        int columnCount = columns.size();
+        ColumnSummary[] summaries = new ColumnSummary[groupNames.size() * columnCount];
+        IntStream.range(0, summaries.length).parallel().forEach(task -> {
+            int[] members = groupRows.get(groupNames.get(task / columnCount));
+            summaries[task] = summarize(columns.get(task % columnCount), members);
+        });
+
+        Map<String, List<ColumnSummary>> groups = new LinkedHashMap<>();
+        for (int g = 0; g < groupNames.size(); g++) {
+            groups.put(groupNames.get(g), List.of(Arrays.copyOfRange(summaries, g * columnCount, (g + 1) * columnCount)));
+        }
+        return new WineStatistics(groupBy, groups);
+    }
+
+    private static Map<String, int[]> groupRows(QueryResult data, int[] rows, WineFilter.Field groupBy) {
+        Map<String, int[]> groups = new TreeMap<>();
+        int groupColumn = groupBy == null ? -1 : data.findColumn(groupBy.getColumnName());
+        if (groupColumn < 0) {
+            groups.put(ALL_WINES, rows);
+            return groups;
+        }
+        Column key = data.getColumn(groupColumn);
+        Map<String, int[]> buffers = new HashMap<>();
+        Map<String, Integer> sizes = new HashMap<>();
+        for (int row : rows) {
+            String name = key.getString(row);
+            int[] buffer = buffers.computeIfAbsent(name, k -> new int[16]);
+            int size = sizes.getOrDefault(name, 0);
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, size * 2);
+                buffers.put(name, buffer);
+            }
+            buffer[size] = row;
+            sizes.put(name, size + 1);
+        }
+        for (Map.Entry<String, int[]> entry : buffers.entrySet()) {
+            groups.put(entry.getKey(), Arrays.copyOf(entry.getValue(), sizes.get(entry.getKey())));
+        }
+        return groups;
+    }
+
+    /**
+     * Sorts the non-NULL values of the rows and run-length encodes them into a distribution.
+     */
+    private static ColumnSummary summarize(Column column, int[] rows) {
+        double[] sorted = new double[rows.length];
+        int n = 0;
+        for (int row : rows) {
+            if (!column.isNull(row)) {
+                sorted[n++] = column.getDouble(row);
+            }
+        }
+        Arrays.sort(sorted, 0, n);
+        double[] values = new double[n];
+        long[] counts = new long[n];
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct > 0 && values[distinct - 1] == sorted[i]) {
+                counts[distinct - 1]++;
+            } else {
+                values[distinct] = sorted[i];
+                counts[distinct++] = 1;
+            }
+        }
+        return ColumnSummary.of(column.getName(), values, counts, distinct);
+    }
+}
@@ -0,0 +1,262 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An optional in-memory, columnar copy of {@code wine_table}.
+ * <p>
+ * Once enabled, the table is loaded in the background and kept in sync by polling a cheap
+ * {@link TableWatermark}; when it changes, the copy is reloaded, its
+ * indexes are rebuilt, and both are swapped in atomically. Filters are evaluated locally by
+ * {@link FilterEngine}, using bitmap indexes for quality and color and sorted
+ * range indexes for alcohol, pH, density and date. MySQL stays the source
+ * of truth: whenever the store is disabled, not loaded yet, or cannot evaluate a filter,
+ * {@link #query} returns null and the caller falls back to the database.
+ * <p>
+ * Off by default, since it holds the whole table on the heap. Enable it at startup with
+ * {@code -Dwine.inMemory=true}, or at runtime with {@link #enable()}.
+ */
+public class WineStore {
+
+    private static final boolean ENABLED_AT_STARTUP = "true".equalsIgnoreCase(System.getProperty("wine.inMemory"));
+    private static final long SYNC_INTERVAL_SECONDS = Long.getLong("wine.inMemory.syncSeconds", 30L);
+
+    private static final String LOAD_SQL = "SELECT * FROM wine_table ORDER BY id";
+    private static final ChangePoller.Listener INSERT_LISTENER = WineStore::rowsInserted;
+
+    private static volatile Snapshot snapshot;
+    private static ScheduledExecutorService syncer;
+
+    /**
+     * An immutable loaded copy of the table together with the watermark it was loaded at.
+     */
+    private static final class Snapshot {
+        private final QueryResult data;
+        private final TableIndexes indexes;
+        private final TableWatermark watermark;
+        private SimilarityIndex similarity; // built on first use
+
+        private Snapshot(QueryResult data, TableIndexes indexes, TableWatermark watermark) {
+            this.data = data;
+            this.indexes = indexes;
+            this.watermark = watermark;
+        }
+
+        private synchronized SimilarityIndex similarityIndex() {
+            if (similarity == null) {
+                similarity = SimilarityIndex.build(data, indexes);
+            }
+            return similarity;
+        }
+    }
+
+    /**
+     * Enables the store if {@code -Dwine.inMemory=true} was given. Called once at startup.
+     */
+    public static void start() {
+        if (ENABLED_AT_STARTUP) {
+            enable();
+        }
+    }
+
+    /**
+     * Starts loading the table in the background and keeps it in sync afterwards.
+     * Does nothing if the store is already enabled.
+     */
+    public static synchronized void enable() {
+        if (syncer != null) {
+            return;
+        }
+        syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "wine-store-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        syncer.scheduleWithFixedDelay(WineStore::sync, 0, SYNC_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        ChangePoller.addListener(INSERT_LISTENER);
+    }
+
+    /**
+     * Stops syncing and drops the loaded copy; queries go to MySQL again.
+     */
+    public static synchronized void disable() {
+        if (syncer == null) {
+            return;
+        }
+        syncer.shutdownNow();
+        syncer = null;
+        ChangePoller.removeListener(INSERT_LISTENER);
+        snapshot = null;
+    }
+
+    /**
+     * @return True if the store is enabled (its copy may still be loading).
+     */
+    public static synchronized boolean isEnabled() {
+        return syncer != null;
+    }
+
+    /**
+     * @return True if a copy of the table is loaded and queries can be served from memory.
+     */
+    public static boolean isLoaded() {
+        return snapshot != null;
+    }
+
+    /**
+     * Evaluates the filters against the in-memory copy.
+     *
+     * @param filters The filters to AND together (may be null or empty).
+     * @param limit   The LIMIT value, or null if not applicable.
+     * @return The matching wines in id order, or null if the query must go to MySQL.
+     */
+    public static QueryResult query(List<WineFilter> filters, Integer limit) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        int[] rows = FilterEngine.evaluate(current.data, filters, limit, current.indexes);
+        if (rows == null) {
+            return null;
+        }
+        QueryResult result = rows.length == current.data.getRowCount() ? current.data : current.data.select(rows);
+        System.out.println("Served from in-memory store: " + rows.length + " rows in "
+                + (System.nanoTime() - start) / 1_000 + " us");
+        return result;
+    }
+
+    /**
+     * Computes summary statistics of the matching wines from the in-memory columns.
+     *
+     * @param filters The filters to AND together (may be null or empty).
+     * @param groupBy Quality, color, or null for no grouping.
+     * @return The statistics, or null if they must be computed by MySQL.
+     */
+    static WineStatistics statistics(List<WineFilter> filters, WineFilter.Field groupBy) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        int[] rows = FilterEngine.evaluate(current.data, filters, null, current.indexes);
+        if (rows == null) {
+            return null;
+        }
+        WineStatistics statistics = WineStatistics.fromColumns(current.data, rows, groupBy);
+        System.out.println("Computed statistics of " + rows.length + " wines in memory in "
+                + (System.nanoTime() - start) / 1_000 + " us");
+        return statistics;
+    }
+
+    /**
+     * @return The nearest-neighbour index over the in-memory copy, built on first use, or null
+     *         if the store is not loaded.
+     */
+    static SimilarityIndex similarityIndex() {
+        Snapshot current = snapshot;
+        return current == null ? null : current.similarityIndex();
+    }
+
+    /**
+     * Drops the in-memory copy so queries go to MySQL until the next sync reloads it.
+     * Call after writing to wine_table.
+     */
+    public static void invalidate() {
+        synchronized (WineStore.class) {
+            snapshot = null;
+        }
+        ScheduledExecutorService current = syncer;
+        if (current != null) {
+            current.execute(WineStore::sync);
+        }
+    }
+
+    /**
+     * Extends the loaded copy with newly inserted rows and rebuilds the indexes in memory, so
+     * that an append-only table never has to be reloaded. If the copy is missing rows below
+     * the delta it is left alone; the next sync sees the watermark mismatch and reloads. Late
+     * rows belong in the middle of the copy, so they trigger that sync right away; it reloads
+     * only if the copy does not hold them yet.
+     */
+    private static void rowsInserted(long afterId, QueryResult rows) {
+        Snapshot current = snapshot;
+        if (current == null || current.watermark.getMaxId() < afterId) {
+            return;
+        }
+        if (FilterEngine.idsAbove(rows, afterId).length < rows.getRowCount()) {
+            ScheduledExecutorService sync = syncer;
+            if (sync != null) {
+                sync.execute(WineStore::sync);
+            }
+        }
+        long start = System.nanoTime();
+        // The copy may already hold some of the rows if it was loaded after the poll read them
+        int idColumn = current.data.findColumn("id");
+        int lastId = Math.max(current.data.maxInt(idColumn), (int) current.watermark.getMaxId());
+        QueryResult newRows = rows.select(FilterEngine.idsAbove(rows, lastId));
+        if (newRows.getRowCount() == 0) {
+            return;
+        }
+        QueryResult data = current.data.append(newRows);
+        TableIndexes indexes = TableIndexes.build(data);
+        TableWatermark watermark = new TableWatermark(data.getRowCount(), data.maxInt(idColumn));
+        synchronized (WineStore.class) {
+            if (snapshot != current) {
+                return; // reloaded or invalidated meanwhile
+            }
+            snapshot = new Snapshot(data, indexes, watermark);
+        }
+        System.out.println("Appended " + newRows.getRowCount() + " wines to the in-memory store in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Reloads the table if its watermark changed since the last load.
+     */
+    private static void sync() {
+        try {
+            TableWatermark watermark = TableWatermark.read();
+            Snapshot current = snapshot;
+            if (current != null && current.watermark.equals(watermark)) {
+                return;
+            }
+            long start = System.nanoTime();
+            QueryResult data = loadTable();
+            TableIndexes indexes = TableIndexes.build(data);
+            synchronized (WineStore.class) {
+                if (syncer == null) {
+                    return; // disabled while loading
+                }
+                snapshot = new Snapshot(data, indexes, watermark);
+            }
+            System.out.println("Loaded " + data.getRowCount() + " wines into memory ("
+                    + data.estimatedBytes() / 1024 + " KB data, "
+                    + indexes.estimatedBytes() / 1024 + " KB indexes) in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (SQLException e) {
+            System.err.println("Error syncing in-memory wine store: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the whole table in id order, streaming rows from the server.
+     */
+    static QueryResult loadTable() throws SQLException {
+        try (Connection conn = DBConnection.connect();
+             Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Stream rows instead of letting the driver buffer the whole table a second time
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet rs = stmt.executeQuery(LOAD_SQL)) {
+                return QueryResult.fromResultSet(rs);
+            }
+        }
+    }
+}
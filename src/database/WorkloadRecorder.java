@@ -0,0 +1,142 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts how often each filter combination reaches MySQL and how long it takes there, for
+ * {@link IndexAdvisor}.
+ * <p>
+ * Queries are grouped by shape: the parameterized statement, so a {@code SELECT *}, a
+ * {@code COUNT(*)}, a keyset page and a statistics query with the same filters are kept apart
+ * (they use an index differently and take very different times). Each shape also knows its
+ * WHERE clause with {@code ?} placeholders, which is what an index has to serve. Only server
+ * executions are recorded, timed from sending the statement to reading its last row; answers
+ * from the result cache or the in-memory store never touch an index.
+ * <p>
+ * Disable with {@code -Dwine.workload=false}.
+ */
+final class WorkloadRecorder {
+
+    private static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("wine.workload"));
+
+    private static final ConcurrentHashMap<String, Shape> SHAPES = new ConcurrentHashMap<>();
+
+    private WorkloadRecorder() {
+    }
+
+    /**
+     * The executions of one filter shape.
+     */
+    static final class Shape {
+        private final String sql;
+        private final String where;
+        private long executions;
+        private long totalNanos;
+        private long maxNanos;
+        private List<WineFilter> slowestFilters;
+        private Object[] slowestTrailing;
+
+        private Shape(String sql, String where) {
+            this.sql = sql;
+            this.where = where;
+        }
+
+        private synchronized void record(List<WineFilter> filters, Object[] trailing, long nanos) {
+            executions++;
+            totalNanos += nanos;
+            if (nanos >= maxNanos) {
+                maxNanos = nanos;
+                slowestFilters = filters;
+                slowestTrailing = trailing;
+            }
+        }
+
+        /**
+         * @return The parameterized statement, filter placeholders first.
+         */
+        String getSql() {
+            return sql;
+        }
+
+        /**
+         * @return The WHERE clause of the shape, e.g. {@code quality = ? AND alcohol BETWEEN ? AND ?}.
+         */
+        String getWhere() {
+            return where;
+        }
+
+        synchronized long getExecutions() {
+            return executions;
+        }
+
+        synchronized double getMeanMillis() {
+            return executions == 0 ? 0 : totalNanos / 1e6 / executions;
+        }
+
+        synchronized double getMaxMillis() {
+            return maxNanos / 1e6;
+        }
+
+        /**
+         * @return The filters of the slowest execution, used to EXPLAIN and time the shape.
+         */
+        synchronized List<WineFilter> getSlowestFilters() {
+            return slowestFilters;
+        }
+
+        /**
+         * @return The values bound after the filters in the slowest execution (e.g. a LIMIT).
+         */
+        synchronized Object[] getSlowestTrailing() {
+            return slowestTrailing.clone();
+        }
+    }
+
+    /**
+     * Records one execution on the server.
+     *
+     * @param sql      The parameterized statement; must not inline values, or every execution
+     *                 becomes a shape of its own.
+     * @param filters  The filters bound to the statement (null or empty for an unfiltered query).
+     * @param trailing The values bound after the filters.
+     * @param nanos    The time from sending the statement to reading its last row, excluding
+     *                 whatever the caller did with the rows meanwhile.
+     */
+    static void record(String sql, List<WineFilter> filters, Object[] trailing, long nanos) {
+        if (!ENABLED || filters == null || filters.isEmpty()) {
+            return; // an unfiltered query reads everything; no index helps
+        }
+        List<WineFilter> copy = List.copyOf(filters);
+        SHAPES.computeIfAbsent(sql, key -> new Shape(key, shapeOf(copy))).record(copy, trailing.clone(), nanos);
+    }
+
+    /**
+     * @return The recorded shapes, most total time first.
+     */
+    static List<Shape> shapes() {
+        List<Shape> shapes = new ArrayList<>(SHAPES.values());
+        shapes.sort((a, b) -> Double.compare(b.getMeanMillis() * b.getExecutions(), a.getMeanMillis() * a.getExecutions()));
+        return shapes;
+    }
+
+    /**
+     * Forgets the history of every shape with a WHERE clause, e.g. after an index changed how
+     * they execute.
+     *
+     * @param where The shapes' WHERE clause.
+     */
+    static void reset(String where) {
+        SHAPES.values().removeIf(shape -> shape.where.equals(where));
+    }
+
+    private static String shapeOf(List<WineFilter> filters) {
+        StringJoiner where = new StringJoiner(" AND ");
+        for (WineFilter filter : WineFilter.canonical(filters)) {
+            where.add(filter.toSql());
+        }
+        return where.toString();
+    }
+}